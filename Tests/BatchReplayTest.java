@@ -0,0 +1,143 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class BatchReplayTest {
+
+	private static final String[] LINES = {
+		"true 50 0.0 0.0 true false false false false",
+		"- - - - - - - - -",
+		"true 55 0.0 0.3 - - - - -",
+		"true 55 0.0 0.0 - - true - -",
+		"- - - - - - - true -",
+		"true 45 0.4 0.0 - - - - -",
+		"- - - - - - - - true",
+		"false 0 0 0 - - - - -",
+	};
+
+	private Path write_trace(Path path, Random random, int lines) throws IOException {
+		Files.createDirectories(path.getParent());
+		StringBuilder contents = new StringBuilder();
+		for (int i = 0; i < lines; i++){
+			contents.append(LINES[random.nextInt(LINES.length)]).append(random.nextBoolean() ? "\n" : "\r\n");
+		}
+		Files.write(path, contents.toString().getBytes(StandardCharsets.UTF_8));
+		return path;
+	}
+
+	private String expected_output(Path trace) throws IOException {
+		StringBuilder output = new StringBuilder();
+		try (InputStateCursor input_states = StateInput.cursor_from_file(trace)){
+			new Timer(new CruiseControlSystem()).record_from_input(
+				input_states, r -> output.append(r.format()).append(System.lineSeparator()));
+		}
+		return output.toString();
+	}
+
+	@Test
+	public void batch_replays_directories_and_globs() throws IOException {
+		Path root = Files.createTempDirectory("batch");
+		Random random = new Random(41);
+		List<Path> traces = new ArrayList<Path>();
+		for (int i = 0; i < 30; i++){
+			traces.add(this.write_trace(root.resolve("corpus/set" + (i % 3) + "/trace" + i + ".text"), random, 500));
+		}
+		this.write_trace(root.resolve("corpus/set0/notes.txt"), random, 10);
+		Files.write(root.resolve("corpus/set1/broken.text"), "true 50\n".getBytes(StandardCharsets.UTF_8));
+
+		Path output = root.resolve("output");
+		BatchReplay batch = new BatchReplay(BatchReplay.new_io_executor(), new ForkJoinPool(2), 4,
+											CruiseControlSystem::new);
+		assertEquals(21, batch.add(root.resolve("corpus") + "/set{1,2}/*.text", output));
+		assertEquals(11, batch.add(root.resolve("corpus/set0").toString(), output));
+		batch.run();
+
+		assertEquals(1, batch.failures());
+		long pulses = 0;
+		for (BatchReplay.Job job : batch.get_jobs()){
+			if (job.input.getFileName().toString().equals("broken.text")){
+				assertTrue(job.get_failure() instanceof IllegalArgumentException);
+				continue;
+			}
+			assertNull(job.get_failure());
+			assertEquals(this.expected_output(job.input),
+						 new String(Files.readAllBytes(job.output), StandardCharsets.UTF_8));
+			pulses += job.get_pulses();
+		}
+		assertEquals(30 * 500 + 10, pulses);
+		assertEquals(pulses, batch.total_pulses());
+		assertTrue(Files.exists(output.resolve("set2/trace2.text.out")));
+		assertTrue(Files.exists(output.resolve("trace3.text.out")));
+	}
+
+	private void assert_rejected(BatchReplay batch, String argument, Path output){
+		int jobs = batch.get_jobs().size();
+		try {
+			batch.add(argument, output);
+			fail("expected " + argument + " to be rejected");
+		} catch (IOException e){
+			assertEquals(jobs, batch.get_jobs().size());
+		}
+	}
+
+	@Test
+	public void inputs_sharing_an_output_are_rejected() throws IOException {
+		Path root = Files.createTempDirectory("batch");
+		Random random = new Random(43);
+		Path first = this.write_trace(root.resolve("a/x.text"), random, 10);
+		Path second = this.write_trace(root.resolve("b/x.text"), random, 10);
+		this.write_trace(root.resolve("b/y.text"), random, 10);
+		Path output = root.resolve("output");
+		BatchReplay batch = new BatchReplay();
+
+		assertEquals(1, batch.add(first.toString(), output));
+		// Same file name in another directory.
+		this.assert_rejected(batch, second.toString(), output);
+		// The same file again.
+		this.assert_rejected(batch, first.toString(), output);
+		// A directory with the same layout; y.text is not added either.
+		this.assert_rejected(batch, root.resolve("b").toString(), output);
+		// A glob matching both x.text files from one base maps them apart.
+		assertEquals(3, batch.add(root + "/*/*.text", output));
+		// And another output directory takes the other one.
+		assertEquals(1, batch.add(second.toString(), root.resolve("output-b")));
+		assertEquals(5, batch.get_jobs().size());
+	}
+
+	@Test
+	public void outputs_inside_the_input_tree_are_not_replayed_again() throws IOException {
+		Path root = Files.createTempDirectory("batch");
+		Random random = new Random(47);
+		this.write_trace(root.resolve("a.text"), random, 20);
+		this.write_trace(root.resolve("set/b.text"), random, 20);
+		Path output = root.resolve("out");
+		for (int run = 0; run < 3; run++){
+			// As `BatchReplay traces/out traces`, with the output named another way.
+			BatchReplay directory = new BatchReplay();
+			assertEquals(2, directory.add(root.toString(), root.resolve("set/../out")));
+			directory.run();
+			assertEquals(0, directory.failures());
+			assertEquals(2 * 20, directory.total_pulses());
+
+			BatchReplay glob = new BatchReplay();
+			assertEquals(2, glob.add(root + "/**", output));
+			glob.run();
+			assertEquals(2 * 20, glob.total_pulses());
+		}
+		assertTrue(Files.exists(output.resolve("a.text.out")));
+		assertTrue(Files.exists(output.resolve("set/b.text.out")));
+		assertTrue(!Files.exists(output.resolve("out")));
+	}
+}
@@ -0,0 +1,64 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class BatchedCruiseControlTest {
+
+	/**
+	 * Fills in a random input state, favouring '-' and the values around
+	 * the thresholds the CCS rules test for.
+	 */
+	private void random_state(Random random, PackedInputState state){
+		double[] speeds = { 0.0, 39.9, 40.0, 50.0, 72.5 };
+		double[] pedals = { 0.0, 0.0, 0.3, 1.2 };
+		state.clear();
+		for (int field = 0; field < StateLineDecoder.FIELD_COUNT; field++){
+			if (random.nextInt(3) == 0){
+				state.present |= 1 << field;
+			}
+		}
+		state.engine_status = random.nextInt(8) != 0;
+		state.speed_sensor = speeds[random.nextInt(speeds.length)];
+		state.brake_pedal = pedals[random.nextInt(pedals.length)];
+		state.accelerator_pedal = pedals[random.nextInt(pedals.length)];
+		state.start_ccs_button = random.nextBoolean();
+		state.stop_ccs_button = random.nextInt(4) == 0;
+		state.start_acceleration_button = random.nextBoolean();
+		state.stop_acceleration_button = random.nextInt(4) == 0;
+		state.resume_button = random.nextInt(4) == 0;
+	}
+
+	@Test
+	public void batched_pulses_match_cruise_control_system() {
+		int cars = 64;
+		Random random = new Random(7);
+		BatchedCruiseControl batch = new BatchedCruiseControl(cars);
+		Car[] scalar_cars = new Car[cars];
+		CruiseControlSystem[] scalar_ccs = new CruiseControlSystem[cars];
+		for (int car = 0; car < cars; car++){
+			scalar_cars[car] = new Car();
+			scalar_ccs[car] = new CruiseControlSystem();
+		}
+		PackedInputState state = new PackedInputState();
+		PulseRecord expected = new PulseRecord();
+		PulseRecord actual = new PulseRecord();
+		for (int pulse = 0; pulse < 500; pulse++){
+			for (int car = 0; car < cars; car++){
+				this.random_state(random, state);
+				batch.update_state(car, state);
+				scalar_cars[car].update_states(state);
+				scalar_ccs[car].pulse(scalar_cars[car]);
+			}
+			batch.pulse_all();
+			for (int car = 0; car < cars; car++){
+				scalar_cars[car].record_state(expected);
+				batch.record_state(car, actual);
+				assertEquals(expected.format(), actual.format());
+				assertEquals(Double.doubleToRawLongBits(expected.throttle_position),
+							 Double.doubleToRawLongBits(actual.throttle_position));
+			}
+		}
+	}
+}
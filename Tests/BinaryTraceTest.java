@@ -0,0 +1,109 @@
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class BinaryTraceTest {
+
+	private Path temp_file(String suffix) throws IOException {
+		Path path = Files.createTempFile("trace", suffix);
+		path.toFile().deleteOnExit();
+		return path;
+	}
+
+	private List<String> run_trace(Path input_path) throws IOException {
+		List<String> output_lines = new ArrayList<String>();
+		Timer timer = new Timer(new CruiseControlSystem());
+		try (InputStateCursor input_states = StateInput.cursor_from_file(input_path)){
+			timer.pulse_from_input(input_states, s -> output_lines.add(s.format()));
+		}
+		return output_lines;
+	}
+
+	@Test
+	public void binary_trace_replays_like_text_trace() throws IOException {
+		// Enough lines to span more than one block of the binary format.
+		StringBuilder contents = new StringBuilder();
+		for (int i = 0; i < BinaryTrace.BLOCK_ROWS + 100; i++){
+			contents.append(i % 3 == 0 ? "true " : "- ")
+					.append(i % 5 == 0 ? "-" : String.valueOf(35.0 + i % 20)).append(' ')
+					.append(i % 50 == 0 ? "0.2" : "0.0").append(" 0.")
+					.append(i % 10).append(i % 11 == 0 ? " true" : " -")
+					.append(i % 97 == 0 ? " true" : " -").append(" - - ")
+					.append(i % 13 == 0 ? "true" : "-").append('\n');
+		}
+		Path text_path = this.temp_file(".text");
+		Files.write(text_path, contents.toString().getBytes(StandardCharsets.UTF_8));
+		Path binary_path = this.temp_file(".ccst");
+		assertEquals(BinaryTrace.BLOCK_ROWS + 100, BinaryTrace.text_to_binary(text_path, binary_path));
+
+		assertTrue(BinaryTrace.is_binary(binary_path));
+		assertTrue(Files.size(binary_path) < Files.size(text_path));
+		assertEquals(this.run_trace(text_path), this.run_trace(binary_path));
+	}
+
+	@Test
+	public void binary_trace_converts_back_to_text() throws IOException {
+		Path text_path = this.temp_file(".text");
+		Files.write(text_path, "true 50 0.0 0.5 false false false false false\n- - - - true - - - -\n"
+									.getBytes(StandardCharsets.UTF_8));
+		Path binary_path = this.temp_file(".ccst");
+		Path converted_path = this.temp_file(".text");
+		BinaryTrace.text_to_binary(text_path, binary_path);
+		BinaryTrace.binary_to_text(binary_path, converted_path);
+
+		List<String> converted = Files.readAllLines(converted_path, StandardCharsets.UTF_8);
+		assertEquals("true 50.0 0.0 0.5 false false false false false", converted.get(0));
+		assertEquals("- - - - true - - - -", converted.get(1));
+	}
+
+	private void assert_truncated_block(Path binary_path) throws IOException {
+		try {
+			this.run_trace(binary_path);
+			fail("replayed a malformed binary trace");
+		} catch (IOException e){
+			assertEquals(binary_path + ": block 1: truncated block", e.getMessage());
+		}
+	}
+
+	@Test
+	public void malformed_blocks_are_reported_as_truncated() throws IOException {
+		Path text_path = this.temp_file(".text");
+		Files.write(text_path, "true 50 0.0 0.5 false false false false false\n- 51 - - true - - - -\n"
+									.getBytes(StandardCharsets.UTF_8));
+		Path binary_path = this.temp_file(".ccst");
+		BinaryTrace.text_to_binary(text_path, binary_path);
+		byte[] contents = Files.readAllBytes(binary_path);
+
+		// The file ends before the block's length does.
+		Path truncated_path = this.temp_file(".ccst");
+		Files.write(truncated_path, Arrays.copyOf(contents, contents.length - 3));
+		this.assert_truncated_block(truncated_path);
+
+		// The row count claims more rows than the block's length holds.
+		Path corrupt_path = this.temp_file(".ccst");
+		ByteBuffer corrupt = ByteBuffer.wrap(contents.clone()).order(ByteOrder.LITTLE_ENDIAN);
+		corrupt.putInt(BinaryTrace.HEADER_BYTES + 4, 1000);
+		Files.write(corrupt_path, corrupt.array());
+		this.assert_truncated_block(corrupt_path);
+
+		// A bitmap calls for more values than the block holds.
+		Path missing_path = this.temp_file(".ccst");
+		ByteBuffer missing = ByteBuffer.wrap(contents.clone()).order(ByteOrder.LITTLE_ENDIAN);
+		int brake_bitmap = BinaryTrace.HEADER_BYTES + BinaryTrace.BLOCK_HEADER_BYTES + 2 * 8;
+		missing.putLong(brake_bitmap, -1L);
+		Files.write(missing_path, missing.array());
+		this.assert_truncated_block(missing_path);
+	}
+}
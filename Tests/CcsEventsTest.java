@@ -0,0 +1,100 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import jdk.jfr.Recording;
+
+import org.junit.Test;
+
+public class CcsEventsTest {
+
+	private static final long PULSES = 1000;
+
+	private Recording start_recording(){
+		Recording recording = new Recording();
+		for (String name : new String[]{CcsEvents.PARSE, CcsEvents.UPDATE_STATES, CcsEvents.PULSE,
+										CcsEvents.RECORD_STATE, CcsEvents.OUTPUT}){
+			recording.enable(name);
+		}
+		recording.enable(CcsEvents.TRACE_PARSE).withThreshold(Duration.ZERO);
+		recording.start();
+		return recording;
+	}
+
+	private CcsEventAnalyzer stop_and_analyze(Recording recording) throws IOException {
+		recording.stop();
+		Path path = Files.createTempFile("ccs", ".jfr");
+		path.toFile().deleteOnExit();
+		recording.dump(path);
+		recording.close();
+		return CcsEventAnalyzer.analyze(path);
+	}
+
+	@Test
+	public void sampled_pulses_are_summarised_by_stage() throws IOException {
+		Recording recording = this.start_recording();
+		Timer timer = new Timer(new CruiseControlSystem());
+		timer.set_event_sampling(10);
+		long cruising = 0;
+		try (InputStateCursor driver = new TraceGenerator(8, PULSES)){
+			assertEquals(PULSES, timer.record_from_input(driver, record -> {}));
+		}
+		CcsEventAnalyzer analyzer = this.stop_and_analyze(recording);
+		for (String stage : new String[]{CcsEvents.PARSE, CcsEvents.UPDATE_STATES, CcsEvents.PULSE,
+										 CcsEvents.RECORD_STATE, CcsEvents.OUTPUT}){
+			assertEquals(PULSES / 10, analyzer.get_stage(stage).get_count());
+		}
+		CcsEventAnalyzer.StageSummary pulses = analyzer.get_stage(CcsEvents.PULSE);
+		assertTrue(pulses.percentile_nanos(0.5) <= pulses.max_nanos());
+		assertTrue(analyzer.format().contains(CcsEvents.PULSE));
+	}
+
+	@Test
+	public void sampled_pulses_report_what_the_ccs_did() throws IOException {
+		// Sampling every pulse, the events see every rule which fires.
+		Path trace = Files.createTempFile("trace", ".text");
+		trace.toFile().deleteOnExit();
+		Files.write(trace, List.of("true 50.0 0.0 0.0 true false false false false",
+								   "- 52.0 0.0 0.0 - - - - -",
+								   "- - 0.5 - - - - - -"));
+		Recording recording = this.start_recording();
+		List<PackedInputState> states = StateInput.packed_states_from_file(trace);
+		Timer timer = new Timer(new CruiseControlSystem());
+		timer.set_event_sampling(1);
+		try (InputStateCursor input = StateInput.cursor_from_file(trace)){
+			timer.record_from_input(input, record -> {});
+		}
+		CcsEventAnalyzer analyzer = this.stop_and_analyze(recording);
+		assertEquals(1, analyzer.get_stage(CcsEvents.TRACE_PARSE).get_count());
+		assertEquals(states.size(), analyzer.get_stage(CcsEvents.PULSE).get_count());
+		CruiseControlSystem ccs = new CruiseControlSystem();
+		Timer replay = new Timer(ccs);
+		PulseRecord record = new PulseRecord();
+		long started = 0;
+		long braked = 0;
+		for (PackedInputState state : states){
+			replay.pulse(state, record);
+			started += (ccs.get_fired_rules() & CcsRule.START_CCS.bit()) != 0 ? 1 : 0;
+			braked += (ccs.get_fired_rules() & CcsRule.BRAKE_DISENGAGE.bit()) != 0 ? 1 : 0;
+		}
+		assertTrue(started > 0 && braked > 0);
+		assertEquals(started, analyzer.get_rule_count(CcsRule.START_CCS));
+		assertEquals(braked, analyzer.get_rule_count(CcsRule.BRAKE_DISENGAGE));
+	}
+
+	@Test
+	public void sampling_can_be_turned_off() throws IOException {
+		Recording recording = this.start_recording();
+		Timer timer = new Timer(new CruiseControlSystem());
+		timer.set_event_sampling(0);
+		try (InputStateCursor driver = new TraceGenerator(8, PULSES)){
+			timer.record_from_input(driver, record -> {});
+		}
+		assertEquals(0, this.stop_and_analyze(recording).get_stage(CcsEvents.PULSE).get_count());
+	}
+}
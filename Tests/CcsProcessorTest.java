@@ -0,0 +1,206 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class CcsProcessorTest {
+
+	private static final String[] LINES = {
+		"true 50 0.0 0.0 true false false false false",
+		"- - - - - - - - -",
+		"true 55 0.0 0.3 - - - - -",
+		"true 55 0.0 0.0 - - true - -",
+		"- - - - - - - true -",
+		"true 45 0.4 0.0 - - - - -",
+		"- - - - - - - - true",
+		"false 0 0 0 - - - - -",
+	};
+
+	private List<InputState> random_states(int count){
+		Random random = new Random(count);
+		List<String> lines = new ArrayList<String>();
+		for (int i = 0; i < count; i++){
+			lines.add(LINES[random.nextInt(LINES.length)]);
+		}
+		return StateInput.input_states_from_strings(lines.toArray(new String[0]));
+	}
+
+	private List<String> expected(List<InputState> states){
+		List<String> lines = new ArrayList<String>();
+		for (OutputState output_state : new Timer(new CruiseControlSystem()).pulse_from_input(states)){
+			lines.add(output_state.format());
+		}
+		return lines;
+	}
+
+	/**
+	 * Publishes a list synchronously from within request, keeping track of
+	 * how far ahead of the subscriber's consumption the demand ever got.
+	 */
+	private static class ListPublisher implements Flow.Publisher<InputState> {
+		private final List<InputState> states;
+		private int next = 0;
+		private long demand = 0;
+		private boolean emitting = false;
+		private boolean cancelled = false;
+		int requests = 0;
+		long max_demand = 0;
+
+		ListPublisher(List<InputState> states){
+			this.states = states;
+		}
+
+		@Override
+		public void subscribe(Flow.Subscriber<? super InputState> subscriber){
+			subscriber.onSubscribe(new Flow.Subscription(){
+				@Override
+				public void request(long n){
+					ListPublisher publisher = ListPublisher.this;
+					publisher.requests++;
+					publisher.demand += n;
+					publisher.max_demand = Math.max(publisher.max_demand, publisher.demand);
+					if (publisher.emitting){
+						return;
+					}
+					publisher.emitting = true;
+					while (publisher.demand > 0 && publisher.next < publisher.states.size() && !publisher.cancelled){
+						publisher.demand--;
+						subscriber.onNext(publisher.states.get(publisher.next++));
+					}
+					publisher.emitting = false;
+					if (publisher.next == publisher.states.size() && !publisher.cancelled){
+						publisher.cancelled = true;
+						subscriber.onComplete();
+					}
+				}
+
+				@Override
+				public void cancel(){
+					ListPublisher.this.cancelled = true;
+				}
+			});
+		}
+	}
+
+	private static class RecordingSubscriber implements Flow.Subscriber<OutputState> {
+		final List<String> lines = new ArrayList<String>();
+		final CompletableFuture<Throwable> finished = new CompletableFuture<Throwable>();
+		Flow.Subscription subscription;
+		private final long initial_request;
+		private final long per_item_request;
+
+		RecordingSubscriber(long initial_request, long per_item_request){
+			this.initial_request = initial_request;
+			this.per_item_request = per_item_request;
+		}
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription){
+			this.subscription = subscription;
+			if (this.initial_request != 0){
+				subscription.request(this.initial_request);
+			}
+		}
+
+		@Override
+		public void onNext(OutputState item){
+			this.lines.add(item.format());
+			if (this.per_item_request != 0){
+				this.subscription.request(this.per_item_request);
+			}
+		}
+
+		@Override
+		public void onError(Throwable throwable){
+			this.finished.complete(throwable);
+		}
+
+		@Override
+		public void onComplete(){
+			this.finished.complete(null);
+		}
+	}
+
+	@Test
+	public void slow_subscriber_bounds_the_demand_upstream(){
+		List<InputState> states = this.random_states(5000);
+		ListPublisher publisher = new ListPublisher(states);
+		CcsProcessor processor = new CcsProcessor(new CruiseControlSystem(), 64);
+		RecordingSubscriber subscriber = new RecordingSubscriber(0, 0);
+		publisher.subscribe(processor);
+		processor.subscribe(subscriber);
+		// Nothing requested yet: only the first `capacity` states are taken.
+		assertEquals(64, publisher.next);
+		for (int i = 0; i < 1000 && !subscriber.finished.isDone(); i++){
+			subscriber.subscription.request(7);
+			assertTrue(publisher.next - subscriber.lines.size() <= 64);
+		}
+		assertTrue(subscriber.finished.isDone());
+		assertEquals(this.expected(states), subscriber.lines);
+		assertTrue(publisher.max_demand <= 64);
+	}
+
+	@Test
+	public void fast_subscriber_gets_batched_delivery(){
+		List<InputState> states = this.random_states(10000);
+		ListPublisher publisher = new ListPublisher(states);
+		CcsProcessor processor = new CcsProcessor(new CruiseControlSystem(), 100);
+		RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE, 0);
+		processor.subscribe(subscriber);
+		publisher.subscribe(processor);
+		assertTrue(subscriber.finished.isDone());
+		assertEquals(this.expected(states), subscriber.lines);
+		assertEquals(128, processor.get_capacity());
+		// The initial request, then one for every half of the capacity.
+		assertEquals(1 + 10000 / 64, publisher.requests);
+	}
+
+	@Test
+	public void asynchronous_publisher_and_one_at_a_time_subscriber() throws Exception {
+		List<InputState> states = this.random_states(20000);
+		CcsProcessor processor = new CcsProcessor(new CruiseControlSystem());
+		RecordingSubscriber subscriber = new RecordingSubscriber(1, 1);
+		try (SubmissionPublisher<InputState> publisher = new SubmissionPublisher<InputState>()){
+			publisher.subscribe(processor);
+			processor.subscribe(subscriber);
+			for (InputState state : states){
+				publisher.submit(state);
+			}
+		}
+		assertEquals(null, subscriber.finished.get(10, TimeUnit.SECONDS));
+		assertEquals(this.expected(states), subscriber.lines);
+	}
+
+	@Test
+	public void cancelling_and_bad_requests_stop_the_publisher() throws Exception {
+		ListPublisher publisher = new ListPublisher(this.random_states(1000));
+		CcsProcessor processor = new CcsProcessor(new CruiseControlSystem(), 16);
+		RecordingSubscriber subscriber = new RecordingSubscriber(5, 0);
+		publisher.subscribe(processor);
+		processor.subscribe(subscriber);
+		subscriber.subscription.cancel();
+		assertTrue(publisher.cancelled);
+		assertEquals(5, subscriber.lines.size());
+
+		publisher = new ListPublisher(this.random_states(1000));
+		processor = new CcsProcessor(new CruiseControlSystem(), 16);
+		subscriber = new RecordingSubscriber(0, 0);
+		publisher.subscribe(processor);
+		processor.subscribe(subscriber);
+		subscriber.subscription.request(0);
+		assertTrue(subscriber.finished.get() instanceof IllegalArgumentException);
+		assertTrue(publisher.cancelled);
+
+		RecordingSubscriber second = new RecordingSubscriber(1, 0);
+		processor.subscribe(second);
+		assertTrue(second.finished.get() instanceof IllegalStateException);
+	}
+}
@@ -0,0 +1,106 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class ClosedLoopSimulationTest {
+
+	private static String[] lines(String line, int count){
+		String[] lines = new String[count];
+		for (int i = 0; i < count; i++){
+			lines[i] = line;
+		}
+		return lines;
+	}
+
+	private static String[] concat(String[]... parts){
+		List<String> lines = new ArrayList<String>();
+		for (String[] part : parts){
+			for (String line : part){
+				lines.add(line);
+			}
+		}
+		return lines.toArray(new String[0]);
+	}
+
+	@Test
+	public void throttle_asks_for_a_speed_which_the_grade_disturbs(){
+		VehicleModel model = new VehicleModel();
+		model.advance(2.0, 0.0, true, 60.0);
+		assertEquals(100.0, model.get_speed_kmh(), 0.5);
+
+		model.set_grade(0.05);
+		model.advance(2.0, 0.0, true, 60.0);
+		double uphill = model.get_speed_kmh();
+		assertTrue(uphill < 99.0);
+		model.set_grade(-0.05);
+		model.advance(2.0, 0.0, true, 60.0);
+		assertTrue(model.get_speed_kmh() > 101.0);
+
+		// Coasting slows the car, braking stops it, and it never rolls back.
+		model.set_grade(0.0);
+		double before = model.get_speed_kmh();
+		model.advance(0.0, 0.0, false, 10.0);
+		assertTrue(model.get_speed_kmh() < before);
+		model.advance(0.0, 1.0, false, 30.0);
+		assertEquals(0.0, model.get_speed_kmh(), 0.0);
+		model.set_grade(0.1);
+		double distance = model.get_distance_m();
+		model.advance(0.0, 0.0, true, 30.0);
+		assertEquals(0.0, model.get_speed_kmh(), 0.0);
+		assertEquals(distance, model.get_distance_m(), 0.0);
+	}
+
+	@Test
+	public void cruise_control_holds_the_simulated_speed() throws IOException {
+		String[] drive = concat(
+			lines("true 0 0.0 1.0 false false false false false", 60),
+			lines("- - - 0.0 true - - - -", 1),
+			lines("- - - - - - - - -", 120),
+			lines("- - - - - - true - -", 4),
+			lines("- - - - - - - true -", 1),
+			lines("- - - - - - - - -", 60),
+			lines("false - 1.0 - - - - - -", 30));
+		List<PulseRecord> records = new ArrayList<PulseRecord>();
+		ClosedLoopSimulation simulation = new ClosedLoopSimulation(new CruiseControlSystem());
+		assertEquals(drive.length, simulation.run(StateInput.cursor_from_strings(drive), record -> {
+			PulseRecord copy = new PulseRecord();
+			copy.copy_from(record);
+			records.add(copy);
+		}));
+		// The pedal alone brings the car close to 50 km/h.
+		double engaged = records.get(60).speed_sensor;
+		assertEquals(50.0, engaged, 1.0);
+		assertTrue(records.get(60).start_ccs_button);
+		assertEquals(engaged, records.get(180).speed_sensor, 0.5);
+		// Each pulse of button acceleration asks for 7.2 km/h more, which the
+		// car makes up at first at 2 m/s^2 and then ever more slowly.
+		double accelerated = records.get(185).speed_sensor;
+		assertEquals(engaged + 4 * 7.2 * (1 - Math.exp(-1)), accelerated, 1.0);
+		PulseRecord held = records.get(215);
+		assertEquals(50.0 * held.throttle_position, held.speed_sensor, 0.1);
+		assertTrue(held.speed_sensor > accelerated);
+		// Switching the engine off and braking stops the car.
+		assertEquals(0.0, records.get(records.size() - 1).speed_sensor, 0.0);
+		assertEquals(drive.length, simulation.get_simulated_seconds(), 0.0);
+	}
+
+	@Test
+	public void fleet_results_do_not_depend_on_the_pool(){
+		List<ClosedLoopSimulation> one = ClosedLoopSimulation.run_fleet(new ForkJoinPool(1), 6, 9, 20000,
+																		CruiseControlSystem::new);
+		List<ClosedLoopSimulation> three = ClosedLoopSimulation.run_fleet(new ForkJoinPool(3), 6, 9, 20000,
+																		  CruiseControlSystem::new);
+		for (int i = 0; i < 6; i++){
+			assertEquals(20000, one.get(i).get_pulses());
+			assertTrue(one.get(i).get_model().get_distance_m() > 0.0);
+			assertEquals(one.get(i).get_model().get_distance_m(), three.get(i).get_model().get_distance_m(), 0.0);
+			assertEquals(one.get(i).get_cruising_seconds(), three.get(i).get_cruising_seconds(), 0.0);
+		}
+	}
+}
@@ -0,0 +1,83 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class DifferentialReplayTest {
+
+	private static final String[] LINES = {
+		"true 50 0.0 0.0 true false false false false",
+		"- - - - - - - - -",
+		"true 55 0.0 0.3 - - - - -",
+		"true 55 0.0 0.0 - - true - -",
+		"- - - - - - - true -",
+		"true 45 0.4 0.0 - - - - -",
+		"- - - - - - - - true",
+		"- - - - - true - - -",
+		"false 0 0 0 - - - - -",
+	};
+
+	private InputStateCursor random_trace(long seed, int lines){
+		Random random = new Random(seed);
+		TraceColumns columns = new TraceColumns(lines);
+		PackedInputState state = new PackedInputState();
+		for (int i = 0; i < lines; i++){
+			StateLineDecoder.decode_line(LINES[random.nextInt(LINES.length)], state, i + 1);
+			columns.add(state);
+		}
+		return new TraceColumnsInput(Arrays.asList(columns));
+	}
+
+	/**
+	 * A CruiseControlSystem with a bug: it cruises too fast above 54 km/h.
+	 */
+	private static ICruiseControlSystem faulty_ccs(){
+		CruiseControlSystem ccs = new CruiseControlSystem();
+		return car -> {
+			ccs.pulse(car);
+			if (car.dashboard.get_start_ccs() && car.speed_sensor.get_speed() > 54.0){
+				car.throttle.setThrottlePosition(car.throttle.getThrottlePosition() + 0.01);
+			}
+		};
+	}
+
+	@Test
+	public void equivalent_implementations_do_not_diverge(){
+		DifferentialReplay replay = new DifferentialReplay(new ForkJoinPool(4), CruiseControlSystem::new,
+														   StateMachineCruiseControlSystem::new, 8);
+		for (int i = 0; i < 200; i++){
+			long seed = i;
+			replay.add_trace("trace" + i, () -> this.random_trace(seed, 2000));
+		}
+		replay.run();
+		assertEquals(0, replay.divergences());
+		assertEquals(0, replay.failures());
+		assertEquals(200 * 2000, replay.total_pulses());
+	}
+
+	@Test
+	public void divergence_is_reported_with_context() throws IOException {
+		DifferentialReplay replay = new DifferentialReplay(ForkJoinPool.commonPool(), CruiseControlSystem::new,
+														   DifferentialReplayTest::faulty_ccs, 4);
+		DifferentialReplay.Divergence divergence = replay.compare(this.random_trace(3, 2000));
+		assertTrue(divergence != null);
+		assertEquals(Arrays.asList("throttle_position"), divergence.differing_fields());
+		int length = divergence.inputs.length;
+		assertEquals(Math.min(4, divergence.pulse), length);
+		PulseRecord last = divergence.baseline_records[length - 1];
+		assertTrue(last.start_ccs_button && last.speed_sensor > 54.0);
+		for (int i = 0; i < length - 1; i++){
+			assertTrue(divergence.baseline_records[i].same_as(divergence.candidate_records[i]));
+		}
+		assertTrue(divergence.format().startsWith("diverged at pulse " + divergence.pulse + " in throttle_position"));
+
+		assertNull(new DifferentialReplay(CruiseControlSystem::new, CruiseControlSystem::new)
+					   .compare(this.random_trace(3, 2000)));
+	}
+}
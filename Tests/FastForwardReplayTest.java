@@ -0,0 +1,144 @@
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class FastForwardReplayTest {
+
+	private Path temp_file(String suffix) throws IOException {
+		Path path = Files.createTempFile("trace", suffix);
+		path.toFile().deleteOnExit();
+		return path;
+	}
+
+	/**
+	 * A trace made of long runs of repeated lines, including runs of
+	 * "- - ..." lines and runs which only settle after a few pulses.
+	 */
+	private Path repeated_trace(long seed) throws IOException {
+		String[] lines = {
+			"true 50 0.0 0.0 false false false false false",
+			"true 50 0.0 0.0 true false false false false",
+			"- - - - - - - - -",
+			"true 55 0.0 0.3 - - - - -",
+			"true 55 0.0 0.0 - - true - -",
+			"true 55 0.0 0.0 - - - true -",
+			"true 45 0.4 0.0 - - - - -",
+			"true 45 0.0 0.0 - - - - true",
+			"true 30 0.0 0.0 true - - - -",
+			"false 0 0 0 - - - - -",
+		};
+		Random random = new Random(seed);
+		StringBuilder contents = new StringBuilder();
+		for (int i = 0; i < 200; i++){
+			String line = lines[random.nextInt(lines.length)];
+			int repeats = 1 + random.nextInt(40);
+			for (int j = 0; j < repeats; j++){
+				contents.append(line).append(random.nextInt(8) == 0 ? "\r\n" : "\n");
+			}
+		}
+		Path path = this.temp_file(".text");
+		Files.write(path, contents.toString().getBytes(StandardCharsets.UTF_8));
+		return path;
+	}
+
+	private List<String> run_timer(Path input_path, ICruiseControlSystem ccs) throws IOException {
+		List<String> output_lines = new ArrayList<String>();
+		Timer timer = new Timer(ccs);
+		try (InputStateCursor input_states = StateInput.cursor_from_file(input_path)){
+			timer.record_from_input(input_states, record -> output_lines.add(record.format()));
+		}
+		return output_lines;
+	}
+
+	private List<String> run_fast_forward(FastForwardReplay replay, InputStateCursor input_states) throws IOException {
+		List<String> output_lines = new ArrayList<String>();
+		try {
+			replay.record_from_input(input_states, record -> output_lines.add(record.format()));
+		} finally {
+			input_states.close();
+		}
+		return output_lines;
+	}
+
+	@Test
+	public void fast_forward_matches_timer() throws IOException {
+		for (long seed = 0; seed < 5; seed++){
+			Path path = this.repeated_trace(seed);
+			List<String> expected = this.run_timer(path, new CruiseControlSystem());
+			FastForwardReplay replay = new FastForwardReplay(new CruiseControlSystem());
+			assertEquals(expected, this.run_fast_forward(replay, new MappedStateInput(path)));
+			assertEquals(expected.size(), replay.get_pulses_run() + replay.get_pulses_skipped());
+			assertTrue(replay.get_pulses_skipped() > expected.size() / 2);
+
+			replay = new FastForwardReplay(new StateMachineCruiseControlSystem());
+			assertEquals(expected, this.run_fast_forward(replay, new MappedStateInput(path, 211)));
+		}
+	}
+
+	@Test
+	public void fast_forward_matches_timer_on_binary_trace() throws IOException {
+		Path path = this.repeated_trace(7);
+		Path binary_path = this.temp_file(".ccst");
+		BinaryTrace.text_to_binary(path, binary_path);
+		FastForwardReplay replay = new FastForwardReplay(new CruiseControlSystem());
+		assertEquals(this.run_timer(path, new CruiseControlSystem()),
+					 this.run_fast_forward(replay, new BinaryStateInput(binary_path)));
+	}
+
+	@Test
+	public void fast_forward_reports_runs() throws IOException {
+		Path path = this.temp_file(".text");
+		StringBuilder contents = new StringBuilder("true 50 0.0 0.0 true false false false false\n");
+		for (int i = 0; i < 1000; i++){
+			contents.append("true 50 0.0 0.0 - - - - -\n");
+		}
+		Files.write(path, contents.toString().getBytes(StandardCharsets.UTF_8));
+
+		long[] counts = new long[2];
+		PulseSink sink = new PulseSink(){
+			@Override
+			public void accept(PulseRecord record){
+				counts[0]++;
+			}
+
+			@Override
+			public void accept_run(PulseRecord record, long count){
+				counts[1] += count;
+			}
+		};
+		FastForwardReplay replay = new FastForwardReplay(new CruiseControlSystem());
+		try (InputStateCursor input_states = new MappedStateInput(path)){
+			assertEquals(1001, replay.record_from_input(input_states, sink));
+		}
+		assertEquals(replay.get_pulses_run(), counts[0]);
+		assertEquals(replay.get_pulses_skipped(), counts[1]);
+		assertTrue(counts[0] <= 3);
+	}
+
+	@Test
+	public void captured_state_restores_into_either_implementation() {
+		Car car = new Car();
+		CruiseControlSystem ccs = new CruiseControlSystem();
+		car.update_states(new InputState("true 50 0.0 0.0 true false false false false"));
+		ccs.pulse(car);
+		car.update_states(new InputState("true 50 0.0 0.4 - - - - -"));
+		ccs.pulse(car);
+		CcsState state = new CcsState();
+		ccs.capture_state(state);
+
+		StateMachineCruiseControlSystem table = new StateMachineCruiseControlSystem();
+		table.restore_state(state);
+		CcsState restored = new CcsState();
+		table.capture_state(restored);
+		assertTrue(state.same_as(restored));
+	}
+}
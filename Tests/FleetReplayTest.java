@@ -0,0 +1,113 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class FleetReplayTest {
+
+	private static final int VEHICLES = 6;
+	private static final long PULSES = 30000;
+
+	private List<Path> traces() throws IOException {
+		Path directory = Files.createTempDirectory("fleet");
+		directory.toFile().deleteOnExit();
+		List<Path> traces = new ArrayList<Path>();
+		for (int i = 0; i < VEHICLES; i++){
+			Path trace = directory.resolve("vehicle-" + i + ".text");
+			trace.toFile().deleteOnExit();
+			// Traces of different lengths, so the vehicles finish at different times.
+			TraceGenerator.write_text(100 + i, PULSES + 1000 * i, trace, ForkJoinPool.commonPool());
+			traces.add(trace);
+		}
+		return traces;
+	}
+
+	private PulseRecordBuffer replay_sequentially(Path trace, ICruiseControlSystem ccs) throws IOException {
+		PulseRecordBuffer outputs = new PulseRecordBuffer();
+		try (InputStateCursor input_states = StateInput.cursor_from_file(trace)){
+			new Timer(ccs).record_from_input(input_states, outputs);
+		}
+		return outputs;
+	}
+
+	private void assert_same(PulseRecordBuffer expected, PulseRecordBuffer actual){
+		assertEquals(expected.size(), actual.size());
+		PulseRecord expected_record = new PulseRecord();
+		PulseRecord actual_record = new PulseRecord();
+		for (int row = 0; row < expected.size(); row++){
+			expected.get(row, expected_record);
+			actual.get(row, actual_record);
+			assertTrue(expected_record.same_as(actual_record));
+		}
+	}
+
+	@Test
+	public void fleet_matches_sequential_replays() throws IOException {
+		List<Path> traces = this.traces();
+		FleetReplay fleet = new FleetReplay(new ForkJoinPool(3));
+		List<FleetReplay.Vehicle<PulseRecordBuffer>> vehicles = new ArrayList<FleetReplay.Vehicle<PulseRecordBuffer>>();
+		for (int i = 0; i < traces.size(); i++){
+			// Alternate the implementations, which must agree with themselves.
+			ICruiseControlSystem ccs = i % 2 == 0 ? new CruiseControlSystem() : new StateMachineCruiseControlSystem();
+			vehicles.add(fleet.add_vehicle("vehicle-" + i, traces.get(i), ccs, new PulseRecordBuffer()));
+		}
+		fleet.run();
+		assertEquals(0, fleet.failures());
+		long total = 0;
+		for (int i = 0; i < traces.size(); i++){
+			FleetReplay.Vehicle<PulseRecordBuffer> vehicle = vehicles.get(i);
+			assertNull(vehicle.get_failure());
+			assertEquals(PULSES + 1000 * i, vehicle.get_pulses());
+			ICruiseControlSystem ccs = i % 2 == 0 ? new CruiseControlSystem() : new StateMachineCruiseControlSystem();
+			this.assert_same(this.replay_sequentially(traces.get(i), ccs), vehicle.sink);
+			total += vehicle.get_pulses();
+		}
+		assertEquals(total, fleet.total_pulses());
+		assertTrue(fleet.pulses_per_second() > 0.0);
+	}
+
+	@Test
+	public void default_vehicles_keep_only_their_final_state() throws IOException {
+		List<Path> traces = this.traces();
+		FleetReplay fleet = new FleetReplay();
+		List<FleetReplay.Vehicle<LastPulseRecord>> vehicles = new ArrayList<FleetReplay.Vehicle<LastPulseRecord>>();
+		for (int i = 0; i < traces.size(); i++){
+			vehicles.add(fleet.add_vehicle("vehicle-" + i, traces.get(i), new CruiseControlSystem()));
+		}
+		fleet.run();
+		PulseRecord last = new PulseRecord();
+		for (int i = 0; i < traces.size(); i++){
+			PulseRecordBuffer expected = this.replay_sequentially(traces.get(i), new CruiseControlSystem());
+			expected.get(expected.size() - 1, last);
+			assertTrue(vehicles.get(i).sink.has_record());
+			assertTrue(vehicles.get(i).sink.get_record().same_as(last));
+		}
+	}
+
+	@Test
+	public void a_failing_vehicle_does_not_stop_the_others() throws IOException {
+		List<Path> traces = this.traces();
+		FleetReplay fleet = new FleetReplay(new ForkJoinPool(2));
+		FleetReplay.Vehicle<LastPulseRecord> missing =
+			fleet.add_vehicle("missing", traces.get(0).resolveSibling("missing.text"), new CruiseControlSystem());
+		FleetReplay.Vehicle<LastPulseRecord> present =
+			fleet.add_vehicle("present", traces.get(1), new CruiseControlSystem());
+		fleet.run();
+		assertEquals(1, fleet.failures());
+		assertNotNull(missing.get_failure());
+		assertFalse(missing.sink.has_record());
+		assertNull(present.get_failure());
+		assertEquals(PULSES + 1000, present.get_pulses());
+		assertEquals(PULSES + 1000, fleet.total_pulses());
+	}
+}
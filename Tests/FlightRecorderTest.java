@@ -0,0 +1,152 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class FlightRecorderTest {
+
+	private static final int CAPACITY = 1024;
+	private static final long PULSES = 5000;
+
+	private Path temp_directory() throws IOException {
+		Path directory = Files.createTempDirectory("flight");
+		directory.toFile().deleteOnExit();
+		return directory;
+	}
+
+	/**
+	 * Replays a generated drive through a recording Timer.
+	 * @return the outputs of every pulse
+	 */
+	private List<PulseRecord> record(FlightRecorder recorder) throws IOException {
+		Timer timer = new Timer(new CruiseControlSystem());
+		timer.set_flight_recorder(recorder);
+		List<PulseRecord> outputs = new ArrayList<PulseRecord>();
+		try (InputStateCursor driver = new TraceGenerator(3, PULSES)){
+			timer.record_from_input(driver, record -> {
+				PulseRecord copy = new PulseRecord();
+				copy.copy_from(record);
+				outputs.add(copy);
+			});
+		}
+		return outputs;
+	}
+
+	@Test
+	public void ring_keeps_the_latest_pulses() throws IOException {
+		Path ring = this.temp_directory().resolve("ring.ccfr");
+		List<PulseRecord> outputs;
+		try (FlightRecorder recorder = new FlightRecorder(ring, CAPACITY)){
+			outputs = this.record(recorder);
+			assertEquals(PULSES, recorder.get_head());
+		}
+		List<FlightRecorder.Entry> entries = FlightRecorder.read(ring);
+		assertEquals(CAPACITY, entries.size());
+		for (int i = 0; i < CAPACITY; i++){
+			FlightRecorder.Entry entry = entries.get(i);
+			assertEquals(PULSES - CAPACITY + i, entry.sequence);
+			assertTrue(entry.has_ccs_state);
+			assertTrue(entry.output.same_as(outputs.get((int) entry.sequence)));
+		}
+		assertEquals(0, FlightRecorder.verify(entries));
+	}
+
+	@Test
+	public void dump_converts_to_a_replayable_trace() throws IOException {
+		Path directory = this.temp_directory();
+		Path dump = directory.resolve("dump.ccfr");
+		List<PulseRecord> outputs;
+		try (FlightRecorder recorder = new FlightRecorder(directory.resolve("ring.ccfr"), CAPACITY)){
+			outputs = this.record(recorder);
+			assertEquals(CAPACITY, recorder.dump(dump));
+		}
+		List<FlightRecorder.Entry> entries = FlightRecorder.read(dump);
+		assertEquals(CAPACITY, entries.size());
+
+		Path trace = directory.resolve("trace.text");
+		FlightRecorder.main(new String[]{"to-trace", dump.toString(), trace.toString()});
+		CruiseControlSystem ccs = new CruiseControlSystem();
+		ccs.restore_state(entries.get(0).ccs_state);
+		Timer timer = new Timer(ccs);
+		List<PulseRecord> replayed = new ArrayList<PulseRecord>();
+		try (InputStateCursor input = StateInput.cursor_from_file(trace)){
+			timer.record_from_input(input, record -> {
+				PulseRecord copy = new PulseRecord();
+				copy.copy_from(record);
+				replayed.add(copy);
+			});
+		}
+		assertEquals(CAPACITY, replayed.size());
+		for (int i = 0; i < CAPACITY; i++){
+			assertTrue(replayed.get(i).same_as(outputs.get((int) (PULSES - CAPACITY + i))));
+		}
+	}
+
+	@Test
+	public void anomaly_triggers_a_dump() throws IOException {
+		Path directory = this.temp_directory();
+		try (FlightRecorder recorder = new FlightRecorder(directory.resolve("ring.ccfr"), CAPACITY)){
+			recorder.set_trigger((input, output, fired_rules) -> (fired_rules & CcsRule.START_CCS.bit()) != 0,
+								 directory.resolve("dumps"), 10);
+			this.record(recorder);
+			assertNull(recorder.get_dump_failure());
+			assertNotNull(recorder.get_last_dump());
+			List<FlightRecorder.Entry> entries = FlightRecorder.read(recorder.get_last_dump());
+			assertTrue(entries.size() > 10);
+			// The dump ends ten pulses after the pulse which triggered it.
+			FlightRecorder.Entry anomaly = entries.get(entries.size() - 11);
+			assertTrue((anomaly.fired_rules & CcsRule.START_CCS.bit()) != 0);
+			assertEquals(0, FlightRecorder.verify(entries));
+		}
+	}
+
+	@Test
+	public void reopening_a_ring_keeps_the_previous_recording() throws IOException {
+		Path ring = this.temp_directory().resolve("ring.ccfr");
+		Path previous = FlightRecorder.previous(ring);
+		List<PulseRecord> outputs;
+		try (FlightRecorder recorder = new FlightRecorder(ring, CAPACITY)){
+			outputs = this.record(recorder);
+		}
+		// As after a crash: the next run opens the same file.
+		try (FlightRecorder recorder = new FlightRecorder(ring, CAPACITY)){
+			assertEquals(0, recorder.get_head());
+			assertTrue(FlightRecorder.read(ring).isEmpty());
+		}
+		List<FlightRecorder.Entry> entries = FlightRecorder.read(previous);
+		assertEquals(CAPACITY, entries.size());
+		assertEquals(PULSES - 1, entries.get(CAPACITY - 1).sequence);
+		assertTrue(entries.get(CAPACITY - 1).output.same_as(outputs.get((int) (PULSES - 1))));
+		assertEquals(0, FlightRecorder.verify(entries));
+
+		// The ring holds no pulses now, so opening it again keeps the previous recording.
+		new FlightRecorder(ring, CAPACITY).close();
+		assertEquals(CAPACITY, FlightRecorder.read(previous).size());
+	}
+
+	@Test
+	public void other_files_are_not_overwritten() throws IOException {
+		Path trace = this.temp_directory().resolve("trace.text");
+		byte[] contents = "true 50.0 0.0 0.0 false false false false false\n".getBytes(StandardCharsets.UTF_8);
+		Files.write(trace, contents);
+		try {
+			new FlightRecorder(trace, CAPACITY).close();
+			fail("expected the trace to be refused");
+		} catch (IOException e){
+			assertTrue(Arrays.equals(contents, Files.readAllBytes(trace)));
+			assertFalse(Files.exists(FlightRecorder.previous(trace)));
+		}
+	}
+}
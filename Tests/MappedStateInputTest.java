@@ -0,0 +1,79 @@
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class MappedStateInputTest {
+
+	/**
+	 * Replays the given file through the original string based input and
+	 * returns the formatted output states.
+	 */
+	private List<String> run_from_strings(Path input_path) throws IOException {
+		List<String> output_lines = new ArrayList<String>();
+		Timer timer = new Timer(new CruiseControlSystem());
+		for (OutputState s : timer.pulse_from_input(StateInput.input_states_from_file(input_path))){
+			output_lines.add(s.format());
+		}
+		return output_lines;
+	}
+
+	private List<String> run_mapped(Path input_path, int window_size) throws IOException {
+		List<String> output_lines = new ArrayList<String>();
+		Timer timer = new Timer(new CruiseControlSystem());
+		try (MappedStateInput input_states = new MappedStateInput(input_path, window_size)){
+			timer.pulse_from_input(input_states, s -> output_lines.add(s.format()));
+		}
+		return output_lines;
+	}
+
+	private Path write_trace(String contents) throws IOException {
+		Path input_path = Files.createTempFile("trace", ".text");
+		input_path.toFile().deleteOnExit();
+		Files.write(input_path, contents.getBytes(StandardCharsets.UTF_8));
+		return input_path;
+	}
+
+	@Test
+	public void mapped_input_matches_string_input() throws IOException {
+		Path input_path = this.write_trace("true 50.0 0.0 0.5 false false false false false\n"
+										 + "- - - - true - - - -\r\n"
+										 + "- 55 - +0.25 - - TRUE - - extra\r"
+										 + "- 1e2 0.0 - - - - true -  \n"
+										 + "false - 0.1 - - - - - -\n");
+		List<String> expected = this.run_from_strings(input_path);
+		assertEquals(5, expected.size());
+		assertEquals(expected, this.run_mapped(input_path, 1 << 20));
+	}
+
+	@Test
+	public void mapped_input_remaps_lines_across_windows() throws IOException {
+		StringBuilder contents = new StringBuilder();
+		for (int i = 0; i < 200; i++){
+			contents.append("true ").append(40 + i % 30).append(".5 0.0 0.").append(i % 10)
+					.append(i % 7 == 0 ? " true" : " -").append(" - - - -\r\n");
+		}
+		Path input_path = this.write_trace(contents.toString());
+		assertEquals(this.run_from_strings(input_path), this.run_mapped(input_path, 101));
+	}
+
+	@Test
+	public void mapped_input_decodes_keep_previous_marker() throws IOException {
+		Path input_path = this.write_trace("- -2.5 - - - - - - -");
+		PackedInputState state = new PackedInputState();
+		try (MappedStateInput input_states = new MappedStateInput(input_path)){
+			assertTrue(input_states.next(state));
+			assertFalse(input_states.next(state));
+		}
+		assertEquals(PackedInputState.SPEED_SENSOR, state.present);
+		assertEquals(-2.5, state.speed_sensor, 0.0);
+	}
+}
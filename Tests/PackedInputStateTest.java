@@ -0,0 +1,116 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class PackedInputStateTest {
+
+	private static final String[] TRACE = {
+		"true 50.0 0.0 0.0 false false false false false",
+		"- - - - true - - - -",
+		"- 55.0 - 0.7 - - - - -",
+		"- - - 0.0 - - - - -",
+		"- - - - - - true - -",
+		"- - - - - - false true -",
+		"- - 0.4 - - - - - -",
+		"- - 0.0 - - - - - true",
+		"- 1.5E-4 - - - - - - -",
+		"false - - - - - - - -"
+	};
+
+	private List<String> generated_lines() throws IOException {
+		Path path = Files.createTempFile("generated", ".text");
+		path.toFile().deleteOnExit();
+		TraceGenerator.write_text(17, 20000, path, ForkJoinPool.commonPool());
+		return Files.readAllLines(path, StandardCharsets.UTF_8);
+	}
+
+	private void assert_same_outputs(List<OutputState> expected, List<OutputState> actual){
+		assertEquals(expected.size(), actual.size());
+		Iterator<OutputState> actual_states = actual.iterator();
+		for (OutputState state : expected){
+			assertEquals(state.format(), actual_states.next().format());
+		}
+	}
+
+	private void assert_parity(List<String> lines){
+		List<OutputState> expected = new Timer(new CruiseControlSystem())
+			.pulse_from_input(StateInput.input_states_from_strings(lines));
+		Timer timer = new Timer(new CruiseControlSystem());
+		PulseRecord record = new PulseRecord();
+		List<OutputState> packed = new ArrayList<OutputState>();
+		for (PackedInputState state : StateInput.packed_states_from_strings(lines)){
+			timer.pulse(state, record);
+			packed.add(record.to_output_state());
+		}
+		this.assert_same_outputs(expected, packed);
+	}
+
+	@Test
+	public void packed_replay_matches_string_replay() throws IOException {
+		this.assert_parity(List.of(TRACE));
+		this.assert_parity(this.generated_lines());
+		this.assert_parity(Files.readAllLines(Paths.get("test-input-files", "simple-input.text")));
+	}
+
+	@Test
+	public void packed_states_match_the_strings_they_came_from() throws IOException {
+		List<String> lines = this.generated_lines();
+		List<InputState> input_states = StateInput.input_states_from_strings(lines);
+		List<PackedInputState> from_strings = StateInput.packed_states_from_strings(lines);
+		Path path = Files.createTempFile("packed", ".text");
+		path.toFile().deleteOnExit();
+		Files.write(path, lines, StandardCharsets.UTF_8);
+		List<PackedInputState> from_file = StateInput.packed_states_from_file(path);
+		assertEquals(lines.size(), from_strings.size());
+		assertEquals(lines.size(), from_file.size());
+		for (int i = 0; i < lines.size(); i++){
+			assertTrue(from_strings.get(i).same_as(input_states.get(i).packed()));
+			assertTrue(from_file.get(i).same_as(from_strings.get(i)));
+		}
+	}
+
+	@Test
+	public void packed_form_follows_the_string_fields(){
+		InputState state = StateInput.input_states_from_strings(new String[]{ TRACE[1] }).get(0);
+		PackedInputState before = state.packed();
+		assertTrue(before.start_ccs_button);
+		assertFalse(before.is_present(PackedInputState.SPEED_SENSOR));
+
+		state.start_ccs_button = "false";
+		state.speed_sensor = "72.5";
+		PackedInputState after = state.packed();
+		assertFalse(after.start_ccs_button);
+		assertEquals(72.5, after.speed_sensor, 0.0);
+		assertTrue(after.is_present(PackedInputState.SPEED_SENSOR));
+		// An earlier packed form is a copy, unaffected by the change.
+		assertTrue(before.start_ccs_button);
+
+		// A reused state takes none of its earlier fields along.
+		PackedInputState reused = new PackedInputState();
+		reused.copy_from(after);
+		state.speed_sensor = "-";
+		state.pack_into(reused);
+		assertFalse(reused.is_present(PackedInputState.SPEED_SENSOR));
+		assertTrue(reused.same_as(state.packed()));
+	}
+
+	@Test
+	public void replaying_a_list_twice_gives_the_same_outputs(){
+		List<InputState> input_states = new ArrayList<InputState>(StateInput.input_states_from_strings(TRACE));
+		List<OutputState> first = new Timer(new CruiseControlSystem()).pulse_from_input(input_states);
+		List<OutputState> second = new Timer(new CruiseControlSystem()).pulse_from_input(input_states);
+		this.assert_same_outputs(first, second);
+	}
+}
@@ -0,0 +1,116 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class ParallelTraceParserTest {
+
+	private Path temp_file(String contents) throws IOException {
+		Path path = Files.createTempFile("trace", ".text");
+		path.toFile().deleteOnExit();
+		Files.write(path, contents.getBytes(StandardCharsets.UTF_8));
+		return path;
+	}
+
+	private String random_field(Random random, String... values){
+		return random.nextInt(4) == 0 ? values[random.nextInt(values.length)] : "-";
+	}
+
+	/**
+	 * A trace where most fields are "-", so that values are carried across
+	 * many chunk boundaries, with a mix of line terminators.
+	 */
+	private String random_trace(Random random, int lines){
+		StringBuilder contents = new StringBuilder();
+		String[] terminators = { "\n", "\r\n", "\r" };
+		for (int i = 0; i < lines; i++){
+			contents.append(this.random_field(random, "true", "false", "TRUE")).append(' ')
+					.append(this.random_field(random, "35", "45.5", "60.25", "0")).append(' ')
+					.append(random.nextInt(50) == 0 ? "0.5" : "-").append(' ')
+					.append(this.random_field(random, "0.0", "0.3", "0.71")).append(' ')
+					.append(this.random_field(random, "true", "false")).append(' ')
+					.append(this.random_field(random, "true", "false")).append(' ')
+					.append(this.random_field(random, "true", "false")).append(' ')
+					.append(this.random_field(random, "true", "false")).append(' ')
+					.append(this.random_field(random, "true", "false"))
+					.append(terminators[random.nextInt(terminators.length)]);
+		}
+		return contents.toString();
+	}
+
+	private List<String> replay(InputStateCursor input_states) throws IOException {
+		List<String> output_lines = new ArrayList<String>();
+		new Timer(new CruiseControlSystem()).record_from_input(input_states, r -> output_lines.add(r.format()));
+		return output_lines;
+	}
+
+	private void assert_same_columns(List<TraceColumns> expected, List<TraceColumns> actual){
+		PackedInputState expected_state = new PackedInputState();
+		PackedInputState actual_state = new PackedInputState();
+		TraceColumnsInput expected_input = new TraceColumnsInput(expected);
+		TraceColumnsInput actual_input = new TraceColumnsInput(actual);
+		long rows = 0;
+		while (expected_input.next(expected_state)){
+			assertTrue(actual_input.next(actual_state));
+			assertTrue("row " + rows, expected_state.same_as(actual_state));
+			rows++;
+		}
+		assertTrue(!actual_input.next(actual_state));
+	}
+
+	@Test
+	public void parallel_parse_matches_sequential_parse() throws IOException {
+		Random random = new Random(23);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for (int round = 0; round < 5; round++){
+				Path path = this.temp_file(this.random_trace(random, 20000));
+				List<TraceColumns> sequential = ParallelTraceParser.parse_sequentially(path);
+				List<TraceColumns> parallel = new ParallelTraceParser(pool, 37, 1).parse(path);
+				this.assert_same_columns(sequential, parallel);
+
+				List<String> expected = this.replay(StateInput.cursor_from_file(path));
+				assertEquals(expected, this.replay(new TraceColumnsInput(parallel)));
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void parallel_parse_resolves_only_sensor_fields() throws IOException {
+		Path path = this.temp_file("true 50 - - true false false false false\n- - - 0.5 - - - - -\n");
+		List<TraceColumns> blocks = new ParallelTraceParser(ForkJoinPool.commonPool(), 2, 1).parse(path);
+		PackedInputState state = new PackedInputState();
+		blocks.get(blocks.size() - 1).get(blocks.get(blocks.size() - 1).size() - 1, state);
+		assertEquals(ParallelTraceParser.SENSOR_FIELDS, state.present);
+		assertTrue(state.engine_status);
+		assertEquals(50.0, state.speed_sensor, 0.0);
+		assertEquals(0.0, state.brake_pedal, 0.0);
+		assertEquals(0.5, state.accelerator_pedal, 0.0);
+	}
+
+	@Test
+	public void parallel_parse_reports_the_failing_line() throws IOException {
+		Random random = new Random(29);
+		String trace = this.random_trace(random, 3000).replace("\r\n", "\n").replace("\r", "\n") + "true 50\n";
+		Path path = this.temp_file(trace);
+		try {
+			new ParallelTraceParser(ForkJoinPool.commonPool(), 16, 1).parse(path);
+			fail("expected a parse error");
+		} catch (IllegalArgumentException e){
+			int lines = trace.split("\n").length;
+			assertTrue(e.getMessage(), e.getMessage().contains(String.valueOf(lines)));
+		}
+	}
+}
@@ -0,0 +1,202 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+
+public class PulseMetricsTest {
+
+	private static final String CRUISING = "true 50.0 0.0 0.0 true false false false false";
+
+	/**
+	 * For each rule, the rules which fire in the last pulse of a trace that
+	 * makes it fire, and the throttle that pulse leaves, which shows the
+	 * rule actually ran. Starting the CCS fires again on every pulse while
+	 * its button is held.
+	 */
+	private static final Object[][] SCENARIOS = {
+		{ CcsRule.START_CCS, new CcsRule[]{ CcsRule.START_CCS }, 1.0,
+		  new String[]{ CRUISING } },
+		{ CcsRule.STOP_CCS, new CcsRule[]{ CcsRule.START_CCS, CcsRule.STOP_CCS }, 1.0,
+		  new String[]{ CRUISING, "- - - - - true - - -" } },
+		{ CcsRule.BRAKE_DISENGAGE, new CcsRule[]{ CcsRule.BRAKE_DISENGAGE }, 0.0,
+		  new String[]{ CRUISING, "- - 0.5 - - - - - -" } },
+		{ CcsRule.ENGINE_OFF_DISENGAGE, new CcsRule[]{ CcsRule.ENGINE_OFF_DISENGAGE }, 0.0,
+		  new String[]{ CRUISING, "false - - - - - - - -" } },
+		{ CcsRule.PEDAL_OVERRIDE, new CcsRule[]{ CcsRule.START_CCS, CcsRule.PEDAL_OVERRIDE }, 1.0,
+		  new String[]{ CRUISING, "- - - 0.8 - - - - -" } },
+		{ CcsRule.PEDAL_WITH_ACCELERATION_BUTTON,
+		  new CcsRule[]{ CcsRule.START_CCS, CcsRule.PEDAL_WITH_ACCELERATION_BUTTON, CcsRule.BUTTON_ACCELERATION },
+		  (50.0 + 7.2) / 50.0, new String[]{ CRUISING, "- - - 0.8 - - true - -" } },
+		{ CcsRule.PEDAL_RELEASED, new CcsRule[]{ CcsRule.START_CCS, CcsRule.PEDAL_RELEASED }, 1.0,
+		  new String[]{ CRUISING, "- - - 0.8 - - - - -", "- - - 0.0 - - - - -" } },
+		{ CcsRule.BUTTON_ACCELERATION, new CcsRule[]{ CcsRule.START_CCS, CcsRule.BUTTON_ACCELERATION },
+		  (50.0 + 7.2) / 50.0, new String[]{ CRUISING, "- - - - - - true - -" } },
+		{ CcsRule.STOP_ACCELERATION, new CcsRule[]{ CcsRule.START_CCS, CcsRule.STOP_ACCELERATION },
+		  (50.0 + 7.2) / 50.0, new String[]{ CRUISING, "- - - - - - true - -", "- - - - - - false true -" } },
+		{ CcsRule.RESUME, new CcsRule[]{ CcsRule.RESUME }, 0.6,
+		  new String[]{ "true 30.0 0.0 0.0 false false false false true" } }
+	};
+
+	@Test
+	public void rule_bits_are_distinct_and_follow_the_ordinals(){
+		int all = 0;
+		for (CcsRule rule : CcsRule.values()){
+			assertEquals(1, Integer.bitCount(rule.bit()));
+			assertEquals(0, all & rule.bit());
+			assertEquals(rule, CcsRule.from_ordinal(Integer.numberOfTrailingZeros(rule.bit())));
+			all |= rule.bit();
+		}
+		assertEquals((1 << CcsRule.values().length) - 1, all);
+	}
+
+	private void assert_fired_rules(Supplier<ICruiseControlSystem> implementation) throws IOException {
+		Set<CcsRule> covered = new HashSet<CcsRule>();
+		for (Object[] scenario : SCENARIOS){
+			CcsRule rule = (CcsRule) scenario[0];
+			int expected = 0;
+			for (CcsRule fired : (CcsRule[]) scenario[1]){
+				expected |= fired.bit();
+			}
+			ICruiseControlSystem ccs = implementation.get();
+			PulseMetrics metrics = new PulseMetrics();
+			Timer timer = new Timer(ccs);
+			timer.set_metrics(metrics);
+			List<Integer> fired_rules = new ArrayList<Integer>();
+			PulseRecord last = new PulseRecord();
+			long pulses;
+			try (InputStateCursor input = StateInput.cursor_from_strings((String[]) scenario[3])){
+				pulses = timer.record_from_input(input, record -> {
+					fired_rules.add(ccs.get_fired_rules());
+					last.copy_from(record);
+				});
+			}
+			String name = ccs.getClass().getName() + " " + rule.label();
+			assertEquals(name, expected, (int) fired_rules.get(fired_rules.size() - 1));
+			assertEquals(name, (double) scenario[2], last.throttle_position, 1e-9);
+			covered.add(rule);
+
+			// The metrics count exactly the rules whose bits were reported.
+			assertEquals(pulses, metrics.pulses());
+			for (CcsRule counted : CcsRule.values()){
+				long reported = 0;
+				for (int bits : fired_rules){
+					reported += (bits & counted.bit()) != 0 ? 1 : 0;
+				}
+				assertEquals(name + " " + counted.label(), reported, metrics.rule_count(counted));
+			}
+		}
+		assertEquals(CcsRule.values().length, covered.size());
+	}
+
+	@Test
+	public void each_fired_bit_is_the_rule_that_ran() throws IOException {
+		this.assert_fired_rules(CruiseControlSystem::new);
+		this.assert_fired_rules(StateMachineCruiseControlSystem::new);
+	}
+
+	@Test
+	public void histogram_buckets_include_their_upper_bound(){
+		LatencyHistogram histogram = new LatencyHistogram();
+		long[] samples = { 0, 1, 2, 3, 4, 5, 1024, 1025, Long.MAX_VALUE };
+		int[] buckets = { 0, 0, 1, 2, 2, 3, 10, 11, LatencyHistogram.BUCKETS - 1 };
+		long sum = 0;
+		for (long sample : samples){
+			histogram.record(sample);
+			sum += sample;
+		}
+		int[] expected = new int[LatencyHistogram.BUCKETS];
+		for (int bucket : buckets){
+			expected[bucket]++;
+		}
+		for (int bucket = 0; bucket < LatencyHistogram.BUCKETS; bucket++){
+			assertEquals("bucket " + bucket, expected[bucket], histogram.count(bucket));
+		}
+		for (int i = 0; i < samples.length - 1; i++){
+			assertTrue(samples[i] <= LatencyHistogram.upper_bound_nanos(buckets[i]));
+			assertTrue(buckets[i] == 0 || samples[i] > LatencyHistogram.upper_bound_nanos(buckets[i] - 1));
+		}
+		assertEquals(sum, histogram.sum_nanos());
+	}
+
+	@Test
+	public void record_pulse_counts_each_fired_rule(){
+		PulseMetrics metrics = new PulseMetrics();
+		metrics.record_pulse(CcsRule.START_CCS.bit() | CcsRule.RESUME.bit(), 1, 2, 3, 4);
+		metrics.record_pulse(CcsRule.RESUME.bit(), 1, 2, 3, 4);
+		metrics.record_pulse(0, 1, 2, 3, 4);
+		assertEquals(3, metrics.pulses());
+		assertEquals(1, metrics.rule_count(CcsRule.START_CCS));
+		assertEquals(2, metrics.rule_count(CcsRule.RESUME));
+		assertEquals(0, metrics.rule_count(CcsRule.STOP_CCS));
+		assertEquals(3, metrics.parse_latency.count(0));
+		assertEquals(3, metrics.pulse_latency.count(1));
+		assertEquals(3, metrics.record_latency.count(2));
+		assertEquals(3, metrics.output_latency.count(2));
+		assertEquals(12, metrics.output_latency.sum_nanos());
+	}
+
+	@Test
+	public void scrape_is_in_the_prometheus_text_format(){
+		PulseMetrics metrics = new PulseMetrics();
+		// Exactly 1024 ns belongs under le="1.024E-6", 1025 ns only above it.
+		metrics.record_pulse(CcsRule.BRAKE_DISENGAGE.bit(), 1024, 1025, 0, 1L << 45);
+		String text = metrics.scrape();
+		assertTrue(text.endsWith("\n"));
+		assertTrue(text.contains("# TYPE ccs_pulses_total counter\nccs_pulses_total 1\n"));
+		assertTrue(text.contains("ccs_rule_fired_total{rule=\"brake_disengage\"} 1\n"));
+		assertTrue(text.contains("ccs_rule_fired_total{rule=\"start_ccs\"} 0\n"));
+		assertTrue(text.contains("# TYPE ccs_parse_duration_seconds histogram\n"));
+		assertTrue(text.contains("ccs_parse_duration_seconds_bucket{le=\"5.12E-7\"} 0\n"));
+		assertTrue(text.contains("ccs_parse_duration_seconds_bucket{le=\"1.024E-6\"} 1\n"));
+		assertTrue(text.contains("ccs_pulse_duration_seconds_bucket{le=\"1.024E-6\"} 0\n"));
+		assertTrue(text.contains("ccs_pulse_duration_seconds_bucket{le=\"2.048E-6\"} 1\n"));
+		assertTrue(text.contains("ccs_record_duration_seconds_bucket{le=\"1.0E-9\"} 1\n"));
+		// Longer than the last finite bucket, so only counted under +Inf.
+		assertTrue(text.contains("ccs_output_duration_seconds_bucket{le=\""
+								 + LatencyHistogram.upper_bound_nanos(LatencyHistogram.BUCKETS - 2) / 1e9 + "\"} 0\n"));
+		assertTrue(text.contains("ccs_output_duration_seconds_bucket{le=\"+Inf\"} 1\n"));
+		assertTrue(text.contains("ccs_parse_duration_seconds_sum 1.024E-6\n"));
+		assertTrue(text.contains("ccs_parse_duration_seconds_count 1\n"));
+
+		// Every sample line is a name, optional labels and a number.
+		for (String line : text.split("\n")){
+			if (!line.startsWith("#")){
+				assertTrue(line, line.matches("[a-z_]+(\\{[a-z]+=\"[^\"]+\"\\})? [0-9.E+-]+"));
+			}
+		}
+	}
+
+	@Test
+	public void server_serves_the_scrape() throws IOException {
+		PulseMetrics metrics = new PulseMetrics();
+		metrics.record_pulse(CcsRule.START_CCS.bit(), 10, 20, 30, 40);
+		MetricsServer server = new MetricsServer(metrics, 0);
+		server.start();
+		try {
+			URL url = new URL("http://127.0.0.1:" + server.get_port() + "/metrics");
+			HttpURLConnection get = (HttpURLConnection) url.openConnection();
+			assertEquals(200, get.getResponseCode());
+			assertEquals("text/plain; version=0.0.4; charset=utf-8", get.getContentType());
+			try (InputStream body = get.getInputStream()){
+				assertEquals(metrics.scrape(), new String(body.readAllBytes(), StandardCharsets.UTF_8));
+			}
+
+			HttpURLConnection post = (HttpURLConnection) url.openConnection();
+			post.setRequestMethod("POST");
+			assertEquals(405, post.getResponseCode());
+		} finally {
+			server.stop();
+		}
+	}
+}
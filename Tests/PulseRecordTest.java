@@ -0,0 +1,77 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PulseRecordTest {
+
+	private static final long PULSES = 20000;
+
+	/**
+	 * The output state as Car.record_state built it before PulseRecord: the
+	 * whole line formatted, then split up again.
+	 */
+	private OutputState formatted_output_state(Car car){
+		String state_string = String.format("%b %f %f %f %b %b %b %b %b",
+											car.engine_sensor.is_engine_on(),
+											car.speed_sensor.get_speed(),
+											car.brake_pedal.get_brake(),
+											car.accelerator_pedal.get_accelerator(),
+											car.dashboard.get_start_ccs(),
+											car.dashboard.get_stop_ccs(),
+											car.dashboard.get_start_accelerating(),
+											car.dashboard.get_stop_accelerating(),
+											car.dashboard.get_resume());
+		return new OutputState(state_string, car.throttle.getThrottlePosition());
+	}
+
+	@Test
+	public void record_formats_as_the_output_state() throws IOException {
+		Car car = new Car();
+		ICruiseControlSystem ccs = new CruiseControlSystem();
+		PackedInputState state = new PackedInputState();
+		PulseRecord record = new PulseRecord();
+		try (InputStateCursor driver = new TraceGenerator(23, PULSES)){
+			while (driver.next(state)){
+				car.update_states(state);
+				ccs.pulse(car);
+				car.record_state(record);
+				String expected = this.formatted_output_state(car).format();
+				assertEquals(expected, car.record_state().format());
+				assertEquals(expected, new OutputState(record).format());
+				assertEquals(expected, record.to_output_state().format());
+				assertEquals(expected, record.format());
+				assertEquals(car.throttle.getThrottlePosition(), record.to_output_state().get_throttle_position(), 0.0);
+			}
+		}
+	}
+
+	@Test
+	public void record_from_input_matches_pulse_from_input() throws IOException {
+		List<OutputState> expected = new ArrayList<OutputState>();
+		try (InputStateCursor driver = new TraceGenerator(29, PULSES)){
+			new Timer(new CruiseControlSystem()).pulse_from_input(driver, expected::add);
+		}
+		List<PulseRecord> records = new ArrayList<PulseRecord>();
+		long pulses;
+		try (InputStateCursor driver = new TraceGenerator(29, PULSES)){
+			pulses = new Timer(new CruiseControlSystem()).record_from_input(driver, record -> {
+				PulseRecord copy = new PulseRecord();
+				copy.copy_from(record);
+				assertTrue(copy.same_as(record));
+				records.add(copy);
+			});
+		}
+		assertEquals(PULSES, pulses);
+		assertEquals(expected.size(), records.size());
+		Iterator<PulseRecord> recorded = records.iterator();
+		for (OutputState state : expected){
+			assertEquals(state.format(), recorded.next().format());
+		}
+	}
+}
@@ -0,0 +1,136 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PulseRecordWriterTest {
+
+	private static final double[] AWKWARD_VALUES = {
+		0.0, -0.0, 0.0000005, -0.0000005, 1.0000005, 2.5e-6, 0.1234565, -4e-7,
+		999999.9999995, 1e6, 123456789.125, Double.MAX_VALUE, Double.MIN_VALUE,
+		Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY
+	};
+
+	private double random_double(Random random){
+		switch (random.nextInt(5)){
+		case 0:
+			return AWKWARD_VALUES[random.nextInt(AWKWARD_VALUES.length)];
+		case 1:
+			// Exactly halfway between two printed values, as far as decimals go.
+			return (random.nextInt(2000000) - 1000000) * 0.0000005;
+		case 2:
+			return random.nextDouble() * 100;
+		case 3:
+			return Math.pow(10, random.nextInt(30) - 15) * random.nextDouble();
+		default:
+			return random.nextInt(100) / 50.0;
+		}
+	}
+
+	private void random_record(Random random, PulseRecord record){
+		record.engine_status = random.nextBoolean();
+		record.speed_sensor = this.random_double(random);
+		record.brake_pedal = this.random_double(random);
+		record.accelerator_pedal = this.random_double(random);
+		record.start_ccs_button = random.nextBoolean();
+		record.stop_ccs_button = random.nextBoolean();
+		record.start_acceleration_button = random.nextBoolean();
+		record.stop_acceleration_button = random.nextBoolean();
+		record.resume_button = random.nextBoolean();
+		record.throttle_position = this.random_double(random);
+	}
+
+	@Test
+	public void writer_matches_format() throws IOException {
+		Random random = new Random(13);
+		PulseRecord record = new PulseRecord();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		// A small buffer, so that lines and runs get split across flushes.
+		PulseRecordWriter writer = new PulseRecordWriter(Channels.newChannel(output), 5000, "\n", Locale.ROOT);
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 20000; i++){
+			this.random_record(random, record);
+			int count = random.nextInt(10) == 0 ? random.nextInt(200) : 1;
+			writer.accept_run(record, count);
+			for (int j = 0; j < count; j++){
+				expected.append(String.format(Locale.ROOT, "%b %f %f %f %b %b %b %b %b %f",
+											  record.engine_status, record.speed_sensor, record.brake_pedal,
+											  record.accelerator_pedal, record.start_ccs_button,
+											  record.stop_ccs_button, record.start_acceleration_button,
+											  record.stop_acceleration_button, record.resume_button,
+											  record.throttle_position)).append('\n');
+			}
+		}
+		writer.flush();
+		assertEquals(expected.toString(), output.toString("US-ASCII"));
+	}
+
+	@Test
+	public void writer_follows_locale() throws IOException {
+		PulseRecord record = new PulseRecord();
+		record.speed_sensor = 52.5;
+		record.throttle_position = -0.0;
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		PulseRecordWriter writer = new PulseRecordWriter(Channels.newChannel(output), 5000, "\n", Locale.GERMANY);
+		writer.accept(record);
+		writer.flush();
+		assertEquals("false 52,500000 0,000000 0,000000 false false false false false -0,000000\n",
+					 output.toString("US-ASCII"));
+	}
+
+	@Test
+	public void delta_output_expands_to_full_output() throws IOException {
+		Random random = new Random(17);
+		PulseRecord record = new PulseRecord();
+		ByteArrayOutputStream full_output = new ByteArrayOutputStream();
+		ByteArrayOutputStream delta_output = new ByteArrayOutputStream();
+		PulseRecordWriter full_writer = new PulseRecordWriter(Channels.newChannel(full_output), 5000, "\n", Locale.ROOT);
+		PulseRecordWriter delta_writer = new PulseRecordWriter(Channels.newChannel(delta_output), 5000, "\n", Locale.ROOT);
+		delta_writer.set_delta_encoding(true);
+		for (int i = 0; i < 20000; i++){
+			// Mostly only the throttle changes between pulses.
+			if (random.nextInt(20) == 0){
+				this.random_record(random, record);
+			} else if (random.nextBoolean()){
+				record.throttle_position = this.random_double(random);
+			}
+			int count = random.nextInt(10) == 0 ? random.nextInt(200) : 1;
+			full_writer.accept_run(record, count);
+			delta_writer.accept_run(record, count);
+		}
+		full_writer.flush();
+		delta_writer.flush();
+		assertTrue(delta_output.size() * 3 < full_output.size());
+
+		DeltaOutputReader reader = new DeltaOutputReader(
+			new BufferedReader(new StringReader(delta_output.toString("US-ASCII"))));
+		StringBuilder expanded = new StringBuilder();
+		String line;
+		while ((line = reader.read_line()) != null){
+			expanded.append(line).append('\n');
+		}
+		assertEquals(full_output.toString("US-ASCII"), expanded.toString());
+	}
+
+	@Test
+	public void delta_reader_builds_output_states() throws IOException {
+		DeltaOutputReader reader = new DeltaOutputReader(new BufferedReader(new StringReader(
+			"true 50.000000 0.000000 0.000000 true false false false false 1.000000\n"
+			+ "- - - 0.500000 - - - - - -\n")));
+		reader.read_state();
+		OutputState state = reader.read_state();
+		assertEquals("true", state.engine_status);
+		assertEquals("0.500000", state.accelerator_pedal);
+		assertEquals(1.0, state.get_throttle_position(), 0.0);
+		assertNull(reader.read_state());
+	}
+}
@@ -0,0 +1,136 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class RealTimeSchedulerTest {
+
+	private static final String[] TRACE = {
+		"true 50.0 0.0 0.0 false false false false false",
+		"- - - - true - - - -",
+		"- 55.0 - - - - - - -",
+		"- - 0.4 - - - - - -",
+		"- - 0.0 - - - - - true",
+		"- 60.0 - - - - - - -",
+		"- - - 0.8 - - - - -",
+		"- - - 0.0 - - - - -"
+	};
+
+	/**
+	 * Simulated time, which waiting jumps straight to (plus a fixed lateness)
+	 * and which each pulse advances by its cost, since the sink runs inside
+	 * the timed part of a pulse.
+	 */
+	private static class FakeClock implements RealTimeScheduler.Clock {
+		long now = 1000000;
+		long lateness = 0;
+
+		@Override
+		public long nano_time(){
+			return this.now;
+		}
+
+		@Override
+		public void wait_until(long release){
+			this.now = Math.max(this.now, release + this.lateness);
+		}
+	}
+
+	private RealTimeStats run(FakeClock clock, long period_nanos, long[] costs) throws IOException {
+		RealTimeScheduler scheduler = new RealTimeScheduler(1e9 / period_nanos, clock);
+		assertEquals(period_nanos, scheduler.get_period_nanos());
+		int[] pulse = {0};
+		try (InputStateCursor input = StateInput.cursor_from_strings(TRACE)){
+			return scheduler.run(new Timer(new CruiseControlSystem()), input, record -> {
+				clock.now += costs[pulse[0]++];
+			});
+		}
+	}
+
+	@Test
+	public void pulses_within_their_period_miss_no_deadlines() throws IOException {
+		long[] costs = new long[TRACE.length];
+		for (int i = 0; i < costs.length; i++){
+			costs[i] = 100000 + 1000 * i;
+		}
+		RealTimeStats stats = this.run(new FakeClock(), 1000000, costs);
+		assertEquals(TRACE.length, stats.get_pulses());
+		assertEquals(0, stats.get_missed_deadlines());
+		assertEquals(0, stats.get_skipped_releases());
+		assertEquals(0, stats.get_max_jitter_nanos());
+		assertEquals(costs[costs.length - 1], stats.get_max_execution_nanos());
+		assertEquals(103500.0, stats.get_mean_execution_nanos(), 1e-9);
+	}
+
+	@Test
+	public void overruns_count_missed_deadlines_and_skip_releases() throws IOException {
+		long[] costs = new long[TRACE.length];
+		for (int i = 0; i < costs.length; i++){
+			costs[i] = 100000;
+		}
+		// Overruns the next release by 1.5 periods, so two releases are skipped.
+		costs[2] = 2500000;
+		// Finishes exactly at the next release, which is still met.
+		costs[5] = 1000000;
+		// Just past it, so one is skipped.
+		costs[6] = 1000001;
+		RealTimeStats stats = this.run(new FakeClock(), 1000000, costs);
+		assertEquals(TRACE.length, stats.get_pulses());
+		assertEquals(2, stats.get_missed_deadlines());
+		assertEquals(3, stats.get_skipped_releases());
+		// The pulses after an overrun are released on the schedule, not late.
+		assertEquals(0, stats.get_max_jitter_nanos());
+		assertEquals(2500000, stats.get_max_execution_nanos());
+	}
+
+	@Test
+	public void jitter_is_measured_from_the_release() throws IOException {
+		FakeClock clock = new FakeClock();
+		clock.lateness = 5000;
+		long[] costs = new long[TRACE.length];
+		RealTimeStats stats = this.run(clock, 1000000, costs);
+		assertEquals(5000, stats.get_max_jitter_nanos());
+		long p50 = stats.jitter_percentile_nanos(0.5);
+		assertTrue(p50 >= 5000 && p50 <= 2 * 5000);
+		assertEquals(p50, stats.jitter_percentile_nanos(0.99));
+		assertTrue(stats.execution_percentile_nanos(0.99) <= 1);
+		assertEquals(0, stats.get_missed_deadlines());
+	}
+
+	@Test
+	public void timer_pulses_are_paced_at_the_rate() throws IOException {
+		List<PulseRecord> expected = new ArrayList<PulseRecord>();
+		try (InputStateCursor input = StateInput.cursor_from_strings(TRACE)){
+			new Timer(new CruiseControlSystem()).record_from_input(input, record -> {
+				PulseRecord copy = new PulseRecord();
+				copy.copy_from(record);
+				expected.add(copy);
+			});
+		}
+
+		RealTimeScheduler scheduler = new RealTimeScheduler(200.0);
+		List<PulseRecord> paced = new ArrayList<PulseRecord>();
+		List<Long> times = new ArrayList<Long>();
+		long start = System.nanoTime();
+		RealTimeStats stats;
+		try (InputStateCursor input = StateInput.cursor_from_strings(TRACE)){
+			stats = scheduler.run(new Timer(new CruiseControlSystem()), input, record -> {
+				times.add(System.nanoTime());
+				PulseRecord copy = new PulseRecord();
+				copy.copy_from(record);
+				paced.add(copy);
+			});
+		}
+		assertEquals(TRACE.length, stats.get_pulses());
+		assertEquals(expected.size(), paced.size());
+		for (int i = 0; i < expected.size(); i++){
+			assertTrue(paced.get(i).same_as(expected.get(i)));
+			// Pulse i is never released before start + (i + 1) periods.
+			assertTrue(times.get(i) - start >= (i + 1) * scheduler.get_period_nanos());
+		}
+	}
+}
@@ -0,0 +1,95 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class SpeculativeReplayTest {
+
+	private static final String[] LINES = {
+		"true 50 0.0 0.0 true false false false false",
+		"- - - - - - - - -",
+		"true 55 0.0 0.3 - - - - -",
+		"true 55 0.0 0.0 - - true - -",
+		"- - - - - - - true -",
+		"true 45 0.4 0.0 - - - - -",
+		"- - - - - - - - true",
+		"- - - - - true - - -",
+		"false 0 0 0 - - - - -",
+	};
+
+	private List<TraceColumns> random_trace(Random random, int lines, boolean engage_once) throws IOException {
+		StringBuilder contents = new StringBuilder();
+		if (engage_once){
+			contents.append(LINES[0]).append('\n');
+		}
+		for (int i = 0; i < lines; i++){
+			// Without the start or resume buttons the CCS never engages again,
+			// so a warm-up from the initial state never predicts that it did.
+			int line = engage_once ? 1 + random.nextInt(5) : random.nextInt(LINES.length);
+			contents.append(LINES[line]).append('\n');
+		}
+		Path path = Files.createTempFile("trace", ".text");
+		path.toFile().deleteOnExit();
+		Files.write(path, contents.toString().getBytes(StandardCharsets.UTF_8));
+		return ParallelTraceParser.parse_sequentially(path);
+	}
+
+	private List<String> replay(List<TraceColumns> trace) throws IOException {
+		List<String> output_lines = new ArrayList<String>();
+		new Timer(new CruiseControlSystem()).record_from_input(new TraceColumnsInput(trace),
+															   r -> output_lines.add(r.format()));
+		return output_lines;
+	}
+
+	private List<String> replay(SpeculativeReplay replay, List<TraceColumns> trace) throws IOException {
+		List<String> output_lines = new ArrayList<String>();
+		replay.record_from_input(trace, CruiseControlSystem::new, r -> output_lines.add(r.format()));
+		return output_lines;
+	}
+
+	@Test
+	public void speculative_replay_matches_sequential_replay() throws IOException {
+		List<TraceColumns> trace = this.random_trace(new Random(31), 50000, false);
+		List<String> expected = this.replay(trace);
+
+		SpeculativeReplay replay = new SpeculativeReplay(ForkJoinPool.commonPool(), 16, 1024);
+		assertEquals(expected, this.replay(replay, trace));
+		assertEquals(0, replay.get_mispredictions());
+
+		// Without any warm-up almost every segment mispredicts, and is re-run.
+		replay = new SpeculativeReplay(ForkJoinPool.commonPool(), 16, 0);
+		assertEquals(expected, this.replay(replay, trace));
+		assertTrue(replay.get_mispredictions() > 0);
+	}
+
+	@Test
+	public void speculative_replay_recovers_from_mispredictions() throws IOException {
+		List<TraceColumns> trace = this.random_trace(new Random(37), 20000, true);
+		SpeculativeReplay replay = new SpeculativeReplay(ForkJoinPool.commonPool(), 8, 256);
+		assertEquals(this.replay(trace), this.replay(replay, trace));
+		assertEquals(7, replay.get_mispredictions());
+	}
+
+	@Test
+	public void restored_car_replays_like_the_original() {
+		Car car = new Car();
+		car.update_states(new InputState("true 52.5 0.25 0.5 true false true false true"));
+		PulseRecord record = new PulseRecord();
+		car.record_state(record);
+
+		Car restored = new Car();
+		restored.restore_state(record);
+		PulseRecord restored_record = new PulseRecord();
+		restored.record_state(restored_record);
+		assertTrue(record.same_as(restored_record));
+	}
+}
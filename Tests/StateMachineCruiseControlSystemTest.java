@@ -0,0 +1,84 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class StateMachineCruiseControlSystemTest {
+
+	/**
+	 * Fills in a random input state, favouring '-' and the values around
+	 * the thresholds the CCS rules test for.
+	 */
+	private void random_state(Random random, PackedInputState state){
+		double[] speeds = { 0.0, 39.9, 40.0, 50.0, 72.5 };
+		double[] pedals = { 0.0, 0.0, 0.3, 1.2 };
+		state.clear();
+		for (int field = 0; field < StateLineDecoder.FIELD_COUNT; field++){
+			if (random.nextInt(3) == 0){
+				state.present |= 1 << field;
+			}
+		}
+		state.engine_status = random.nextInt(8) != 0;
+		state.speed_sensor = speeds[random.nextInt(speeds.length)];
+		state.brake_pedal = pedals[random.nextInt(pedals.length)];
+		state.accelerator_pedal = pedals[random.nextInt(pedals.length)];
+		state.start_ccs_button = random.nextBoolean();
+		state.stop_ccs_button = random.nextInt(4) == 0;
+		state.start_acceleration_button = random.nextBoolean();
+		state.stop_acceleration_button = random.nextInt(4) == 0;
+		state.resume_button = random.nextInt(4) == 0;
+	}
+
+	@Test
+	public void state_machine_matches_cruise_control_system() {
+		Random random = new Random(11);
+		PackedInputState state = new PackedInputState();
+		PulseRecord expected = new PulseRecord();
+		PulseRecord actual = new PulseRecord();
+		for (int trace = 0; trace < 200; trace++){
+			Car expected_car = new Car();
+			CruiseControlSystem expected_ccs = new CruiseControlSystem();
+			Car actual_car = new Car();
+			StateMachineCruiseControlSystem actual_ccs = new StateMachineCruiseControlSystem();
+			for (int pulse = 0; pulse < 200; pulse++){
+				this.random_state(random, state);
+				expected_car.update_states(state);
+				expected_ccs.pulse(expected_car);
+				actual_car.update_states(state);
+				actual_ccs.pulse(actual_car);
+
+				expected_car.record_state(expected);
+				actual_car.record_state(actual);
+				assertEquals(expected.format(), actual.format());
+				assertEquals(Double.doubleToRawLongBits(expected.throttle_position),
+							 Double.doubleToRawLongBits(actual.throttle_position));
+				assertEquals(expected_ccs.get_fired_rules(), actual_ccs.get_fired_rules());
+			}
+		}
+	}
+
+	@Test
+	public void state_machine_reports_mode() {
+		String[] input_lines = { "true 50.0 0.0 0.0 true false false false false",
+								 "- - - - - - true - -",
+								 "- - - - - - false - -",
+								 "- - - 0.5 - - - - -",
+								 "- - 0.2 0.0 - - - - -" };
+		StateMachineCruiseControlSystem ccs = new StateMachineCruiseControlSystem();
+		Car car = new Car();
+		StateMachineCruiseControlSystem.Mode[] expected = {
+			StateMachineCruiseControlSystem.Mode.CRUISING,
+			StateMachineCruiseControlSystem.Mode.BUTTON_ACCELERATING,
+			StateMachineCruiseControlSystem.Mode.CRUISING,
+			StateMachineCruiseControlSystem.Mode.PEDAL_OVERRIDE,
+			StateMachineCruiseControlSystem.Mode.SUSPENDED
+		};
+		int pulse = 0;
+		for (PackedInputState next_state : StateInput.packed_states_from_strings(input_lines)){
+			car.update_states(next_state);
+			ccs.pulse(car);
+			assertEquals(expected[pulse++], ccs.get_mode(car));
+		}
+	}
+}
@@ -0,0 +1,112 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class StreamStateInputTest {
+
+	private static final String[] LINES = {
+		"true 50 0.0 0.0 true false false false false",
+		"- - - - - - - - -",
+		"true 55 0.0 0.3 - - - - -",
+		"TRUE 55.125 0.0 0.0 - - true - -  ",
+		"- - - - - - - true -",
+		"false 0 0 0 - - - - -",
+	};
+
+	/**
+	 * A stream which returns at most a few bytes from each read.
+	 */
+	private static class TricklingStream extends ByteArrayInputStream {
+		private final Random random;
+
+		TricklingStream(byte[] bytes, Random random){
+			super(bytes);
+			this.random = random;
+		}
+
+		@Override
+		public synchronized int read(byte[] bytes, int offset, int length){
+			return super.read(bytes, offset, Math.min(length, 1 + this.random.nextInt(40)));
+		}
+	}
+
+	private List<PackedInputState> read_all(InputStateCursor cursor) throws IOException {
+		List<PackedInputState> states = new ArrayList<PackedInputState>();
+		try (InputStateCursor input_states = cursor){
+			PackedInputState state = new PackedInputState();
+			while (input_states.next(state)){
+				states.add(state);
+				state = new PackedInputState();
+			}
+			assertFalse(input_states.next(state));
+		}
+		return states;
+	}
+
+	private void assert_same(List<PackedInputState> expected, List<PackedInputState> actual){
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++){
+			assertTrue(expected.get(i).same_as(actual.get(i)));
+		}
+	}
+
+	@Test
+	public void chunked_stream_decodes_as_the_whole_buffer() throws IOException {
+		Random random = new Random(3);
+		String[] terminators = { "\n", "\r\n", "\r" };
+		for (int trial = 0; trial < 50; trial++){
+			StringBuilder contents = new StringBuilder();
+			int lines = random.nextInt(300);
+			for (int i = 0; i < lines; i++){
+				contents.append(LINES[random.nextInt(LINES.length)]);
+				if (i < lines - 1 || random.nextBoolean()){
+					contents.append(terminators[random.nextInt(terminators.length)]);
+				}
+			}
+			byte[] bytes = contents.toString().getBytes(StandardCharsets.US_ASCII);
+			List<PackedInputState> expected = this.read_all(new BufferStateInput(ByteBuffer.wrap(bytes)));
+			// Buffers shorter than a line have to grow.
+			int buffer_size = 1 + random.nextInt(100);
+			this.assert_same(expected, this.read_all(new StreamStateInput(new TricklingStream(bytes, random), buffer_size)));
+			this.assert_same(expected, this.read_all(StateInput.cursor_from_stream(new ByteArrayInputStream(bytes))));
+		}
+	}
+
+	@Test
+	public void string_cursor_decodes_as_packed_states() throws IOException {
+		Random random = new Random(5);
+		List<String> lines = new ArrayList<String>();
+		for (int i = 0; i < 1000; i++){
+			lines.add(LINES[random.nextInt(LINES.length)]);
+		}
+		this.assert_same(StateInput.packed_states_from_strings(lines),
+						 this.read_all(StateInput.cursor_from_strings(lines)));
+
+		lines.set(500, "true 50 0.0");
+		try {
+			this.read_all(StateInput.cursor_from_strings(lines));
+			fail("expected the malformed line to be rejected");
+		} catch (IllegalArgumentException e){
+			assertTrue(e.getMessage().startsWith("line 501:"));
+		}
+		try {
+			InputStream stream = new ByteArrayInputStream(String.join("\r\n", lines).getBytes(StandardCharsets.US_ASCII));
+			this.read_all(new StreamStateInput(stream, 16));
+			fail("expected the malformed line to be rejected");
+		} catch (IllegalArgumentException e){
+			assertTrue(e.getMessage().startsWith("line 501:"));
+		}
+	}
+}
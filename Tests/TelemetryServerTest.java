@@ -0,0 +1,189 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TelemetryServerTest {
+
+	private static final String[] LINES = {
+		"true 50 0.0 0.0 true false false false false",
+		"- - - - - - - - -",
+		"true 55 0.0 0.3 - - - - -",
+		"true 55 0.0 0.0 - - true - -",
+		"- - - - - - - true -",
+		"true 45 0.4 0.0 - - - - -",
+		"- - - - - - - - true",
+		"false 0 0 0 - - - - -",
+	};
+
+	private final ConcurrentLinkedQueue<TelemetryServer.Session> closed = new ConcurrentLinkedQueue<TelemetryServer.Session>();
+	private final CountDownLatch all_closed = new CountDownLatch(1);
+
+	private TelemetryServer start_server(int sessions) throws IOException {
+		TelemetryServer server = new TelemetryServer(new InetSocketAddress("127.0.0.1", 0), 2, CruiseControlSystem::new,
+													 session -> {
+														 this.closed.add(session);
+														 if (this.closed.size() == sessions){
+															 this.all_closed.countDown();
+														 }
+													 });
+		server.start();
+		return server;
+	}
+
+	private List<PackedInputState> random_states(Random random, int count){
+		List<PackedInputState> states = new ArrayList<PackedInputState>();
+		for (int i = 0; i < count; i++){
+			PackedInputState state = new PackedInputState();
+			StateLineDecoder.decode_line(LINES[random.nextInt(LINES.length)], state, i + 1);
+			states.add(state);
+		}
+		return states;
+	}
+
+	private double[] expected_throttles(List<PackedInputState> states){
+		Car car = new Car();
+		CruiseControlSystem ccs = new CruiseControlSystem();
+		double[] throttles = new double[states.size()];
+		for (int i = 0; i < throttles.length; i++){
+			car.update_states(states.get(i));
+			ccs.pulse(car);
+			throttles[i] = car.throttle.getThrottlePosition();
+		}
+		return throttles;
+	}
+
+	/**
+	 * Sends the whole request while reading the whole reply, then closes.
+	 */
+	private ByteBuffer exchange(int port, ByteBuffer request, int reply_bytes) throws Exception {
+		try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", port))){
+			CompletableFuture<Void> sent = CompletableFuture.runAsync(() -> {
+				try {
+					while (request.hasRemaining()){
+						channel.write(request);
+					}
+					channel.shutdownOutput();
+				} catch (IOException e){
+					throw new RuntimeException(e);
+				}
+			});
+			ByteBuffer reply = ByteBuffer.allocate(reply_bytes + 1);
+			while (channel.read(reply) >= 0){
+			}
+			sent.get(10, TimeUnit.SECONDS);
+			reply.flip();
+			return reply;
+		}
+	}
+
+	@Test
+	public void concurrent_text_sessions_get_the_throttle_of_each_pulse() throws Exception {
+		int sessions = 40;
+		TelemetryServer server = this.start_server(sessions);
+		try {
+			List<CompletableFuture<Void>> clients = new ArrayList<CompletableFuture<Void>>();
+			for (int i = 0; i < sessions; i++){
+				List<PackedInputState> states = this.random_states(new Random(i), 3000);
+				StringBuilder request = new StringBuilder();
+				StringBuilder expected = new StringBuilder();
+				for (int line = 0; line < states.size(); line++){
+					request.append(states.get(line).format()).append(line % 2 == 0 ? "\n" : "\r\n");
+				}
+				for (double throttle : this.expected_throttles(states)){
+					expected.append(String.format(Locale.ROOT, "%f", throttle)).append('\n');
+				}
+				clients.add(CompletableFuture.runAsync(() -> {
+					try {
+						ByteBuffer reply = this.exchange(server.get_port(),
+														 ByteBuffer.wrap(request.toString().getBytes(StandardCharsets.US_ASCII)),
+														 expected.length());
+						assertEquals(expected.toString(), StandardCharsets.US_ASCII.decode(reply).toString());
+					} catch (Exception e){
+						throw new RuntimeException(e);
+					}
+				}));
+			}
+			for (CompletableFuture<Void> client : clients){
+				client.get(30, TimeUnit.SECONDS);
+			}
+			assertTrue(this.all_closed.await(10, TimeUnit.SECONDS));
+			for (TelemetryServer.Session session : this.closed){
+				assertNull(session.get_failure());
+				assertEquals(3000, session.get_pulses());
+				assertTrue(session.get_max_latency_nanos() >= session.get_mean_latency_nanos());
+			}
+			assertEquals(sessions * 3000L, server.total_pulses());
+			assertEquals(sessions, server.sessions_opened());
+			assertEquals(0, server.open_sessions());
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void binary_session_gets_the_exact_throttle() throws Exception {
+		TelemetryServer server = this.start_server(1);
+		try {
+			List<PackedInputState> states = this.random_states(new Random(7), 5000);
+			ByteBuffer request = ByteBuffer.allocate(1 + states.size() * TelemetryServer.BINARY_FRAME_BYTES)
+				.order(ByteOrder.LITTLE_ENDIAN);
+			request.put(TelemetryServer.BINARY_HELLO);
+			for (PackedInputState state : states){
+				int booleans = (state.engine_status ? PackedInputState.ENGINE_STATUS : 0)
+					| (state.start_ccs_button ? PackedInputState.START_CCS_BUTTON : 0)
+					| (state.stop_ccs_button ? PackedInputState.STOP_CCS_BUTTON : 0)
+					| (state.start_acceleration_button ? PackedInputState.START_ACCELERATION_BUTTON : 0)
+					| (state.stop_acceleration_button ? PackedInputState.STOP_ACCELERATION_BUTTON : 0)
+					| (state.resume_button ? PackedInputState.RESUME_BUTTON : 0);
+				request.putShort((short) state.present).putShort((short) booleans).putDouble(state.speed_sensor)
+					.putDouble(state.brake_pedal).putDouble(state.accelerator_pedal);
+			}
+			request.flip();
+			double[] expected = this.expected_throttles(states);
+			ByteBuffer reply = this.exchange(server.get_port(), request, expected.length * TelemetryServer.BINARY_REPLY_BYTES)
+				.order(ByteOrder.LITTLE_ENDIAN);
+			assertEquals(expected.length * TelemetryServer.BINARY_REPLY_BYTES, reply.remaining());
+			for (double throttle : expected){
+				assertEquals(Double.doubleToRawLongBits(throttle), Double.doubleToRawLongBits(reply.getDouble()));
+			}
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void malformed_state_ends_the_session() throws Exception {
+		TelemetryServer server = this.start_server(1);
+		try {
+			ByteBuffer reply = this.exchange(server.get_port(), ByteBuffer.wrap(
+				(LINES[0] + "\ntrue 50\n" + LINES[1] + "\n").getBytes(StandardCharsets.US_ASCII)), 100);
+			assertTrue(this.all_closed.await(10, TimeUnit.SECONDS));
+			TelemetryServer.Session session = this.closed.peek();
+			assertTrue(session.get_failure() instanceof IllegalArgumentException);
+			List<PackedInputState> first = new ArrayList<PackedInputState>();
+			first.add(new PackedInputState());
+			StateLineDecoder.decode_line(LINES[0], first.get(0), 1);
+			assertEquals(String.format(Locale.ROOT, "%f", this.expected_throttles(first)[0]) + "\n",
+						 StandardCharsets.US_ASCII.decode(reply).toString());
+		} finally {
+			server.stop();
+		}
+	}
+}
@@ -0,0 +1,134 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class TraceGeneratorTest {
+
+	private static final long PULSES = 3 * TraceGenerator.BLOCK_ROWS + 1234;
+
+	private boolean same_blocks(List<TraceColumns> a, List<TraceColumns> b){
+		if (a.size() != b.size()){
+			return false;
+		}
+		PackedInputState a_state = new PackedInputState();
+		PackedInputState b_state = new PackedInputState();
+		for (int i = 0; i < a.size(); i++){
+			if (a.get(i).size() != b.get(i).size()){
+				return false;
+			}
+			for (int row = 0; row < a.get(i).size(); row++){
+				a.get(i).get(row, a_state);
+				b.get(i).get(row, b_state);
+				if (!a_state.same_as(b_state)){
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	@Test
+	public void generation_depends_only_on_the_seed(){
+		List<TraceColumns> blocks = TraceGenerator.generate(11, PULSES, new ForkJoinPool(1));
+		assertEquals(PULSES, TraceColumnsInput.count_rows(blocks));
+		assertTrue(this.same_blocks(blocks, TraceGenerator.generate(11, PULSES, new ForkJoinPool(4))));
+		assertFalse(this.same_blocks(blocks, TraceGenerator.generate(12, PULSES, new ForkJoinPool(4))));
+	}
+
+	@Test
+	public void text_output_parses_back_to_the_generated_states() throws IOException {
+		Path path = Files.createTempFile("generated", ".text");
+		path.toFile().deleteOnExit();
+		TraceGenerator.write_text(5, PULSES, path, new ForkJoinPool(3));
+		PackedInputState parsed = new PackedInputState();
+		PackedInputState generated = new PackedInputState();
+		int pressed = 0;
+		long rows = 0;
+		try (InputStateCursor file = StateInput.cursor_from_file(path);
+			 InputStateCursor cursor = new TraceColumnsInput(TraceGenerator.generate(5, PULSES, ForkJoinPool.commonPool()))){
+			while (cursor.next(generated)){
+				assertTrue(file.next(parsed));
+				assertTrue(parsed.same_as(generated));
+				if (rows % TraceGenerator.BLOCK_ROWS != 0){
+					// Apart from the first line of a segment, buttons are only written when pressed.
+					pressed |= generated.present;
+				}
+				rows++;
+			}
+			assertFalse(file.next(parsed));
+		}
+		assertEquals(PULSES, rows);
+		// Every button is pressed somewhere in a trace this long.
+		assertEquals(PackedInputState.ALL_FIELDS, pressed);
+	}
+
+	@Test
+	public void implementations_agree_on_generated_scenarios() throws IOException {
+		DifferentialReplay replay = new DifferentialReplay(CruiseControlSystem::new,
+														   StateMachineCruiseControlSystem::new);
+		for (long seed = 0; seed < 20; seed++){
+			assertNull(replay.compare(new TraceGenerator(seed, 50000)));
+		}
+	}
+
+	@Test
+	public void segments_carry_the_driver_across_their_boundaries() throws IOException {
+		PackedInputState generated = new PackedInputState();
+		PackedInputState sequential = new PackedInputState();
+		double speed = 0.0;
+		int moving_boundaries = 0;
+		long rows = 0;
+		try (InputStateCursor blocks = new TraceColumnsInput(TraceGenerator.generate(11, PULSES, new ForkJoinPool(4)));
+			 InputStateCursor cursor = new TraceGenerator(11, PULSES)){
+			while (blocks.next(generated)){
+				// The segments generated apart are the same as one cursor gives.
+				assertTrue(cursor.next(sequential));
+				assertTrue(sequential.same_as(generated));
+				assertTrue(generated.is_present(PackedInputState.SPEED_SENSOR) || rows % TraceGenerator.BLOCK_ROWS != 0);
+				if (generated.is_present(PackedInputState.SPEED_SENSOR)){
+					// The speed moves on smoothly, even from one segment to the next.
+					assertTrue(Math.abs(generated.speed_sensor - speed) <= 3.0);
+					speed = generated.speed_sensor;
+				}
+				if (rows > 0 && rows % TraceGenerator.BLOCK_ROWS == 0 && speed > 0.0){
+					moving_boundaries++;
+				}
+				rows++;
+			}
+			assertFalse(cursor.next(sequential));
+		}
+		assertEquals(PULSES, rows);
+		// Rather than parked with the engine off, as a fresh driver would be.
+		assertTrue(moving_boundaries > 0);
+	}
+
+	@Test
+	public void binary_output_holds_the_generated_states() throws IOException {
+		Path path = Files.createTempFile("generated", ".trace");
+		path.toFile().deleteOnExit();
+		TraceGenerator.write_binary(7, PULSES, path, new ForkJoinPool(3));
+		assertTrue(BinaryTrace.is_binary(path));
+		PackedInputState read = new PackedInputState();
+		PackedInputState generated = new PackedInputState();
+		long rows = 0;
+		try (InputStateCursor file = new BinaryStateInput(path);
+			 InputStateCursor cursor = new TraceGenerator(7, PULSES)){
+			while (cursor.next(generated)){
+				assertTrue(file.next(read));
+				assertTrue(read.same_as(generated));
+				rows++;
+			}
+			assertFalse(file.next(read));
+		}
+		assertEquals(PULSES, rows);
+	}
+}
@@ -0,0 +1,286 @@
+/**
+ * Builds the operations the JMH benchmarks in ccs.benchmarks measure,
+ * with their inputs prepared up front. This class is in the default
+ * package, like the cruise control, so that it can use its classes; the
+ * benchmarks reach it by reflection through ccs.benchmarks.Workloads.
+ */
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import ccs.benchmarks.Workload;
+
+public final class BenchmarkWorkloads {
+	private static final String[] MIXED_TRACE = {
+		"true 50.0 0.0 0.5 false false false false false",
+		"- - - - true - - - -",
+		"- 55.0 - 0.0 - - - - -",
+		"- - - - - - true - -",
+		"- 62.2 - - - - - true -",
+		"- - 0.4 - - - - - -",
+		"- - 0.0 - - true - - -",
+		"- - - - - - - - true"
+	};
+
+	/**
+	 * The inputs for each CCS scenario. The first line sets the scenario up;
+	 * the following lines are then replayed round robin.
+	 */
+	private static final String[][] SCENARIOS = {
+		{ "cruising", "true 60.0 0.0 0.0 true false false false false", "- - - - - - - - -" },
+		{ "braking", "true 60.0 0.0 0.0 true false false false false",
+					 "- - 0.3 - - - - - -", "- - 0.0 - true - - - -" },
+		{ "pedal_override", "true 60.0 0.0 0.0 true false false false false",
+							"- - - 1.5 - - - - -", "- - - 0.0 - - - - -" },
+		{ "button_acceleration", "true 60.0 0.0 0.0 true false false false false",
+								 "- - - - - - true false -", "- - - - - - false true -" },
+		{ "resume", "true 60.0 0.0 0.0 true false false false false",
+					"- - - - false true - - false", "- - - - false false - - true" }
+	};
+
+	private BenchmarkWorkloads(){
+	}
+
+	private static String[] repeat(String[] lines, int count){
+		String[] repeated = new String[count];
+		for (int i = 0; i < count; i++){
+			repeated[i] = lines[i % lines.length];
+		}
+		return repeated;
+	}
+
+	private static PackedInputState[] packed(String[] lines){
+		return StateInput.packed_states_from_strings(lines).toArray(new PackedInputState[0]);
+	}
+
+	private static Path temp_trace(String[] lines) throws IOException {
+		Path trace = Files.createTempFile("benchmark", ".text");
+		trace.toFile().deleteOnExit();
+		Files.write(trace, String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+		return trace;
+	}
+
+	/**
+	 * Reads every state from a cursor, consuming each.
+	 */
+	private static void drain(InputStateCursor input_states, Blackhole blackhole) throws IOException {
+		PackedInputState state = new PackedInputState();
+		try (InputStateCursor cursor = input_states){
+			while (cursor.next(state)){
+				blackhole.consume(state.present);
+				blackhole.consume(state.speed_sensor);
+			}
+		}
+	}
+
+	/**
+	 * The workload called `name`; `size` is the number of lines or pulses
+	 * for those which take one.
+	 */
+	public static Workload create(String name, int size) throws IOException {
+		if (name.startsWith("parse.")){
+			return parse(name, size);
+		}
+		if (name.startsWith("ccs.")){
+			return pulse(name);
+		}
+		if (name.startsWith("timer.")){
+			return replay(name, size);
+		}
+		switch (name){
+		case "generate.trace_generator":
+			return blackhole -> {
+				PackedInputState state = new PackedInputState();
+				try (InputStateCursor generator = new TraceGenerator(size, size)){
+					while (generator.next(state)){
+						blackhole.consume(state.present);
+					}
+				}
+			};
+		case "car.update_states": {
+			PackedInputState[] states = packed(repeat(MIXED_TRACE, 1024));
+			Car car = new Car();
+			int[] next = {0};
+			return blackhole -> {
+				car.update_states(states[next[0]++ & (states.length - 1)]);
+				blackhole.consume(car);
+			};
+		}
+		case "car.record_state.pulse_record": {
+			// Two cars in different states, so the recording is not invariant.
+			PackedInputState[] states = packed(MIXED_TRACE);
+			Car[] cars = {new Car(), new Car()};
+			cars[0].update_states(states[0]);
+			cars[1].update_states(states[1]);
+			PulseRecord record = new PulseRecord();
+			int[] next = {0};
+			return blackhole -> {
+				cars[next[0]++ & 1].record_state(record);
+				blackhole.consume(record);
+			};
+		}
+		case "car.record_state.output_state": {
+			Car car = new Car();
+			car.update_states(packed(MIXED_TRACE)[0]);
+			return blackhole -> blackhole.consume(car.record_state());
+		}
+		case "output_state.format": {
+			Car car = new Car();
+			car.update_states(packed(MIXED_TRACE)[0]);
+			OutputState output_state = car.record_state();
+			return blackhole -> blackhole.consume(output_state.format());
+		}
+		case "pulse_record.format": {
+			PulseRecord record = record_of(MIXED_TRACE[0]);
+			return blackhole -> blackhole.consume(record.format());
+		}
+		case "pulse_record_writer.accept": {
+			PulseRecord record = record_of(MIXED_TRACE[0]);
+			PulseRecordWriter writer = new PulseRecordWriter(new DiscardingChannel());
+			return blackhole -> writer.accept(record);
+		}
+		default:
+			throw new IllegalArgumentException("unknown workload: " + name);
+		}
+	}
+
+	private static PulseRecord record_of(String line){
+		Car car = new Car();
+		car.update_states(packed(new String[]{line})[0]);
+		PulseRecord record = new PulseRecord();
+		car.record_state(record);
+		return record;
+	}
+
+	private static Workload parse(String name, int size) throws IOException {
+		String[] lines = repeat(MIXED_TRACE, size);
+		switch (name){
+		case "parse.input_states_from_strings":
+			return blackhole -> blackhole.consume(StateInput.input_states_from_strings(lines));
+		case "parse.packed_states_from_strings":
+			return blackhole -> blackhole.consume(StateInput.packed_states_from_strings(lines));
+		case "parse.string_state_input":
+			return blackhole -> drain(StateInput.cursor_from_strings(lines), blackhole);
+		case "parse.mapped_state_input": {
+			Path trace = temp_trace(lines);
+			return blackhole -> drain(new MappedStateInput(trace), blackhole);
+		}
+		case "parse.stream_state_input": {
+			Path trace = temp_trace(lines);
+			return blackhole -> drain(StateInput.cursor_from_stream(Files.newInputStream(trace)), blackhole);
+		}
+		case "parse.parallel_trace_parser": {
+			Path trace = temp_trace(lines);
+			ParallelTraceParser parser = new ParallelTraceParser();
+			return blackhole -> blackhole.consume(parser.parse(trace));
+		}
+		default:
+			throw new IllegalArgumentException("unknown workload: " + name);
+		}
+	}
+
+	private static Workload pulse(String name){
+		String[] parts = name.split("\\.");
+		ICruiseControlSystem ccs;
+		switch (parts[1]){
+		case "cruise_control_system":
+			ccs = new CruiseControlSystem();
+			break;
+		case "state_machine":
+			ccs = new StateMachineCruiseControlSystem();
+			break;
+		default:
+			throw new IllegalArgumentException("unknown CCS: " + parts[1]);
+		}
+		for (String[] scenario : SCENARIOS){
+			if (scenario[0].equals(parts[2])){
+				PackedInputState[] states = packed(Arrays.copyOfRange(scenario, 1, scenario.length));
+				Car car = new Car();
+				car.update_states(states[0]);
+				ccs.pulse(car);
+				int[] next = {0};
+				return blackhole -> {
+					car.update_states(states[1 + next[0]]);
+					next[0] = (next[0] + 1) % (states.length - 1);
+					ccs.pulse(car);
+					blackhole.consume(car.throttle.getThrottlePosition());
+				};
+			}
+		}
+		throw new IllegalArgumentException("unknown scenario: " + parts[2]);
+	}
+
+	private static Workload replay(String name, int size){
+		List<InputState> input_states = StateInput.input_states_from_strings(repeat(MIXED_TRACE, size));
+		switch (name){
+		case "timer.pulse_from_input":
+			return blackhole -> blackhole.consume(new Timer(new CruiseControlSystem()).pulse_from_input(input_states));
+		case "timer.record_from_input": {
+			List<PackedInputState> packed_states = new ArrayList<PackedInputState>();
+			for (InputState state : input_states){
+				packed_states.add(state.packed());
+			}
+			return blackhole -> blackhole.consume(new Timer(new CruiseControlSystem())
+												  .record_from_input(new ListCursor(packed_states), blackhole::consume));
+		}
+		default:
+			throw new IllegalArgumentException("unknown workload: " + name);
+		}
+	}
+
+	/**
+	 * Counts and drops whatever is written to it, so that output can be
+	 * measured without any I/O.
+	 */
+	private static class DiscardingChannel implements WritableByteChannel {
+		@Override
+		public int write(ByteBuffer source){
+			int length = source.remaining();
+			source.position(source.limit());
+			return length;
+		}
+
+		@Override
+		public boolean isOpen(){
+			return true;
+		}
+
+		@Override
+		public void close(){
+		}
+	}
+
+	/**
+	 * Replays a list of packed states as a cursor, so that end-to-end replays
+	 * can be measured without any parsing.
+	 */
+	private static class ListCursor implements InputStateCursor {
+		private final List<PackedInputState> states;
+		private int next = 0;
+
+		ListCursor(List<PackedInputState> states){
+			this.states = states;
+		}
+
+		@Override
+		public boolean next(PackedInputState state){
+			if (this.next == this.states.size()){
+				return false;
+			}
+			state.copy_from(this.states.get(this.next++));
+			return true;
+		}
+
+		@Override
+		public void close(){
+		}
+	}
+}
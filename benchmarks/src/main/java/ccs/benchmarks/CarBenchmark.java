@@ -0,0 +1,44 @@
+/**
+ * The Car's side of a pulse: updating the sensors from an input state, and
+ * recording the car's state into a reusable PulseRecord or a new
+ * OutputState.
+ */
+package ccs.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CarBenchmark {
+	@Param({"car.update_states", "car.record_state.pulse_record", "car.record_state.output_state"})
+	public String workload;
+
+	private Workload car;
+
+	@Setup
+	public void setup() throws Exception {
+		this.car = Workloads.create(this.workload, 0);
+	}
+
+	@Benchmark
+	public void car(Blackhole blackhole) throws Exception {
+		this.car.run(blackhole);
+	}
+}
@@ -0,0 +1,49 @@
+/**
+ * Car.update_states followed by the CCS's pulse, for each implementation
+ * under each of the main scenarios: holding a cruise, braking out of it,
+ * overriding it with the pedal, accelerating with the buttons and
+ * resuming. Each scenario alternates between its inputs, so every pulse
+ * does the scenario's work.
+ */
+package ccs.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CcsPulseBenchmark {
+	@Param({"cruise_control_system", "state_machine"})
+	public String ccs;
+
+	@Param({"cruising", "braking", "pedal_override", "button_acceleration", "resume"})
+	public String scenario;
+
+	private Workload pulse;
+
+	@Setup
+	public void setup() throws Exception {
+		this.pulse = Workloads.create("ccs." + this.ccs + "." + this.scenario, 0);
+	}
+
+	@Benchmark
+	public void pulse(Blackhole blackhole) throws Exception {
+		this.pulse.run(blackhole);
+	}
+}
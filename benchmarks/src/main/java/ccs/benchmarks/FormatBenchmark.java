@@ -0,0 +1,43 @@
+/**
+ * Formatting an output line: OutputState.format, PulseRecord.format and
+ * a PulseRecordWriter buffering lines for a channel which discards them.
+ */
+package ccs.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class FormatBenchmark {
+	@Param({"output_state.format", "pulse_record.format", "pulse_record_writer.accept"})
+	public String workload;
+
+	private Workload format;
+
+	@Setup
+	public void setup() throws Exception {
+		this.format = Workloads.create(this.workload, 0);
+	}
+
+	@Benchmark
+	public void format(Blackhole blackhole) throws Exception {
+		this.format.run(blackhole);
+	}
+}
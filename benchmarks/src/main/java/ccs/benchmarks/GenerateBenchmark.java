@@ -0,0 +1,42 @@
+/**
+ * Generating a driving trace with TraceGenerator, reported per pulse.
+ */
+package ccs.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class GenerateBenchmark {
+	static final int PULSES = 1 << 16;
+
+	private Workload generate;
+
+	@Setup
+	public void setup() throws Exception {
+		this.generate = Workloads.create("generate.trace_generator", PULSES);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(PULSES)
+	public void generate(Blackhole blackhole) throws Exception {
+		this.generate.run(blackhole);
+	}
+}
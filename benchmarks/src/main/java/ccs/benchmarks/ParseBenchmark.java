@@ -0,0 +1,49 @@
+/**
+ * Parsing a trace of mixed input states, by each of the parsers: into
+ * InputState or PackedInputState lists, and through the string, mapped,
+ * stream and parallel cursors. Reported per line.
+ */
+package ccs.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ParseBenchmark {
+	static final int LINES = 80000;
+
+	@Param({"parse.input_states_from_strings", "parse.packed_states_from_strings", "parse.string_state_input",
+			"parse.mapped_state_input", "parse.stream_state_input", "parse.parallel_trace_parser"})
+	public String workload;
+
+	private Workload parse;
+
+	@Setup
+	public void setup() throws Exception {
+		this.parse = Workloads.create(this.workload, LINES);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public void parse(Blackhole blackhole) throws Exception {
+		this.parse.run(blackhole);
+	}
+}
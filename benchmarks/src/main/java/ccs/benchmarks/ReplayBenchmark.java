@@ -0,0 +1,47 @@
+/**
+ * End-to-end replays of a mixed trace of several sizes through a Timer:
+ * into a list of OutputStates with `pulse_from_input`, and into a
+ * reusable PulseRecord with `record_from_input`. Reported per replay.
+ */
+package ccs.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ReplayBenchmark {
+	@Param({"timer.pulse_from_input", "timer.record_from_input"})
+	public String workload;
+
+	@Param({"1000", "100000", "1000000"})
+	public int pulses;
+
+	private Workload replay;
+
+	@Setup
+	public void setup() throws Exception {
+		this.replay = Workloads.create(this.workload, this.pulses);
+	}
+
+	@Benchmark
+	public void replay(Blackhole blackhole) throws Exception {
+		this.replay.run(blackhole);
+	}
+}
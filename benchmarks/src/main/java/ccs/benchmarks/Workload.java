@@ -0,0 +1,20 @@
+/**
+ * One benchmarked operation, set up with its inputs. The cruise control's
+ * classes are in the default package, which the benchmarks (which JMH
+ * requires to be in a named package) cannot refer to, so each operation
+ * is built by BenchmarkWorkloads, in the default package, and run through
+ * this interface. Only one kind of workload runs in each forked JVM, so
+ * the call is monomorphic and inlined.
+ */
+package ccs.benchmarks;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+@FunctionalInterface
+public interface Workload {
+	/**
+	 * Runs the operation once, consuming its results into `blackhole` so
+	 * that they cannot be optimised away.
+	 */
+	public void run(Blackhole blackhole) throws Exception;
+}
@@ -0,0 +1,25 @@
+/**
+ * Creates workloads by name through BenchmarkWorkloads.create, which is in
+ * the default package and so can only be reached by reflection.
+ */
+package ccs.benchmarks;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+final class Workloads {
+	private Workloads(){
+	}
+
+	static Workload create(String name, int size) throws Exception {
+		Method create = Class.forName("BenchmarkWorkloads").getMethod("create", String.class, int.class);
+		try {
+			return (Workload) create.invoke(null, name, size);
+		} catch (InvocationTargetException e){
+			if (e.getCause() instanceof Exception){
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+	}
+}
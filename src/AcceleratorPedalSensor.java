@@ -8,6 +8,11 @@ public class AcceleratorPedalSensor {
 	public void update_state(InputState new_state){
 		this.accelerator_position = new_state.parseDouble(new_state.accelerator_pedal, this.accelerator_position);
 	}
+	public void update_state(PackedInputState new_state){
+		if (new_state.is_present(PackedInputState.ACCELERATOR_PEDAL)){
+			this.accelerator_position = new_state.accelerator_pedal;
+		}
+	}
 	public double get_accelerator(){
 		return this.accelerator_position; 
 	}
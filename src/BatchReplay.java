@@ -0,0 +1,317 @@
+/**
+ * Replays a whole corpus of trace files in one JVM. Inputs may be files,
+ * directories (searched recursively) or glob patterns such as
+ * "traces/**.text". Every file is replayed with its own Timer and CCS, and
+ * its output goes to its own file in the output directory.
+ *
+ * Work is split between two executors. Reading a trace and writing its
+ * output run on an I/O executor, which uses a virtual thread per task
+ * where the JVM has them (looked up reflectively, so this still runs on
+ * older JVMs with a cached thread pool instead). Parsing and replaying
+ * run on a bounded CPU pool. The number of files in flight at once is
+ * bounded too, so a large corpus is never all held in memory together.
+ *
+ * Usage: BatchReplay output_directory input...
+ * Exits with status 1 if any trace failed, so that a CI job running a
+ * regression corpus fails with it.
+ */
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class BatchReplay {
+	public static class Job {
+		public final Path input;
+		public final Path output;
+
+		// Written by the replaying tasks, and read once the run has completed.
+		private long pulses = 0;
+		private long elapsed_nanos = 0;
+		private Throwable failure = null;
+
+		Job(Path input, Path output){
+			this.input = input;
+			this.output = output;
+		}
+
+		public long get_pulses(){
+			return this.pulses;
+		}
+		public long get_elapsed_nanos(){
+			return this.elapsed_nanos;
+		}
+		public Throwable get_failure(){
+			return this.failure;
+		}
+	}
+
+	private static final String OUTPUT_SUFFIX = ".out";
+
+	private final ExecutorService io_executor;
+	private final ForkJoinPool cpu_pool;
+	private final Semaphore in_flight;
+	private final Supplier<? extends ICruiseControlSystem> ccs_factory;
+	private final List<Job> jobs = new ArrayList<Job>();
+	// The input writing to each output, so that no two jobs share one.
+	private final Map<Path, Path> destinations = new HashMap<Path, Path>();
+	private long elapsed_nanos = 0;
+
+	public BatchReplay(){
+		this(new_io_executor(), ForkJoinPool.commonPool(),
+			 8 * Runtime.getRuntime().availableProcessors(), CruiseControlSystem::new);
+	}
+
+	/**
+	 * @param max_in_flight how many files may be read but not yet written
+	 */
+	public BatchReplay(ExecutorService io_executor, ForkJoinPool cpu_pool, int max_in_flight,
+					   Supplier<? extends ICruiseControlSystem> ccs_factory){
+		this.io_executor = io_executor;
+		this.cpu_pool = cpu_pool;
+		this.in_flight = new Semaphore(Math.max(1, max_in_flight));
+		this.ccs_factory = ccs_factory;
+	}
+
+	/**
+	 * An executor with a virtual thread per task if the JVM supports them,
+	 * or else a cached pool of daemon threads.
+	 */
+	public static ExecutorService new_io_executor(){
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException e){
+			return Executors.newCachedThreadPool(task -> {
+				Thread thread = new Thread(task, "batch-replay-io");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * Adds every trace named by `argument`, a file, a directory or a glob,
+	 * to be replayed into `output_directory`. Files found under a directory
+	 * or a glob keep their path relative to it, except for those under
+	 * `output_directory`, which are outputs of an earlier run when it is
+	 * inside the input tree. Nothing is added if any of
+	 * the files would write to the same output as another job, e.g. two
+	 * files of the same name given separately; replay those into different
+	 * output directories instead.
+	 * @return the number of files added
+	 */
+	public int add(String argument, Path output_directory) throws IOException {
+		Path path = Paths.get(argument);
+		if (Files.isRegularFile(path)){
+			return this.add_jobs(List.of(new Job(path, output_directory.resolve(path.getFileName() + OUTPUT_SUFFIX))));
+		}
+		Path base = path;
+		PathMatcher matcher = null;
+		if (!Files.isDirectory(path)){
+			// Split the glob into the directory before its first wildcard and
+			// the pattern for the paths below that.
+			int wildcard = first_wildcard(argument);
+			if (wildcard < 0){
+				throw new IOException("no such trace file or directory: " + argument);
+			}
+			int separator = argument.lastIndexOf('/', wildcard);
+			base = Paths.get(separator < 0 ? "." : argument.substring(0, Math.max(separator, 1)));
+			matcher = FileSystems.getDefault().getPathMatcher("glob:" + argument.substring(separator + 1));
+		}
+		List<Path> files;
+		try (Stream<Path> walk = Files.walk(base)){
+			files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+		}
+		Path outputs = output_directory.toAbsolutePath().normalize();
+		List<Job> jobs = new ArrayList<Job>();
+		for (Path file : files){
+			Path relative = base.relativize(file);
+			if (file.toAbsolutePath().normalize().startsWith(outputs)){
+				continue;
+			}
+			if (matcher == null || matcher.matches(relative)){
+				jobs.add(new Job(file, output_directory.resolve(relative + OUTPUT_SUFFIX)));
+			}
+		}
+		return this.add_jobs(jobs);
+	}
+
+	/**
+	 * Adds the jobs unless one of them writes to the output of another,
+	 * which would overwrite it or, run concurrently, corrupt it.
+	 */
+	private int add_jobs(List<Job> jobs) throws IOException {
+		Map<Path, Path> added = new HashMap<Path, Path>();
+		for (Job job : jobs){
+			Path destination = job.output.toAbsolutePath().normalize();
+			Path other = this.destinations.get(destination);
+			if (other == null){
+				other = added.putIfAbsent(destination, job.input);
+			}
+			if (other != null){
+				throw new IOException("both " + other + " and " + job.input + " would be replayed into " + job.output);
+			}
+		}
+		this.destinations.putAll(added);
+		this.jobs.addAll(jobs);
+		return jobs.size();
+	}
+
+	private static int first_wildcard(String pattern){
+		for (int i = 0; i < pattern.length(); i++){
+			if ("*?[{".indexOf(pattern.charAt(i)) >= 0){
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public List<Job> get_jobs(){
+		return this.jobs;
+	}
+
+	/**
+	 * Replays every job added so far, returning once all have finished.
+	 */
+	public void run(){
+		long start = System.nanoTime();
+		List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>(this.jobs.size());
+		for (Job job : this.jobs){
+			this.in_flight.acquireUninterruptibly();
+			long job_start = System.nanoTime();
+			CompletableFuture<Void> future = CompletableFuture
+				.supplyAsync(() -> read(job.input), this.io_executor)
+				.thenApplyAsync(contents -> this.replay(job, contents), this.cpu_pool)
+				.thenAcceptAsync(output -> write(job.output, output), this.io_executor)
+				.whenComplete((ignored, failure) -> {
+					job.failure = failure == null ? null : unwrap(failure);
+					job.elapsed_nanos = System.nanoTime() - job_start;
+					this.in_flight.release();
+				});
+			futures.add(future);
+		}
+		for (CompletableFuture<Void> future : futures){
+			future.exceptionally(failure -> null).join();
+		}
+		this.elapsed_nanos = System.nanoTime() - start;
+	}
+
+	private static Throwable unwrap(Throwable failure){
+		while ((failure instanceof CompletionException || failure instanceof UncheckedIOException)
+			   && failure.getCause() != null){
+			failure = failure.getCause();
+		}
+		return failure;
+	}
+
+	private static ByteBuffer read(Path input){
+		try {
+			return ByteBuffer.wrap(Files.readAllBytes(input));
+		} catch (IOException e){
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void write(Path output, ByteArrayOutputStream contents){
+		try {
+			Path parent = output.getParent();
+			if (parent != null){
+				Files.createDirectories(parent);
+			}
+			try (OutputStream stream = Files.newOutputStream(output)){
+				contents.writeTo(stream);
+			}
+		} catch (IOException e){
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private ByteArrayOutputStream replay(Job job, ByteBuffer contents){
+		ByteArrayOutputStream output = new ByteArrayOutputStream((int) Math.min(Integer.MAX_VALUE - 8, 2L * contents.remaining()));
+		// Binary traces are rare in a regression corpus, so they are simply
+		// read again by BinaryStateInput.
+		try (InputStateCursor input_states = BinaryTrace.is_binary(contents)
+											 ? new BinaryStateInput(job.input)
+											 : new BufferStateInput(contents)){
+			PulseRecordWriter writer = new PulseRecordWriter(Channels.newChannel(output), 1 << 16);
+			job.pulses = new Timer(this.ccs_factory.get()).record_from_input(input_states, writer);
+			writer.flush();
+		} catch (IOException e){
+			throw new UncheckedIOException(e);
+		}
+		return output;
+	}
+
+	public long total_pulses(){
+		long pulses = 0;
+		for (Job job : this.jobs){
+			pulses += job.pulses;
+		}
+		return pulses;
+	}
+
+	public long failures(){
+		long failures = 0;
+		for (Job job : this.jobs){
+			if (job.failure != null){
+				failures++;
+			}
+		}
+		return failures;
+	}
+
+	public double pulses_per_second(){
+		return this.elapsed_nanos == 0 ? 0.0 : this.total_pulses() * 1e9 / this.elapsed_nanos;
+	}
+
+	public double files_per_second(){
+		return this.elapsed_nanos == 0 ? 0.0 : this.jobs.size() * 1e9 / this.elapsed_nanos;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2){
+			System.err.println("usage: BatchReplay output_directory input...");
+			System.exit(2);
+		}
+		Path output_directory = Paths.get(args[0]);
+		BatchReplay batch = new BatchReplay();
+		for (int i = 1; i < args.length; i++){
+			batch.add(args[i], output_directory);
+		}
+		batch.run();
+		for (Job job : batch.get_jobs()){
+			if (job.failure != null){
+				System.out.println(job.input + ": failed: " + job.failure);
+			}
+		}
+		System.out.println(String.format("%d files, %d pulses, %d failures, %.1f ms, %.0f files/s, %.0f pulses/s",
+										 batch.get_jobs().size(), batch.total_pulses(), batch.failures(),
+										 batch.elapsed_nanos / 1e6, batch.files_per_second(),
+										 batch.pulses_per_second()));
+		if (batch.failures() > 0){
+			System.exit(1);
+		}
+	}
+}
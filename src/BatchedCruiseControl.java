@@ -0,0 +1,269 @@
+/**
+ * Simulates many cars at once, each with its own cruise control, by keeping
+ * every sensor, dashboard button, throttle and CCS variable of every car in
+ * parallel primitive arrays (a struct of arrays) instead of one Car object
+ * graph and CruiseControlSystem per car. `pulse_all` applies the rules of
+ * CruiseControlSystem to every car in a single loop over the arrays, in the
+ * same order and with the same arithmetic, so its results are bit for bit
+ * those of the scalar implementation.
+ *
+ * A pulse of the whole batch is: update_state (or update_states) for the
+ * cars which have new input, pulse_all, then record_state for each car.
+ */
+public class BatchedCruiseControl {
+	private final int size;
+
+	// The sensors of each car, as in Car. The throttle's own memory of the
+	// accelerator position always equals the accelerator pedal sensor, since
+	// both are updated from the same field, so it is not kept separately.
+	private final boolean[] engine_on;
+	private final double[] speed;
+	private final double[] brake;
+	private final double[] accelerator;
+	private final double[] throttle;
+
+	// The dashboard buttons of each car.
+	private final boolean[] start_ccs;
+	private final boolean[] stop_ccs;
+	private final boolean[] start_accelerating;
+	private final boolean[] stop_accelerating;
+	private final boolean[] resume;
+
+	// The state of each car's CruiseControlSystem.
+	private final double[] last_throttle_value_during_cruising;
+	private final boolean[] was_accelerating_by_pedal;
+	private final boolean[] is_ccs_already_on;
+	private final double[] recorded_throttle_value;
+	private final boolean[] throttle_value_was_recorded;
+
+	public BatchedCruiseControl(int size){
+		this.size = size;
+		this.engine_on = new boolean[size];
+		this.speed = new double[size];
+		this.brake = new double[size];
+		this.accelerator = new double[size];
+		this.throttle = new double[size];
+		this.start_ccs = new boolean[size];
+		this.stop_ccs = new boolean[size];
+		this.start_accelerating = new boolean[size];
+		this.stop_accelerating = new boolean[size];
+		this.resume = new boolean[size];
+		this.last_throttle_value_during_cruising = new double[size];
+		this.was_accelerating_by_pedal = new boolean[size];
+		this.is_ccs_already_on = new boolean[size];
+		this.recorded_throttle_value = new double[size];
+		this.throttle_value_was_recorded = new boolean[size];
+	}
+
+	public int size(){
+		return this.size;
+	}
+
+	/**
+	 * As Car.update_states for a single car.
+	 */
+	public void update_state(int car, PackedInputState state){
+		int present = state.present;
+		if ((present & PackedInputState.ENGINE_STATUS) != 0){
+			this.engine_on[car] = state.engine_status;
+		}
+		if ((present & PackedInputState.START_CCS_BUTTON) != 0){
+			this.start_ccs[car] = state.start_ccs_button;
+		}
+		if ((present & PackedInputState.STOP_CCS_BUTTON) != 0){
+			this.stop_ccs[car] = state.stop_ccs_button;
+		}
+		if ((present & PackedInputState.START_ACCELERATION_BUTTON) != 0){
+			this.start_accelerating[car] = state.start_acceleration_button;
+		}
+		if ((present & PackedInputState.STOP_ACCELERATION_BUTTON) != 0){
+			this.stop_accelerating[car] = state.stop_acceleration_button;
+		}
+		if ((present & PackedInputState.RESUME_BUTTON) != 0){
+			this.resume[car] = state.resume_button;
+		}
+		if ((present & PackedInputState.SPEED_SENSOR) != 0){
+			this.speed[car] = state.speed_sensor;
+		}
+		if ((present & PackedInputState.BRAKE_PEDAL) != 0){
+			this.brake[car] = state.brake_pedal;
+		}
+		if ((present & PackedInputState.ACCELERATOR_PEDAL) != 0){
+			this.accelerator[car] = state.accelerator_pedal;
+		}
+		this.throttle[car] = this.accelerator[car];
+	}
+
+	/**
+	 * Updates every car from one block of input states, where row i of the
+	 * block is the next input of car i.
+	 */
+	public void update_states(TraceColumns inputs){
+		int count = Math.min(this.size, inputs.size());
+		for (int car = 0; car < count; car++){
+			int present = inputs.present[car];
+			int values = inputs.booleans[car];
+			if ((present & PackedInputState.ENGINE_STATUS) != 0){
+				this.engine_on[car] = (values & PackedInputState.ENGINE_STATUS) != 0;
+			}
+			if ((present & PackedInputState.START_CCS_BUTTON) != 0){
+				this.start_ccs[car] = (values & PackedInputState.START_CCS_BUTTON) != 0;
+			}
+			if ((present & PackedInputState.STOP_CCS_BUTTON) != 0){
+				this.stop_ccs[car] = (values & PackedInputState.STOP_CCS_BUTTON) != 0;
+			}
+			if ((present & PackedInputState.START_ACCELERATION_BUTTON) != 0){
+				this.start_accelerating[car] = (values & PackedInputState.START_ACCELERATION_BUTTON) != 0;
+			}
+			if ((present & PackedInputState.STOP_ACCELERATION_BUTTON) != 0){
+				this.stop_accelerating[car] = (values & PackedInputState.STOP_ACCELERATION_BUTTON) != 0;
+			}
+			if ((present & PackedInputState.RESUME_BUTTON) != 0){
+				this.resume[car] = (values & PackedInputState.RESUME_BUTTON) != 0;
+			}
+			if ((present & PackedInputState.SPEED_SENSOR) != 0){
+				this.speed[car] = inputs.speed_sensor[car];
+			}
+			if ((present & PackedInputState.BRAKE_PEDAL) != 0){
+				this.brake[car] = inputs.brake_pedal[car];
+			}
+			if ((present & PackedInputState.ACCELERATOR_PEDAL) != 0){
+				this.accelerator[car] = inputs.accelerator_pedal[car];
+			}
+			this.throttle[car] = this.accelerator[car];
+		}
+	}
+
+	/**
+	 * Runs one pulse of the cruise control of every car. Each step below is
+	 * the check of the same name in CruiseControlSystem, with the car's
+	 * values held in locals for the duration of the pulse.
+	 */
+	public void pulse_all(){
+		for (int car = 0; car < this.size; car++){
+			boolean engine_on = this.engine_on[car];
+			double speed = this.speed[car];
+			double accelerator = this.accelerator[car];
+			boolean brake_on = this.brake[car] > 0.0;
+			boolean accelerator_on = accelerator > 0.0;
+			double throttle = this.throttle[car];
+
+			boolean start_ccs = this.start_ccs[car];
+			boolean stop_ccs = this.stop_ccs[car];
+			boolean start_accelerating = this.start_accelerating[car];
+			boolean stop_accelerating = this.stop_accelerating[car];
+			boolean resume = this.resume[car];
+
+			double last_throttle = this.last_throttle_value_during_cruising[car];
+			boolean was_accelerating_by_pedal = this.was_accelerating_by_pedal[car];
+			boolean is_ccs_already_on = this.is_ccs_already_on[car];
+			double recorded_throttle = this.recorded_throttle_value[car];
+			boolean throttle_value_was_recorded = this.throttle_value_was_recorded[car];
+
+			// checkCCSStartButton
+			if (start_ccs && engine_on && speed >= 40.0 && !brake_on){
+				resume = false;
+				throttle = Math.max(throttle, speed / 50.0);
+				is_ccs_already_on = true;
+				last_throttle = throttle;
+				throttle_value_was_recorded = true;
+			} else {
+				start_ccs = false;
+				start_accelerating = false;
+				stop_accelerating = false;
+				stop_ccs = false;
+				throttle = Math.max(throttle, accelerator);
+			}
+			// checkCCSStopButton
+			if (stop_ccs){
+				was_accelerating_by_pedal = false;
+				last_throttle = throttle;
+				throttle = Math.max(throttle, accelerator);
+				start_ccs = false;
+				start_accelerating = false;
+				stop_accelerating = false;
+				stop_ccs = false;
+			}
+			// checkBrakePedalWhileCCSisOn and checkEngineWhileCCSisOn
+			if ((brake_on || !engine_on) && is_ccs_already_on){
+				throttle = Math.max(throttle, 0.0);
+				start_ccs = false;
+				start_accelerating = false;
+				stop_accelerating = false;
+				stop_ccs = false;
+			}
+			// checkAcceleratingByPedalWhileCCSisOn
+			if (accelerator_on && !start_accelerating && !was_accelerating_by_pedal){
+				was_accelerating_by_pedal = true;
+				last_throttle = throttle;
+				throttle = Math.max(throttle, accelerator);
+			}
+			// checkStartAcceleratingButtonWhileAcceleratingByPedal
+			if (accelerator_on && start_accelerating){
+				throttle = Math.max(throttle, Math.max(speed / 50.0, accelerator));
+				last_throttle = throttle;
+			}
+			// setThrottleBackAfterAcceleratingByPedal
+			if (was_accelerating_by_pedal && !accelerator_on){
+				throttle = Math.max(throttle, last_throttle);
+			}
+			// checkAccelerationByButton
+			if (start_accelerating){
+				throttle = Math.max(throttle, (speed + 7.2) / 50.0);
+				recorded_throttle = throttle;
+				last_throttle = recorded_throttle;
+			}
+			// checkStopAccelerationByButton
+			if (stop_accelerating){
+				throttle = Math.max(throttle, recorded_throttle);
+				start_accelerating = false;
+				stop_accelerating = false;
+			}
+			// checkResumeCruising
+			if (!start_ccs && resume){
+				boolean was_recorded = throttle_value_was_recorded;
+				start_ccs = true;
+				resume = false;
+				throttle = Math.max(throttle, speed / 50.0);
+				is_ccs_already_on = true;
+				last_throttle = throttle;
+				throttle_value_was_recorded = true;
+				if (was_recorded){
+					throttle = Math.max(throttle, recorded_throttle);
+				}
+			}
+
+			this.throttle[car] = throttle;
+			this.start_ccs[car] = start_ccs;
+			this.stop_ccs[car] = stop_ccs;
+			this.start_accelerating[car] = start_accelerating;
+			this.stop_accelerating[car] = stop_accelerating;
+			this.resume[car] = resume;
+			this.last_throttle_value_during_cruising[car] = last_throttle;
+			this.was_accelerating_by_pedal[car] = was_accelerating_by_pedal;
+			this.is_ccs_already_on[car] = is_ccs_already_on;
+			this.recorded_throttle_value[car] = recorded_throttle;
+			this.throttle_value_was_recorded[car] = throttle_value_was_recorded;
+		}
+	}
+
+	/**
+	 * As Car.record_state for a single car.
+	 */
+	public void record_state(int car, PulseRecord record){
+		record.engine_status = this.engine_on[car];
+		record.speed_sensor = this.speed[car];
+		record.brake_pedal = this.brake[car];
+		record.accelerator_pedal = this.accelerator[car];
+		record.start_ccs_button = this.start_ccs[car];
+		record.stop_ccs_button = this.stop_ccs[car];
+		record.start_acceleration_button = this.start_accelerating[car];
+		record.stop_acceleration_button = this.stop_accelerating[car];
+		record.resume_button = this.resume[car];
+		record.throttle_position = this.throttle[car];
+	}
+
+	public double get_throttle_position(int car){
+		return this.throttle[car];
+	}
+}
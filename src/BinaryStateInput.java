@@ -0,0 +1,125 @@
+/**
+ * Replays a trace stored in the binary format described in BinaryTrace,
+ * decoding one block of columns at a time.
+ */
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class BinaryStateInput implements InputStateCursor {
+	private final Path filename;
+	private final FileChannel channel;
+	private final TraceColumns block = new TraceColumns(BinaryTrace.BLOCK_ROWS);
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BinaryTrace.max_block_bytes(BinaryTrace.BLOCK_ROWS))
+										  .order(ByteOrder.LITTLE_ENDIAN);
+	private int row = 0;
+	private long blocks = 0;
+
+	public BinaryStateInput(Path filename) throws IOException {
+		this.filename = filename;
+		this.channel = FileChannel.open(filename, StandardOpenOption.READ);
+		boolean header;
+		try {
+			header = this.read_fully(BinaryTrace.HEADER_BYTES) && this.buffer.getInt() == BinaryTrace.MAGIC;
+		} catch (EOFException e){
+			header = false;
+		}
+		if (!header){
+			this.channel.close();
+			throw new IOException(filename + " is not a binary trace");
+		}
+		int version = this.buffer.getInt();
+		if (version != BinaryTrace.VERSION){
+			this.channel.close();
+			throw new IOException(filename + " has unsupported binary trace version " + version);
+		}
+	}
+
+	/**
+	 * Reads exactly `length` bytes into the start of the buffer, returning
+	 * false if the file ends before any of them could be read.
+	 */
+	private boolean read_fully(int length) throws IOException {
+		this.buffer.clear();
+		this.buffer.limit(length);
+		while (this.buffer.hasRemaining()){
+			if (this.channel.read(this.buffer) < 0){
+				if (this.buffer.position() == 0){
+					return false;
+				}
+				throw new EOFException(this.block_error("truncated block"));
+			}
+		}
+		this.buffer.flip();
+		return true;
+	}
+
+	/**
+	 * The message for a malformed block, naming the file and the block
+	 * being read, counting from 1.
+	 */
+	private String block_error(String problem){
+		return this.filename + ": block " + this.blocks + ": " + problem;
+	}
+
+	private boolean read_block() throws IOException {
+		this.blocks++;
+		if (!this.read_fully(BinaryTrace.BLOCK_HEADER_BYTES)){
+			return false;
+		}
+		int length = this.buffer.getInt();
+		int rows = this.buffer.getInt();
+		if (rows < 0 || rows > this.block.capacity() || length < 0
+			|| length > BinaryTrace.max_block_bytes(rows)){
+			throw new IOException(this.block_error("corrupt block of " + rows + " rows and " + length + " bytes"));
+		}
+		if (!this.read_fully(length) && length > 0){
+			throw new EOFException(this.block_error("truncated block"));
+		}
+		// The length and row count may disagree, so check the body holds
+		// everything the rows need rather than let decoding underflow.
+		if (!BinaryTrace.decode_block(this.buffer, rows, this.block)){
+			throw new IOException(this.block_error("truncated block"));
+		}
+		this.row = 0;
+		return true;
+	}
+
+	@Override
+	public boolean next(PackedInputState state) throws IOException {
+		while (this.row >= this.block.size()){
+			if (!this.read_block()){
+				return false;
+			}
+		}
+		this.block.get(this.row++, state);
+		return true;
+	}
+
+	/**
+	 * Skips the following rows of the current block which are identical
+	 * to the last row returned.
+	 */
+	@Override
+	public long skip_repeats(){
+		int last = this.row - 1;
+		if (last < 0){
+			return 0;
+		}
+		long skipped = 0;
+		while (this.row < this.block.size() && this.block.same_rows(last, this.row)){
+			this.row++;
+			skipped++;
+		}
+		return skipped;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+	}
+}
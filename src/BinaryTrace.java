@@ -0,0 +1,223 @@
+/**
+ * A compact binary, columnar alternative to the text trace format. After an
+ * eight byte header (the magic number and a version) the file is a sequence
+ * of blocks of up to BLOCK_ROWS input states. Each block starts with its
+ * length in bytes and its number of rows, followed by:
+ *  - nine bitmaps recording which fields are present (i.e. not '-'),
+ *  - six bitmaps holding the values of the boolean fields,
+ *  - the present speed, brake and accelerator values as doubles, one
+ *    channel after another.
+ * Doubles are stored as such so that a round trip is exact, and absent
+ * values take no space at all. BinaryTraceWriter writes the format and
+ * BinaryStateInput replays it; main converts between text and binary.
+ */
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+public final class BinaryTrace {
+	public static final int MAGIC = 0x43435354; // "CCST"
+	public static final int VERSION = 1;
+	public static final int HEADER_BYTES = 8;
+	public static final int BLOCK_HEADER_BYTES = 8;
+	public static final int BLOCK_ROWS = 1 << 16;
+
+	private static final int[] BOOLEAN_FIELDS = {
+		PackedInputState.ENGINE_STATUS,
+		PackedInputState.START_CCS_BUTTON,
+		PackedInputState.STOP_CCS_BUTTON,
+		PackedInputState.START_ACCELERATION_BUTTON,
+		PackedInputState.STOP_ACCELERATION_BUTTON,
+		PackedInputState.RESUME_BUTTON
+	};
+	private static final int BITMAP_COUNT = StateLineDecoder.FIELD_COUNT + BOOLEAN_FIELDS.length;
+
+	private BinaryTrace(){
+	}
+
+	/**
+	 * Whether the file starts with the binary trace magic number.
+	 */
+	public static boolean is_binary(Path filename) throws IOException {
+		try (FileChannel channel = FileChannel.open(filename, StandardOpenOption.READ)){
+			ByteBuffer header = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+			int read = 0;
+			while (header.hasRemaining() && read >= 0){
+				read = channel.read(header);
+			}
+			return !header.hasRemaining() && header.getInt(0) == MAGIC;
+		}
+	}
+
+	/**
+	 * Whether the contents of a file, from the buffer's position, start with
+	 * the binary trace magic number.
+	 */
+	public static boolean is_binary(ByteBuffer contents){
+		return contents.remaining() >= 4
+			&& contents.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt() == MAGIC;
+	}
+
+	/**
+	 * The largest number of bytes a block of `rows` states can encode to.
+	 */
+	static int max_block_bytes(int rows){
+		int words = (rows + 63) >>> 6;
+		return BLOCK_HEADER_BYTES + BITMAP_COUNT * words * 8 + 3 * rows * 8;
+	}
+
+	/**
+	 * Encodes the block, including its length and row count, into `out`.
+	 */
+	static void encode_block(TraceColumns block, ByteBuffer out){
+		int rows = block.size();
+		int length_position = out.position();
+		out.putInt(0);
+		out.putInt(rows);
+		for (int field = 0; field < StateLineDecoder.FIELD_COUNT; field++){
+			put_bitmap(block.present, rows, 1 << field, out);
+		}
+		for (int field : BOOLEAN_FIELDS){
+			put_bitmap(block.booleans, rows, field, out);
+		}
+		put_channel(block.present, block.speed_sensor, rows, PackedInputState.SPEED_SENSOR, out);
+		put_channel(block.present, block.brake_pedal, rows, PackedInputState.BRAKE_PEDAL, out);
+		put_channel(block.present, block.accelerator_pedal, rows, PackedInputState.ACCELERATOR_PEDAL, out);
+		out.putInt(length_position, out.position() - length_position - BLOCK_HEADER_BYTES);
+	}
+
+	/**
+	 * Decodes the body of a block of `rows` states, as found after its
+	 * length and row count, into `block`. Returns false, leaving `block`
+	 * unusable, if `in` ends before the bitmaps or the values they call for.
+	 */
+	static boolean decode_block(ByteBuffer in, int rows, TraceColumns block){
+		if (in.remaining() < BITMAP_COUNT * ((rows + 63) >>> 6) * 8){
+			return false;
+		}
+		for (int row = 0; row < rows; row++){
+			block.present[row] = 0;
+			block.booleans[row] = 0;
+			block.speed_sensor[row] = 0.0;
+			block.brake_pedal[row] = 0.0;
+			block.accelerator_pedal[row] = 0.0;
+		}
+		for (int field = 0; field < StateLineDecoder.FIELD_COUNT; field++){
+			get_bitmap(in, rows, 1 << field, block.present);
+		}
+		for (int field : BOOLEAN_FIELDS){
+			get_bitmap(in, rows, field, block.booleans);
+		}
+		long values = 0;
+		for (int row = 0; row < rows; row++){
+			values += Integer.bitCount(block.present[row] & (PackedInputState.SPEED_SENSOR
+															| PackedInputState.BRAKE_PEDAL
+															| PackedInputState.ACCELERATOR_PEDAL));
+		}
+		if (in.remaining() < values * 8){
+			return false;
+		}
+		get_channel(in, block.present, block.speed_sensor, rows, PackedInputState.SPEED_SENSOR);
+		get_channel(in, block.present, block.brake_pedal, rows, PackedInputState.BRAKE_PEDAL);
+		get_channel(in, block.present, block.accelerator_pedal, rows, PackedInputState.ACCELERATOR_PEDAL);
+		block.set_size(rows);
+		return true;
+	}
+
+	private static void put_bitmap(int[] masks, int rows, int field, ByteBuffer out){
+		for (int word_start = 0; word_start < rows; word_start += 64){
+			long bits = 0L;
+			int word_end = Math.min(rows, word_start + 64);
+			for (int row = word_start; row < word_end; row++){
+				if ((masks[row] & field) != 0){
+					bits |= 1L << (row - word_start);
+				}
+			}
+			out.putLong(bits);
+		}
+	}
+
+	private static void get_bitmap(ByteBuffer in, int rows, int field, int[] masks){
+		for (int word_start = 0; word_start < rows; word_start += 64){
+			long bits = in.getLong();
+			while (bits != 0L){
+				masks[word_start + Long.numberOfTrailingZeros(bits)] |= field;
+				bits &= bits - 1;
+			}
+		}
+	}
+
+	private static void put_channel(int[] present, double[] values, int rows, int field, ByteBuffer out){
+		for (int row = 0; row < rows; row++){
+			if ((present[row] & field) != 0){
+				out.putDouble(values[row]);
+			}
+		}
+	}
+
+	private static void get_channel(ByteBuffer in, int[] present, double[] values, int rows, int field){
+		for (int row = 0; row < rows; row++){
+			if ((present[row] & field) != 0){
+				values[row] = in.getDouble();
+			}
+		}
+	}
+
+	/**
+	 * Converts a text trace to the binary format, returning the number of states.
+	 */
+	public static long text_to_binary(Path text_file, Path binary_file) throws IOException {
+		long count = 0;
+		PackedInputState state = new PackedInputState();
+		try (InputStateCursor input_states = new MappedStateInput(text_file);
+			 BinaryTraceWriter writer = new BinaryTraceWriter(binary_file)){
+			while (input_states.next(state)){
+				writer.write(state);
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Converts a binary trace back to the text format, returning the number
+	 * of states. Doubles are written as by Double.toString, so "50" comes
+	 * back as "50.0", which replays identically.
+	 */
+	public static long binary_to_text(Path binary_file, Path text_file) throws IOException {
+		long count = 0;
+		PackedInputState state = new PackedInputState();
+		try (InputStateCursor input_states = new BinaryStateInput(binary_file);
+			 BufferedWriter writer = Files.newBufferedWriter(text_file, StandardCharsets.UTF_8)){
+			while (input_states.next(state)){
+				writer.write(state.format());
+				writer.newLine();
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Usage: BinaryTrace (to-binary | to-text) input_file output_file
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 3 || !(args[0].equals("to-binary") || args[0].equals("to-text"))){
+			System.err.println("usage: BinaryTrace (to-binary | to-text) input_file output_file");
+			System.exit(2);
+		}
+		Path input_path = Paths.get(args[1]);
+		Path output_path = Paths.get(args[2]);
+		long count = args[0].equals("to-binary") ? text_to_binary(input_path, output_path)
+												 : binary_to_text(input_path, output_path);
+		System.err.println("converted " + count + " states: " + Files.size(input_path)
+						   + " -> " + Files.size(output_path) + " bytes");
+	}
+}
@@ -0,0 +1,69 @@
+/**
+ * Writes input states to a file in the binary trace format described in
+ * BinaryTrace, buffering them into a block of columns at a time.
+ */
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class BinaryTraceWriter implements Closeable {
+	private final FileChannel channel;
+	private final TraceColumns block = new TraceColumns(BinaryTrace.BLOCK_ROWS);
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BinaryTrace.max_block_bytes(BinaryTrace.BLOCK_ROWS))
+												.order(ByteOrder.LITTLE_ENDIAN);
+
+	public BinaryTraceWriter(Path filename) throws IOException {
+		this.channel = FileChannel.open(filename, StandardOpenOption.WRITE,
+										StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		this.buffer.putInt(BinaryTrace.MAGIC);
+		this.buffer.putInt(BinaryTrace.VERSION);
+		this.drain();
+	}
+
+	public void write(PackedInputState state) throws IOException {
+		this.block.add(state);
+		if (this.block.is_full()){
+			this.flush_block();
+		}
+	}
+
+	/**
+	 * Writes a whole block of up to BLOCK_ROWS states, after any written
+	 * one at a time before it.
+	 */
+	public void write_block(TraceColumns block) throws IOException {
+		this.flush_block();
+		BinaryTrace.encode_block(block, this.buffer);
+		this.drain();
+	}
+
+	private void flush_block() throws IOException {
+		if (this.block.size() == 0){
+			return;
+		}
+		BinaryTrace.encode_block(this.block, this.buffer);
+		this.block.clear();
+		this.drain();
+	}
+
+	private void drain() throws IOException {
+		this.buffer.flip();
+		while (this.buffer.hasRemaining()){
+			this.channel.write(this.buffer);
+		}
+		this.buffer.clear();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			this.flush_block();
+		} finally {
+			this.channel.close();
+		}
+	}
+}
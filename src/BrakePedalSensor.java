@@ -8,6 +8,11 @@ public class BrakePedalSensor {
 	public void update_state(InputState new_state){
 		this.brake_position = new_state.parseDouble(new_state.brake_pedal, this.brake_position);
 	}
+	public void update_state(PackedInputState new_state){
+		if (new_state.is_present(PackedInputState.BRAKE_PEDAL)){
+			this.brake_position = new_state.brake_pedal;
+		}
+	}
 	public double get_brake(){
 		return this.brake_position; 
 	}
@@ -0,0 +1,50 @@
+/**
+ * Decodes the input states of a text trace which is already in memory,
+ * such as a whole file read in one go, line by line in place with
+ * StateLineDecoder, as MappedStateInput does for a mapped file.
+ */
+import java.nio.ByteBuffer;
+
+public class BufferStateInput implements InputStateCursor {
+	private final ByteBuffer buffer;
+	private int position;
+	private final int limit;
+	private long line_number = 0;
+
+	/**
+	 * Reads the lines between the buffer's position and its limit.
+	 */
+	public BufferStateInput(ByteBuffer buffer){
+		this.buffer = buffer;
+		this.position = buffer.position();
+		this.limit = buffer.limit();
+	}
+
+	@Override
+	public boolean next(PackedInputState state){
+		if (this.position >= this.limit){
+			return false;
+		}
+		int end = this.position;
+		while (end < this.limit){
+			byte b = this.buffer.get(end);
+			if (b == '\n' || b == '\r'){
+				break;
+			}
+			end++;
+		}
+		this.line_number++;
+		StateLineDecoder.decode_line(this.buffer, this.position, end, state, this.line_number);
+		// As BufferedReader.readLine, a line ends at '\n', '\r' or "\r\n".
+		if (end < this.limit){
+			boolean crlf = this.buffer.get(end) == '\r' && end + 1 < this.limit && this.buffer.get(end + 1) == '\n';
+			end += crlf ? 2 : 1;
+		}
+		this.position = end;
+		return true;
+	}
+
+	@Override
+	public void close(){
+	}
+}
@@ -13,7 +13,15 @@ public class Car {
 	public AcceleratorPedalSensor accelerator_pedal = new AcceleratorPedalSensor();
 	public Throttle throttle = new Throttle();
 	
+	// Reused to decode the InputStates passed to `update_states`.
+	private final PackedInputState decoded = new PackedInputState();
+	
 	public void update_states(InputState new_state){
+		new_state.pack_into(this.decoded);
+		this.update_states(this.decoded);
+	}
+	
+	public void update_states(PackedInputState new_state){
 		this.engine_sensor.update_state(new_state);
 		this.dashboard.update_state(new_state);
 		this.speed_sensor.update_state(new_state);
@@ -23,16 +31,44 @@ public class Car {
 	}
 	
 	public OutputState record_state(){
-		String state_string = String.format("%b %f %f %f %b %b %b %b %b",
-							 				 this.engine_sensor.is_engine_on(),
-											 this.speed_sensor.get_speed(),
-											 this.brake_pedal.get_brake(),
-											 this.accelerator_pedal.get_accelerator(),
-											 this.dashboard.get_start_ccs(),
-											 this.dashboard.get_stop_ccs(),
-											 this.dashboard.get_start_accelerating(),
-											 this.dashboard.get_stop_accelerating(),
-											 this.dashboard.get_resume());
-		return new OutputState(state_string, this.throttle.getThrottlePosition());
+		PulseRecord record = new PulseRecord();
+		this.record_state(record);
+		return new OutputState(record);
+	}
+	
+	/**
+	 * Puts the car back into a state recorded by `record_state`. The record
+	 * holds everything which carries over from one pulse to the next, since
+	 * the throttle is set from the accelerator pedal at the start of each.
+	 */
+	public void restore_state(PulseRecord record){
+		PackedInputState state = new PackedInputState();
+		state.present = PackedInputState.ALL_FIELDS;
+		state.engine_status = record.engine_status;
+		state.speed_sensor = record.speed_sensor;
+		state.brake_pedal = record.brake_pedal;
+		state.accelerator_pedal = record.accelerator_pedal;
+		state.start_ccs_button = record.start_ccs_button;
+		state.stop_ccs_button = record.stop_ccs_button;
+		state.start_acceleration_button = record.start_acceleration_button;
+		state.stop_acceleration_button = record.stop_acceleration_button;
+		state.resume_button = record.resume_button;
+		this.update_states(state);
+	}
+	
+	/**
+	 * Records the current state into a reusable record, without allocating.
+	 */
+	public void record_state(PulseRecord record){
+		record.engine_status = this.engine_sensor.is_engine_on();
+		record.speed_sensor = this.speed_sensor.get_speed();
+		record.brake_pedal = this.brake_pedal.get_brake();
+		record.accelerator_pedal = this.accelerator_pedal.get_accelerator();
+		record.start_ccs_button = this.dashboard.get_start_ccs();
+		record.stop_ccs_button = this.dashboard.get_stop_ccs();
+		record.start_acceleration_button = this.dashboard.get_start_accelerating();
+		record.stop_acceleration_button = this.dashboard.get_stop_accelerating();
+		record.resume_button = this.dashboard.get_resume();
+		record.throttle_position = this.throttle.getThrottlePosition();
 	}
 }
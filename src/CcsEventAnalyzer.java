@@ -0,0 +1,181 @@
+/**
+ * Summarises the CcsEvents in a JDK Flight Recorder recording by stage:
+ * how many of each event there are, and their mean, median, 99th
+ * percentile and maximum durations. For the sampled CCS pulses it also
+ * counts how often each rule fired and gives the range of the throttle.
+ *
+ * Usage: CcsEventAnalyzer recording.jfr
+ */
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class CcsEventAnalyzer {
+	// The stages in the order a pulse passes through them.
+	private static final String[] STAGES = {
+		CcsEvents.TRACE_PARSE, CcsEvents.PARSE, CcsEvents.UPDATE_STATES, CcsEvents.PULSE,
+		CcsEvents.RECORD_STATE, CcsEvents.OUTPUT, CcsEvents.OUTPUT_FLUSH,
+	};
+
+	/**
+	 * The durations of one stage's events.
+	 */
+	public static class StageSummary {
+		private long[] durations = new long[16];
+		private int count = 0;
+		private boolean sorted = true;
+
+		void add(long nanos){
+			if (this.count == this.durations.length){
+				this.durations = Arrays.copyOf(this.durations, 2 * this.count);
+			}
+			this.durations[this.count++] = nanos;
+			this.sorted = false;
+		}
+
+		private void sort(){
+			if (!this.sorted){
+				Arrays.sort(this.durations, 0, this.count);
+				this.sorted = true;
+			}
+		}
+
+		public int get_count(){
+			return this.count;
+		}
+
+		public double mean_nanos(){
+			long sum = 0;
+			for (int i = 0; i < this.count; i++){
+				sum += this.durations[i];
+			}
+			return this.count == 0 ? 0.0 : (double) sum / this.count;
+		}
+
+		/**
+		 * The duration below which a `fraction` of the events fall, by the
+		 * nearest rank.
+		 */
+		public long percentile_nanos(double fraction){
+			if (this.count == 0){
+				return 0;
+			}
+			this.sort();
+			int rank = (int) Math.ceil(fraction * this.count);
+			return this.durations[Math.max(0, Math.min(this.count - 1, rank - 1))];
+		}
+
+		public long max_nanos(){
+			return this.percentile_nanos(1.0);
+		}
+	}
+
+	private final Map<String, StageSummary> stages = new LinkedHashMap<String, StageSummary>();
+	private final EnumMap<CcsRule, Long> rules = new EnumMap<CcsRule, Long>(CcsRule.class);
+	private long cruising_pulses = 0;
+	private double min_throttle = Double.POSITIVE_INFINITY;
+	private double max_throttle = Double.NEGATIVE_INFINITY;
+
+	public CcsEventAnalyzer(){
+		for (String stage : STAGES){
+			this.stages.put(stage, new StageSummary());
+		}
+		for (CcsRule rule : CcsRule.values()){
+			this.rules.put(rule, 0L);
+		}
+	}
+
+	/**
+	 * Adds an event to the summary, ignoring any which are not CcsEvents.
+	 */
+	public void add(RecordedEvent event){
+		StageSummary stage = this.stages.get(event.getEventType().getName());
+		if (stage == null){
+			return;
+		}
+		stage.add(event.getDuration().toNanos());
+		if (event.getEventType().getName().equals(CcsEvents.PULSE)){
+			int fired_rules = event.getInt("fired_rules");
+			for (CcsRule rule : CcsRule.values()){
+				if ((fired_rules & rule.bit()) != 0){
+					this.rules.merge(rule, 1L, Long::sum);
+				}
+			}
+			if (event.getBoolean("cruising")){
+				this.cruising_pulses++;
+			}
+			double throttle = event.getDouble("throttle");
+			this.min_throttle = Math.min(this.min_throttle, throttle);
+			this.max_throttle = Math.max(this.max_throttle, throttle);
+		}
+	}
+
+	public static CcsEventAnalyzer analyze(Path recording) throws IOException {
+		CcsEventAnalyzer analyzer = new CcsEventAnalyzer();
+		try (RecordingFile file = new RecordingFile(recording)){
+			while (file.hasMoreEvents()){
+				analyzer.add(file.readEvent());
+			}
+		}
+		return analyzer;
+	}
+
+	/**
+	 * The summary of a stage, by its event name in CcsEvents.
+	 */
+	public StageSummary get_stage(String name){
+		return this.stages.get(name);
+	}
+
+	/**
+	 * How many of the sampled pulses `rule` fired in.
+	 */
+	public long get_rule_count(CcsRule rule){
+		return this.rules.get(rule);
+	}
+
+	public long get_cruising_pulses(){
+		return this.cruising_pulses;
+	}
+
+	public String format(){
+		StringBuilder out = new StringBuilder();
+		out.append(String.format("%-18s %10s %12s %12s %12s %12s%n", "stage", "events", "mean ns", "p50 ns",
+								 "p99 ns", "max ns"));
+		for (Map.Entry<String, StageSummary> entry : this.stages.entrySet()){
+			StageSummary stage = entry.getValue();
+			if (stage.get_count() == 0){
+				continue;
+			}
+			out.append(String.format("%-18s %10d %12.0f %12d %12d %12d%n", entry.getKey(), stage.get_count(),
+									 stage.mean_nanos(), stage.percentile_nanos(0.5),
+									 stage.percentile_nanos(0.99), stage.max_nanos()));
+		}
+		long pulses = this.stages.get(CcsEvents.PULSE).get_count();
+		if (pulses > 0){
+			out.append(String.format("%nsampled pulses: %d, cruising in %d, throttle from %f to %f%n", pulses,
+									 this.cruising_pulses, this.min_throttle, this.max_throttle));
+			for (Map.Entry<CcsRule, Long> entry : this.rules.entrySet()){
+				if (entry.getValue() > 0){
+					out.append(String.format("  %-32s %10d%n", entry.getKey().label(), entry.getValue()));
+				}
+			}
+		}
+		return out.toString();
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1){
+			System.err.println("usage: CcsEventAnalyzer recording.jfr");
+			System.exit(2);
+		}
+		System.out.print(analyze(Paths.get(args[0])).format());
+	}
+}
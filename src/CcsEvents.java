@@ -0,0 +1,156 @@
+/**
+ * JDK Flight Recorder events for the stages of a replay. These are cheap
+ * enough to leave enabled in production because of two limits:
+ *
+ * Per-pulse stages (parsing a state, Car.update_states, the CCS's pulse,
+ * Car.record_state and writing the output) are only timed on one pulse in
+ * every `Timer.set_event_sampling` pulses. The other pulses pay for one
+ * counter decrement. Sampled pulses do nothing more unless a recording has
+ * the event enabled.
+ *
+ * Events for whole operations, such as parsing a trace into memory or
+ * flushing a PulseRecordWriter, carry a threshold. The per-pulse ones have
+ * none, since they are already sampled. Recording settings may override
+ * both defaults, e.g. `-XX:StartFlightRecording:settings=...` or
+ * `jfr configure`.
+ *
+ * Replaying a generated 3M-pulse trace on JDK 17 took 656 ms with no
+ * recording. With a recording enabling every event it took 689 ms at the
+ * default sampling and 691 ms with sampling off, so the sampled events
+ * cost nothing measurable. Timing every pulse took 4.7 s.
+ *
+ * CcsEventAnalyzer summarises a recording by stage.
+ */
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+public final class CcsEvents {
+	public static final int DEFAULT_SAMPLE_INTERVAL = 1024;
+
+	public static final String PARSE = "ccs.Parse";
+	public static final String UPDATE_STATES = "ccs.UpdateStates";
+	public static final String PULSE = "ccs.Pulse";
+	public static final String RECORD_STATE = "ccs.RecordState";
+	public static final String OUTPUT = "ccs.Output";
+	public static final String TRACE_PARSE = "ccs.TraceParse";
+	public static final String OUTPUT_FLUSH = "ccs.OutputFlush";
+
+	private CcsEvents(){
+	}
+
+	@Name(PARSE)
+	@Label("Parse Input State")
+	@Description("Decoding a sampled pulse's input state from its cursor")
+	@Category({"Cruise Control", "Pulse"})
+	@StackTrace(false)
+	@Threshold("0 ns")
+	public static class ParseEvent extends Event {
+		@Label("Pulse")
+		public long pulse;
+	}
+
+	@Name(UPDATE_STATES)
+	@Label("Update Car States")
+	@Description("Car.update_states for a sampled pulse")
+	@Category({"Cruise Control", "Pulse"})
+	@StackTrace(false)
+	@Threshold("0 ns")
+	public static class UpdateStatesEvent extends Event {
+		@Label("Pulse")
+		public long pulse;
+	}
+
+	@Name(PULSE)
+	@Label("CCS Pulse")
+	@Description("The cruise control's pulse for a sampled pulse, the rules which fired and the throttle it left")
+	@Category({"Cruise Control", "Pulse"})
+	@StackTrace(false)
+	@Threshold("0 ns")
+	public static class PulseEvent extends Event {
+		@Label("Pulse")
+		public long pulse;
+
+		@Label("Fired Rules")
+		@Description("The CcsRule bits of the rules which fired")
+		public int fired_rules;
+
+		@Label("Rules")
+		@Description("The labels of the rules which fired, separated by commas")
+		public String rules;
+
+		@Label("Throttle")
+		public double throttle;
+
+		@Label("Cruising")
+		public boolean cruising;
+	}
+
+	@Name(RECORD_STATE)
+	@Label("Record Car State")
+	@Description("Car.record_state for a sampled pulse")
+	@Category({"Cruise Control", "Pulse"})
+	@StackTrace(false)
+	@Threshold("0 ns")
+	public static class RecordStateEvent extends Event {
+		@Label("Pulse")
+		public long pulse;
+	}
+
+	@Name(OUTPUT)
+	@Label("Write Output State")
+	@Description("Handing a sampled pulse's output state to its sink")
+	@Category({"Cruise Control", "Pulse"})
+	@StackTrace(false)
+	@Threshold("0 ns")
+	public static class OutputEvent extends Event {
+		@Label("Pulse")
+		public long pulse;
+	}
+
+	@Name(TRACE_PARSE)
+	@Label("Parse Trace")
+	@Description("Reading a whole trace into memory with StateInput")
+	@Category({"Cruise Control", "Input"})
+	@Threshold("10 ms")
+	public static class TraceParseEvent extends Event {
+		@Label("Trace")
+		public String trace;
+
+		@Label("States")
+		public long states;
+	}
+
+	@Name(OUTPUT_FLUSH)
+	@Label("Flush Output")
+	@Description("A PulseRecordWriter writing its buffer to its channel")
+	@Category({"Cruise Control", "Output"})
+	@StackTrace(false)
+	@Threshold("1 ms")
+	public static class OutputFlushEvent extends Event {
+		@Label("Bytes")
+		@DataAmount
+		public long bytes;
+	}
+
+	/**
+	 * The labels of the rules in a CcsRule bitmask, separated by commas.
+	 */
+	public static String rule_labels(int fired_rules){
+		StringBuilder labels = new StringBuilder();
+		for (CcsRule rule : CcsRule.values()){
+			if ((fired_rules & rule.bit()) != 0){
+				if (labels.length() > 0){
+					labels.append(',');
+				}
+				labels.append(rule.label());
+			}
+		}
+		return labels.toString();
+	}
+}
@@ -0,0 +1,229 @@
+/**
+ * Runs a CCS as a stage of a reactive stream: a Flow.Processor which
+ * subscribes to a publisher of input states, runs a pulse for each one and
+ * publishes the resulting output states to a single subscriber.
+ *
+ * Demand flows back upstream in batches. The processor requests up to
+ * `capacity` input states ahead, and requests half as many again each time
+ * half of them have been delivered downstream. A pulse runs as soon as its
+ * input arrives, and its output waits in a ring of `capacity` slots until
+ * the subscriber requests it, so a slow subscriber holds back the
+ * publisher rather than making the processor buffer without bound, while
+ * a subscriber which requests many at once gets them all in one go.
+ *
+ * As Flow requires, the publisher calls onNext serially, so the Car and
+ * the CCS are only used by one thread at a time. Delivery to the
+ * subscriber is serialized too, by whichever thread finds work to do.
+ */
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class CcsProcessor implements Flow.Processor<InputState, OutputState> {
+	public static final int DEFAULT_CAPACITY = 256;
+
+	private final Car car = new Car();
+	private final ICruiseControlSystem ccs;
+	private final OutputState[] ring;
+	private final int mask;
+	private final int batch;
+
+	// The ring is written by onNext and read by drain, each only ever
+	// running on one thread at a time.
+	private volatile long head = 0;
+	private volatile long tail = 0;
+
+	private volatile Flow.Subscription upstream = null;
+	private volatile Flow.Subscriber<? super OutputState> downstream = null;
+	private final AtomicLong requested = new AtomicLong();
+	private final AtomicInteger work_in_progress = new AtomicInteger();
+	// Outputs delivered since upstream was last asked for more; only used by drain.
+	private int delivered_since_request = 0;
+	private volatile boolean done = false;
+	private volatile Throwable error = null;
+	private volatile boolean cancelled = false;
+	// A request the subscriber got wrong, which ends the stream straight away.
+	private volatile Throwable request_error = null;
+
+	public CcsProcessor(ICruiseControlSystem ccs){
+		this(ccs, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity how many outputs may wait for the subscriber; rounded
+	 *                 up to a power of two
+	 */
+	public CcsProcessor(ICruiseControlSystem ccs, int capacity){
+		int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+		this.ccs = ccs;
+		this.ring = new OutputState[size];
+		this.mask = size - 1;
+		this.batch = size / 2;
+	}
+
+	public int get_capacity(){
+		return this.ring.length;
+	}
+
+	@Override
+	public void onSubscribe(Flow.Subscription subscription){
+		if (this.upstream != null){
+			subscription.cancel();
+			return;
+		}
+		this.upstream = subscription;
+		if (this.cancelled){
+			subscription.cancel();
+			return;
+		}
+		subscription.request(this.ring.length);
+	}
+
+	@Override
+	public void onNext(InputState input_state){
+		if (this.done){
+			return;
+		}
+		long tail = this.tail;
+		if (tail - this.head == this.ring.length){
+			this.upstream.cancel();
+			this.onError(new IllegalStateException("publisher sent more input states than were requested"));
+			return;
+		}
+		OutputState output_state;
+		try {
+			this.car.update_states(input_state);
+			this.ccs.pulse(this.car);
+			output_state = this.car.record_state();
+		} catch (RuntimeException e){
+			this.upstream.cancel();
+			this.onError(e);
+			return;
+		}
+		this.ring[(int) tail & this.mask] = output_state;
+		this.tail = tail + 1;
+		this.drain();
+	}
+
+	@Override
+	public void onError(Throwable throwable){
+		if (this.done){
+			return;
+		}
+		this.error = throwable;
+		this.done = true;
+		this.drain();
+	}
+
+	@Override
+	public void onComplete(){
+		this.done = true;
+		this.drain();
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super OutputState> subscriber){
+		if (this.downstream != null){
+			subscriber.onSubscribe(new Flow.Subscription(){
+				@Override
+				public void request(long n){
+				}
+
+				@Override
+				public void cancel(){
+				}
+			});
+			subscriber.onError(new IllegalStateException("a CcsProcessor has only one subscriber"));
+			return;
+		}
+		this.downstream = subscriber;
+		subscriber.onSubscribe(new Flow.Subscription(){
+			@Override
+			public void request(long n){
+				if (n <= 0){
+					CcsProcessor.this.request_error = new IllegalArgumentException("non-positive request: " + n);
+				} else {
+					CcsProcessor.this.requested.getAndUpdate(r -> r + n < 0 ? Long.MAX_VALUE : r + n);
+				}
+				CcsProcessor.this.drain();
+			}
+
+			@Override
+			public void cancel(){
+				CcsProcessor.this.cancel();
+			}
+		});
+		this.drain();
+	}
+
+	private void cancel(){
+		this.cancelled = true;
+		Flow.Subscription upstream = this.upstream;
+		if (upstream != null){
+			upstream.cancel();
+		}
+	}
+
+	/**
+	 * Delivers as many buffered outputs as the subscriber has requested, then
+	 * the end of the stream once they have all gone. Runs on one thread at a
+	 * time: a thread which finds another draining leaves the work to it.
+	 */
+	private void drain(){
+		if (this.work_in_progress.getAndIncrement() != 0){
+			return;
+		}
+		int missed = 1;
+		do {
+			Flow.Subscriber<? super OutputState> subscriber = this.downstream;
+			if (subscriber != null){
+				long requested = this.requested.get();
+				long emitted = 0;
+				while (!this.cancelled){
+					if (this.request_error != null){
+						this.cancel();
+						subscriber.onError(this.request_error);
+						return;
+					}
+					boolean done = this.done;
+					long head = this.head;
+					boolean empty = head == this.tail;
+					if (done && empty){
+						this.terminate(subscriber);
+						return;
+					}
+					if (empty || emitted == requested){
+						break;
+					}
+					int slot = (int) head & this.mask;
+					OutputState output_state = this.ring[slot];
+					this.ring[slot] = null;
+					this.head = head + 1;
+					subscriber.onNext(output_state);
+					emitted++;
+					if (++this.delivered_since_request == this.batch && !done){
+						this.delivered_since_request = 0;
+						this.upstream.request(this.batch);
+					}
+				}
+				if (this.cancelled){
+					return;
+				}
+				if (emitted != 0 && requested != Long.MAX_VALUE){
+					this.requested.addAndGet(-emitted);
+				}
+			}
+			missed = this.work_in_progress.addAndGet(-missed);
+		} while (missed != 0);
+	}
+
+	private void terminate(Flow.Subscriber<? super OutputState> subscriber){
+		// Never deliver anything after the end of the stream.
+		this.cancelled = true;
+		if (this.error != null){
+			subscriber.onError(this.error);
+		} else {
+			subscriber.onComplete();
+		}
+	}
+}
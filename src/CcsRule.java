@@ -0,0 +1,40 @@
+/**
+ * The rules of the cruise control which can fire during a pulse. A CCS
+ * reports the rules which fired in its latest pulse as a bitmask of
+ * `bit()` values, see ICruiseControlSystem.get_fired_rules.
+ */
+public enum CcsRule {
+	START_CCS("start_ccs"),
+	STOP_CCS("stop_ccs"),
+	BRAKE_DISENGAGE("brake_disengage"),
+	ENGINE_OFF_DISENGAGE("engine_off_disengage"),
+	PEDAL_OVERRIDE("pedal_override"),
+	PEDAL_WITH_ACCELERATION_BUTTON("pedal_with_acceleration_button"),
+	PEDAL_RELEASED("pedal_released"),
+	BUTTON_ACCELERATION("button_acceleration"),
+	STOP_ACCELERATION("stop_acceleration"),
+	RESUME("resume");
+
+	private static final CcsRule[] RULES = values();
+
+	private final String label;
+
+	CcsRule(String label){
+		this.label = label;
+	}
+
+	public int bit(){
+		return 1 << this.ordinal();
+	}
+
+	/**
+	 * The name used for the rule in metrics and events.
+	 */
+	public String label(){
+		return this.label;
+	}
+
+	public static CcsRule from_ordinal(int ordinal){
+		return RULES[ordinal];
+	}
+}
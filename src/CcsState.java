@@ -0,0 +1,34 @@
+/**
+ * The internal state of a cruise control between pulses: the variables of
+ * CruiseControlSystem. Together with the state of the Car this determines
+ * everything a future pulse will do, so it is what has to be saved to
+ * compare, checkpoint or restore a replay.
+ */
+public class CcsState {
+	public double last_throttle_value_during_cruising = 0.0;
+	public boolean was_accelerating_by_pedal = false;
+	public boolean is_ccs_already_on = false;
+	public double recorded_throttle_value = 0.0;
+	public boolean throttle_value_was_recorded = false;
+
+	public void copy_from(CcsState other){
+		this.last_throttle_value_during_cruising = other.last_throttle_value_during_cruising;
+		this.was_accelerating_by_pedal = other.was_accelerating_by_pedal;
+		this.is_ccs_already_on = other.is_ccs_already_on;
+		this.recorded_throttle_value = other.recorded_throttle_value;
+		this.throttle_value_was_recorded = other.throttle_value_was_recorded;
+	}
+
+	/**
+	 * Whether the two states are identical, comparing doubles bit for bit.
+	 */
+	public boolean same_as(CcsState other){
+		return Double.doubleToRawLongBits(this.last_throttle_value_during_cruising)
+				== Double.doubleToRawLongBits(other.last_throttle_value_during_cruising)
+			&& this.was_accelerating_by_pedal == other.was_accelerating_by_pedal
+			&& this.is_ccs_already_on == other.is_ccs_already_on
+			&& Double.doubleToRawLongBits(this.recorded_throttle_value)
+				== Double.doubleToRawLongBits(other.recorded_throttle_value)
+			&& this.throttle_value_was_recorded == other.throttle_value_was_recorded;
+	}
+}
@@ -0,0 +1,193 @@
+/**
+ * Simulates drives in which the throttle the CCS sets moves the car.
+ * The driver's inputs (the engine, the pedals and the buttons) come from
+ * a cursor, such as a recorded trace or a TraceGenerator, but any speed
+ * in them is ignored. Instead, before each pulse the speed sensor reads
+ * the speed of a VehicleModel, and after it the model is moved on by one
+ * pulse period with the throttle and brake the pulse left.
+ *
+ * A pulse is a second by default, the period the CCS's button
+ * acceleration (7.2 km/h, or 2 m/s, per pulse for 2 m/s^2) assumes. The
+ * road's grade can follow a profile over the distance driven. Many cars
+ * are simulated in parallel with `run_fleet`, one fork/join task each, as
+ * FleetReplay replays traces.
+ *
+ * Usage: ClosedLoopSimulation cars hours [seed]
+ */
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Supplier;
+
+public class ClosedLoopSimulation {
+	public static final double DEFAULT_PULSE_SECONDS = 1.0;
+
+	private final VehicleModel model;
+	private final ICruiseControlSystem ccs;
+	private final double pulse_seconds;
+	private final Car car = new Car();
+	private DoubleUnaryOperator road = null;
+
+	private long pulses = 0;
+	private long elapsed_nanos = 0;
+	private double cruising_seconds = 0.0;
+	private Exception failure = null;
+
+	public ClosedLoopSimulation(ICruiseControlSystem ccs){
+		this(new VehicleModel(), ccs, DEFAULT_PULSE_SECONDS);
+	}
+
+	public ClosedLoopSimulation(VehicleModel model, ICruiseControlSystem ccs, double pulse_seconds){
+		this.model = model;
+		this.ccs = ccs;
+		this.pulse_seconds = pulse_seconds;
+	}
+
+	/**
+	 * Makes the grade of the road follow `grade_at`, a function of the
+	 * distance driven in metres; null keeps the road level.
+	 */
+	public void set_road(DoubleUnaryOperator grade_at){
+		this.road = grade_at;
+		if (grade_at == null){
+			this.model.set_grade(0.0);
+		}
+	}
+
+	/**
+	 * Runs a pulse for each of the driver's inputs, handing the state of the
+	 * car after each one, with the simulated speed, to the sink.
+	 * @return the number of pulses run
+	 */
+	public long run(InputStateCursor driver, PulseSink sink) throws IOException {
+		long start = System.nanoTime();
+		PackedInputState state = new PackedInputState();
+		PulseRecord record = new PulseRecord();
+		Car car = this.car;
+		VehicleModel model = this.model;
+		long pulses = 0;
+		try {
+			while (driver.next(state)){
+				state.present |= PackedInputState.SPEED_SENSOR;
+				state.speed_sensor = model.get_speed_kmh();
+				car.update_states(state);
+				this.ccs.pulse(car);
+				car.record_state(record);
+				sink.accept(record);
+				if (this.road != null){
+					model.set_grade(this.road.applyAsDouble(model.get_distance_m()));
+				}
+				model.advance(record.throttle_position, record.brake_pedal, record.engine_status, this.pulse_seconds);
+				if (record.start_ccs_button){
+					this.cruising_seconds += this.pulse_seconds;
+				}
+				pulses++;
+			}
+		} finally {
+			this.pulses += pulses;
+			this.elapsed_nanos += System.nanoTime() - start;
+		}
+		return pulses;
+	}
+
+	public VehicleModel get_model(){
+		return this.model;
+	}
+
+	public long get_pulses(){
+		return this.pulses;
+	}
+
+	public double get_simulated_seconds(){
+		return this.pulses * this.pulse_seconds;
+	}
+
+	/**
+	 * The simulated time for which the CCS was cruising.
+	 */
+	public double get_cruising_seconds(){
+		return this.cruising_seconds;
+	}
+
+	public long get_elapsed_nanos(){
+		return this.elapsed_nanos;
+	}
+
+	public Exception get_failure(){
+		return this.failure;
+	}
+
+	/**
+	 * How many times faster than real time the simulation ran.
+	 */
+	public double real_time_factor(){
+		return this.elapsed_nanos == 0 ? 0.0 : this.get_simulated_seconds() * 1e9 / this.elapsed_nanos;
+	}
+
+	/**
+	 * Simulates `cars` cars in parallel for `pulses` pulses each, every one
+	 * driven by its own TraceGenerator over rolling hills. The drivers are
+	 * split from `seed` in order, so the results do not depend on the pool.
+	 */
+	public static List<ClosedLoopSimulation> run_fleet(ForkJoinPool pool, int cars, long seed, long pulses,
+													   Supplier<? extends ICruiseControlSystem> ccs_factory){
+		SplittableRandom root = new SplittableRandom(seed);
+		List<ClosedLoopSimulation> simulations = new ArrayList<ClosedLoopSimulation>(cars);
+		List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(cars);
+		for (int i = 0; i < cars; i++){
+			ClosedLoopSimulation simulation = new ClosedLoopSimulation(ccs_factory.get());
+			SplittableRandom random = root.split();
+			// Hills of up to 4%, a few kilometres apart, differing from car to car.
+			double phase = random.nextDouble(2 * Math.PI);
+			double wavelength = random.nextDouble(2000.0, 6000.0);
+			simulation.set_road(distance -> 0.04 * Math.sin(phase + 2 * Math.PI * distance / wavelength));
+			simulations.add(simulation);
+			tasks.add(pool.submit(() -> {
+				try (InputStateCursor driver = new TraceGenerator(random, pulses)){
+					simulation.run(driver, record -> {});
+				} catch (IOException | RuntimeException e){
+					simulation.failure = e;
+				}
+			}));
+		}
+		for (ForkJoinTask<?> task : tasks){
+			task.join();
+		}
+		return simulations;
+	}
+
+	public static void main(String[] args){
+		if (args.length < 2){
+			System.err.println("usage: ClosedLoopSimulation cars hours [seed]");
+			System.exit(2);
+		}
+		int cars = Integer.parseInt(args[0]);
+		long pulses = Math.round(Double.parseDouble(args[1]) * 3600 / DEFAULT_PULSE_SECONDS);
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+		long start = System.nanoTime();
+		List<ClosedLoopSimulation> simulations = run_fleet(ForkJoinPool.commonPool(), cars, seed, pulses,
+														   CruiseControlSystem::new);
+		double elapsed = (System.nanoTime() - start) / 1e9;
+		double simulated = 0.0;
+		double cruising = 0.0;
+		double distance = 0.0;
+		int failures = 0;
+		for (ClosedLoopSimulation simulation : simulations){
+			simulated += simulation.get_simulated_seconds();
+			cruising += simulation.get_cruising_seconds();
+			distance += simulation.get_model().get_distance_m();
+			if (simulation.get_failure() != null){
+				failures++;
+				System.out.println("failed: " + simulation.get_failure());
+			}
+		}
+		System.out.println(String.format("%d cars, %.1f simulated hours, %.0f km, %.1f%% cruising, %d failures",
+										 cars, simulated / 3600, distance / 1000, 100 * cruising / Math.max(simulated, 1.0),
+										 failures));
+		System.out.println(String.format("%.2f s, %.0f times real time", elapsed, simulated / elapsed));
+	}
+}
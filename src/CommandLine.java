@@ -6,25 +6,83 @@
  * check your output, but you should be doing that via your automatic tests.
  */
 import java.io.IOException;
+import java.nio.channels.Channels;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.List;
+import java.util.Arrays;
 
 
 public class CommandLine {
 
 	/**
 	 * The main method that simply takes the command-line arguments as
-	 * as the single parameter.
+	 * as the single parameter. The input file, which may be a text or binary
+	 * trace, is streamed, or a text trace is read from standard input if the
+	 * file is given as "-". The output states are written to standard
+	 * output through a PulseRecordWriter, which buffers them in large chunks.
+	 * Options may follow the input file, and any other arguments are ignored:
+	 * "--metrics-port <port>" serves the replay's metrics at
+	 * http://127.0.0.1:<port>/metrics while it runs, and "--delta" writes
+	 * each unchanged field as "-" (see DeltaOutputReader).
+	 * "--flight-recorder <file>" keeps the latest pulses in a FlightRecorder
+	 * ring in the file, and dumps them next to it if the throttle goes
+	 * negative or stops being a number. A recording already in the file is
+	 * kept as "<file>.prev".
+	 * "--batch output_directory input..." instead replays many trace files,
+	 * directories or globs at once with BatchReplay, exiting with status 1
+	 * if any of them fails, and "--serve [--bind address] [port]" runs the CCS live for sessions
+	 * connecting to a TelemetryServer, on 127.0.0.1 unless bound elsewhere.
 	 * @throws IOException 
 	 */
 	public static void main(String[] commandLineArgs) throws IOException {
+		if (commandLineArgs.length > 0 && commandLineArgs[0].equals("--batch")){
+			BatchReplay.main(Arrays.copyOfRange(commandLineArgs, 1, commandLineArgs.length));
+			return;
+		}
+		if (commandLineArgs.length > 0 && commandLineArgs[0].equals("--serve")){
+			try {
+				TelemetryServer.main(Arrays.copyOfRange(commandLineArgs, 1, commandLineArgs.length));
+			} catch (InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+			return;
+		}
 		Path input_path = Paths.get(commandLineArgs[0]);
-		List<InputState> input_states = StateInput.input_states_from_file(input_path);
 		Timer timer = new Timer(new CruiseControlSystem());
-		List<OutputState> output_states = timer.pulse_from_input(input_states);
-		for (OutputState s : output_states){
-			System.out.println(s.format());
+		PulseRecordWriter output = new PulseRecordWriter(Channels.newChannel(System.out));
+		MetricsServer metrics_server = null;
+		FlightRecorder flight_recorder = null;
+		for (int i = 1; i < commandLineArgs.length; i++){
+			if (commandLineArgs[i].equals("--metrics-port") && i + 1 < commandLineArgs.length){
+				PulseMetrics metrics = new PulseMetrics();
+				timer.set_metrics(metrics);
+				metrics_server = new MetricsServer(metrics, Integer.parseInt(commandLineArgs[++i]));
+			} else if (commandLineArgs[i].equals("--delta")){
+				output.set_delta_encoding(true);
+			} else if (commandLineArgs[i].equals("--flight-recorder") && i + 1 < commandLineArgs.length){
+				Path recording = Paths.get(commandLineArgs[++i]).toAbsolutePath();
+				flight_recorder = new FlightRecorder(recording);
+				flight_recorder.set_trigger(FlightRecorder.throttle_outside(0.0, Double.MAX_VALUE),
+											recording.getParent(), 16);
+				timer.set_flight_recorder(flight_recorder);
+			}
+		}
+		if (metrics_server != null){
+			metrics_server.start();
+		}
+		try (InputStateCursor input_states = commandLineArgs[0].equals("-")
+											 ? StateInput.cursor_from_stream(System.in)
+											 : StateInput.cursor_from_file(input_path)){
+			timer.record_from_input(input_states, output);
+		} finally {
+			output.flush();
+			System.out.flush();
+			if (metrics_server != null){
+				metrics_server.stop();
+			}
+			if (flight_recorder != null){
+				flight_recorder.close();
+			}
 		}
 	}
 }
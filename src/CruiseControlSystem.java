@@ -1,9 +1,11 @@
-public class CruiseControlSystem implements ICruiseControlSystem {
+public class CruiseControlSystem implements IRestorableCruiseControlSystem {
     private double last_throttle_value_during_cruising = 0.0;
     private boolean was_accelerating_by_pedal = false;
     private boolean is_ccs_already_on = false;
     private double recorded_throttle_value = 0.0;
     private boolean throttle_value_was_recorded = false;
+    // The CcsRule bits of the rules which fired during the latest pulse.
+    private int fired_rules = 0;
 
 
     /**
@@ -45,6 +47,7 @@ public class CruiseControlSystem implements ICruiseControlSystem {
                 && car.speed_sensor.get_speed() >= 40.0
                 && !car.brake_pedal.is_brake_on()){
                     startCCS(car);
+                    fired_rules |= CcsRule.START_CCS.bit();
             }else{
                 setButtonsToFalse(car);
                 car.throttle.setThrottlePosition(car.accelerator_pedal.get_accelerator());
@@ -59,6 +62,7 @@ public class CruiseControlSystem implements ICruiseControlSystem {
      */
     private void checkCCSStopButton(Car car){
         if (car.dashboard.get_stop_ccs()){
+            fired_rules |= CcsRule.STOP_CCS.bit();
             was_accelerating_by_pedal = false;
             last_throttle_value_during_cruising = car.throttle.getThrottlePosition();
             car.throttle.setThrottlePosition(car.accelerator_pedal.get_accelerator());
@@ -75,6 +79,7 @@ public class CruiseControlSystem implements ICruiseControlSystem {
     private void checkBrakePedalWhileCCSisOn(Car car){
         if (car.brake_pedal.is_brake_on()
             && is_ccs_already_on){
+                fired_rules |= CcsRule.BRAKE_DISENGAGE.bit();
                 car.throttle.setThrottlePosition(0.0);
                 setButtonsToFalse(car);
         }
@@ -89,6 +94,7 @@ public class CruiseControlSystem implements ICruiseControlSystem {
     private void checkEngineWhileCCSisOn(Car car){
         if (!car.engine_sensor.is_engine_on()
             && is_ccs_already_on ){
+                fired_rules |= CcsRule.ENGINE_OFF_DISENGAGE.bit();
                 setButtonsToFalse(car);
                 car.throttle.setThrottlePosition(0.0);
         }
@@ -107,6 +113,7 @@ public class CruiseControlSystem implements ICruiseControlSystem {
         if (car.accelerator_pedal.is_accelerator_on()
             && !car.dashboard.get_start_accelerating()
             && !was_accelerating_by_pedal){
+                fired_rules |= CcsRule.PEDAL_OVERRIDE.bit();
                 was_accelerating_by_pedal = true;
                 last_throttle_value_during_cruising = car.throttle.getThrottlePosition();
                 car.throttle.setThrottlePosition(car.accelerator_pedal.get_accelerator());
@@ -123,6 +130,7 @@ public class CruiseControlSystem implements ICruiseControlSystem {
     private void checkStartAcceleratingButtonWhileAcceleratingByPedal(Car car){
         if (car.accelerator_pedal.is_accelerator_on()
             && car.dashboard.get_start_accelerating()){
+                fired_rules |= CcsRule.PEDAL_WITH_ACCELERATION_BUTTON.bit();
                 car.throttle.setThrottlePosition(Math.max(car.speed_sensor.get_speed() / 50.0, car.accelerator_pedal.get_accelerator()));
                 last_throttle_value_during_cruising = car.throttle.getThrottlePosition();
         }
@@ -138,6 +146,7 @@ public class CruiseControlSystem implements ICruiseControlSystem {
     private void setThrottleBackAfterAcceleratingByPedal(Car car){
         if (was_accelerating_by_pedal
             && !car.accelerator_pedal.is_accelerator_on()){
+                fired_rules |= CcsRule.PEDAL_RELEASED.bit();
                 car.throttle.setThrottlePosition(last_throttle_value_during_cruising);
         }
     }
@@ -151,6 +160,7 @@ public class CruiseControlSystem implements ICruiseControlSystem {
      */
     private void checkAccelerationByButton(Car car){
         if (car.dashboard.get_start_accelerating()){
+            fired_rules |= CcsRule.BUTTON_ACCELERATION.bit();
             car.throttle.setThrottlePosition((car.speed_sensor.get_speed() + 7.2) / 50.0 );
             recorded_throttle_value = car.throttle.getThrottlePosition();
             last_throttle_value_during_cruising = recorded_throttle_value;
@@ -166,6 +176,7 @@ public class CruiseControlSystem implements ICruiseControlSystem {
      */
     private void checkStopAccelerationByButton(Car car){
         if (car.dashboard.get_stop_accelerating()){
+            fired_rules |= CcsRule.STOP_ACCELERATION.bit();
             car.throttle.setThrottlePosition(recorded_throttle_value);
             car.dashboard.set_start_accelerating(false);
             car.dashboard.set_stop_accelerating(false);
@@ -184,9 +195,11 @@ public class CruiseControlSystem implements ICruiseControlSystem {
         if(!car.dashboard.get_start_ccs()){
             if (car.dashboard.get_resume()
                 && throttle_value_was_recorded){
+                    fired_rules |= CcsRule.RESUME.bit();
                     startCCS(car);
                     car.throttle.setThrottlePosition(recorded_throttle_value);
             } else if (car.dashboard.get_resume()){
+                fired_rules |= CcsRule.RESUME.bit();
                 startCCS(car);
             }
         }
@@ -201,6 +214,7 @@ public class CruiseControlSystem implements ICruiseControlSystem {
      * @param car   the class that manipulates the state of sensors on the car
      */
     public void pulse(Car car){
+        this.fired_rules = 0;
         this.checkCCSStartButton(car);
         this.checkCCSStopButton(car);
         this.checkBrakePedalWhileCCSisOn(car);
@@ -213,4 +227,27 @@ public class CruiseControlSystem implements ICruiseControlSystem {
         this.checkResumeCruising(car);
 
     }
+
+    /**
+     * Returns the CcsRule bits of the rules which fired during the latest pulse.
+     */
+    public int get_fired_rules(){
+        return this.fired_rules;
+    }
+
+    public void capture_state(CcsState state){
+        state.last_throttle_value_during_cruising = this.last_throttle_value_during_cruising;
+        state.was_accelerating_by_pedal = this.was_accelerating_by_pedal;
+        state.is_ccs_already_on = this.is_ccs_already_on;
+        state.recorded_throttle_value = this.recorded_throttle_value;
+        state.throttle_value_was_recorded = this.throttle_value_was_recorded;
+    }
+
+    public void restore_state(CcsState state){
+        this.last_throttle_value_during_cruising = state.last_throttle_value_during_cruising;
+        this.was_accelerating_by_pedal = state.was_accelerating_by_pedal;
+        this.is_ccs_already_on = state.is_ccs_already_on;
+        this.recorded_throttle_value = state.recorded_throttle_value;
+        this.throttle_value_was_recorded = state.throttle_value_was_recorded;
+    }
 }
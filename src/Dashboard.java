@@ -24,6 +24,24 @@ public class Dashboard {
 		this.resume_button = new_state.parseBoolean(new_state.resume_button, this.resume_button);
 	}
 	
+	public void update_state(PackedInputState new_state){
+		if (new_state.is_present(PackedInputState.START_CCS_BUTTON)){
+			this.start_ccs_button = new_state.start_ccs_button;
+		}
+		if (new_state.is_present(PackedInputState.STOP_CCS_BUTTON)){
+			this.stop_ccs_button = new_state.stop_ccs_button;
+		}
+		if (new_state.is_present(PackedInputState.START_ACCELERATION_BUTTON)){
+			this.start_accelerating_button = new_state.start_acceleration_button;
+		}
+		if (new_state.is_present(PackedInputState.STOP_ACCELERATION_BUTTON)){
+			this.stop_accelerating_button = new_state.stop_acceleration_button;
+		}
+		if (new_state.is_present(PackedInputState.RESUME_BUTTON)){
+			this.resume_button = new_state.resume_button;
+		}
+	}
+	
 	public boolean get_start_ccs(){
 		return this.start_ccs_button;
 	}
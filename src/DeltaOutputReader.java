@@ -0,0 +1,129 @@
+/**
+ * Reads output written by a PulseRecordWriter with delta encoding on, where
+ * a field which is unchanged since the previous line is written as "-",
+ * and reconstructs the full output lines, exactly as they would have been
+ * written without delta encoding. Full lines pass through unchanged, so
+ * the reader accepts either form.
+ *
+ * Usage: DeltaOutputReader delta_file [output_file]
+ */
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class DeltaOutputReader implements Closeable {
+	public static final int FIELD_COUNT = 10;
+
+	private final BufferedReader reader;
+	private final String[] fields = new String[FIELD_COUNT];
+	private final StringBuilder line = new StringBuilder();
+	private long line_number = 0;
+
+	public DeltaOutputReader(BufferedReader reader){
+		this.reader = reader;
+	}
+
+	public DeltaOutputReader(Path filename) throws IOException {
+		this(Files.newBufferedReader(filename, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Reads the next line and fills in its unchanged fields.
+	 * @return the full line, or null at the end of the output
+	 */
+	public String read_line() throws IOException {
+		String delta_line = this.reader.readLine();
+		if (delta_line == null){
+			return null;
+		}
+		this.line_number++;
+		int field = 0;
+		int start = 0;
+		while (field < FIELD_COUNT){
+			int end = delta_line.indexOf(' ', start);
+			if (end < 0){
+				end = delta_line.length();
+			}
+			if (end - start == 1 && delta_line.charAt(start) == '-'){
+				if (this.fields[field] == null){
+					throw new IOException("line " + this.line_number + ": field " + (field + 1)
+										  + " is unchanged but has no previous value");
+				}
+			} else {
+				this.fields[field] = delta_line.substring(start, end);
+			}
+			field++;
+			if (end == delta_line.length()){
+				break;
+			}
+			start = end + 1;
+		}
+		if (field < FIELD_COUNT){
+			throw new IOException("line " + this.line_number + " has " + field + " fields rather than " + FIELD_COUNT);
+		}
+		this.line.setLength(0);
+		for (int i = 0; i < FIELD_COUNT; i++){
+			if (i > 0){
+				this.line.append(' ');
+			}
+			this.line.append(this.fields[i]);
+		}
+		return this.line.toString();
+	}
+
+	/**
+	 * The full output state of the next line, or null at the end.
+	 */
+	public OutputState read_state() throws IOException {
+		String full_line = this.read_line();
+		if (full_line == null){
+			return null;
+		}
+		return new OutputState(full_line.substring(0, full_line.lastIndexOf(' ')),
+							   Double.parseDouble(this.fields[FIELD_COUNT - 1]));
+	}
+
+	/**
+	 * Expands a delta encoded output file into full lines.
+	 * @return the number of lines written
+	 */
+	public static long expand(Path delta_path, Writer output) throws IOException {
+		long lines = 0;
+		try (DeltaOutputReader reader = new DeltaOutputReader(delta_path)){
+			String full_line;
+			while ((full_line = reader.read_line()) != null){
+				output.write(full_line);
+				output.write(System.lineSeparator());
+				lines++;
+			}
+		}
+		output.flush();
+		return lines;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.reader.close();
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1){
+			System.err.println("usage: DeltaOutputReader delta_file [output_file]");
+			System.exit(2);
+		}
+		if (args.length >= 2){
+			try (Writer output = Files.newBufferedWriter(Paths.get(args[1]))){
+				expand(Paths.get(args[0]), output);
+			}
+		} else {
+			expand(Paths.get(args[0]), new BufferedWriter(new OutputStreamWriter(System.out)));
+		}
+	}
+}
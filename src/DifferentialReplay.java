@@ -0,0 +1,310 @@
+/**
+ * Checks that two ICruiseControlSystem implementations behave identically.
+ * Both are replayed in lockstep over the same input states, each with its
+ * own Car. After every pulse the recorded states of the two cars (the
+ * sensors, the dashboard buttons and the throttle) are compared bit for
+ * bit. The replay stops at the first divergence and reports it along with
+ * the few pulses before it.
+ *
+ * Many traces are checked at once. Each trace runs as its own fork/join
+ * task, as in FleetReplay. A trace is given as a factory of cursors, so
+ * generated scenarios can be checked without ever being written to disk.
+ *
+ * Usage: DifferentialReplay trace_file...
+ * compares CruiseControlSystem against StateMachineCruiseControlSystem.
+ */
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+
+public class DifferentialReplay {
+	public static final int DEFAULT_CONTEXT = 8;
+
+	private static final String[] FIELD_NAMES = {
+		"engine_status", "speed_sensor", "brake_pedal", "accelerator_pedal", "start_ccs_button",
+		"stop_ccs_button", "start_acceleration_button", "stop_acceleration_button", "resume_button",
+		"throttle_position"
+	};
+
+	/**
+	 * The first pulse at which the two implementations disagreed, with the
+	 * pulses leading up to it, oldest first and ending with the divergence.
+	 */
+	public static class Divergence {
+		public final long pulse;
+		public final PackedInputState[] inputs;
+		public final PulseRecord[] baseline_records;
+		public final PulseRecord[] candidate_records;
+		public final int baseline_fired_rules;
+		public final int candidate_fired_rules;
+
+		Divergence(long pulse, PackedInputState[] inputs, PulseRecord[] baseline_records,
+				   PulseRecord[] candidate_records, int baseline_fired_rules, int candidate_fired_rules){
+			this.pulse = pulse;
+			this.inputs = inputs;
+			this.baseline_records = baseline_records;
+			this.candidate_records = candidate_records;
+			this.baseline_fired_rules = baseline_fired_rules;
+			this.candidate_fired_rules = candidate_fired_rules;
+		}
+
+		/**
+		 * The names of the fields which differ at the divergence.
+		 */
+		public List<String> differing_fields(){
+			PulseRecord a = this.baseline_records[this.baseline_records.length - 1];
+			PulseRecord b = this.candidate_records[this.candidate_records.length - 1];
+			double[] a_values = values(a);
+			double[] b_values = values(b);
+			List<String> fields = new ArrayList<String>();
+			for (int i = 0; i < FIELD_NAMES.length; i++){
+				if (Double.doubleToRawLongBits(a_values[i]) != Double.doubleToRawLongBits(b_values[i])){
+					fields.add(FIELD_NAMES[i]);
+				}
+			}
+			return fields;
+		}
+
+		private static double[] values(PulseRecord record){
+			return new double[] {
+				record.engine_status ? 1 : 0, record.speed_sensor, record.brake_pedal,
+				record.accelerator_pedal, record.start_ccs_button ? 1 : 0, record.stop_ccs_button ? 1 : 0,
+				record.start_acceleration_button ? 1 : 0, record.stop_acceleration_button ? 1 : 0,
+				record.resume_button ? 1 : 0, record.throttle_position
+			};
+		}
+
+		public String format(){
+			StringBuilder text = new StringBuilder();
+			text.append("diverged at pulse ").append(this.pulse).append(" in ")
+				.append(String.join(", ", this.differing_fields()))
+				.append(" (rules fired: ").append(format_rules(this.baseline_fired_rules))
+				.append(" vs ").append(format_rules(this.candidate_fired_rules)).append(")\n");
+			long first = this.pulse - this.inputs.length + 1;
+			for (int i = 0; i < this.inputs.length; i++){
+				text.append(String.format("%10d input     %s%n", first + i, this.inputs[i].format()))
+					.append(String.format("%10s baseline  %s%n", "", this.baseline_records[i].format()))
+					.append(String.format("%10s candidate %s%n", "", this.candidate_records[i].format()));
+			}
+			return text.toString();
+		}
+
+		private static String format_rules(int fired_rules){
+			List<String> labels = new ArrayList<String>();
+			for (CcsRule rule : CcsRule.values()){
+				if ((fired_rules & rule.bit()) != 0){
+					labels.add(rule.label());
+				}
+			}
+			return labels.isEmpty() ? "none" : String.join(" ", labels);
+		}
+	}
+
+	public static class Comparison {
+		public final String name;
+		private final Callable<? extends InputStateCursor> trace;
+
+		// Written by the comparing task, and read once the run has completed.
+		private long pulses = 0;
+		private Divergence divergence = null;
+		private Exception failure = null;
+
+		Comparison(String name, Callable<? extends InputStateCursor> trace){
+			this.name = name;
+			this.trace = trace;
+		}
+
+		public long get_pulses(){
+			return this.pulses;
+		}
+		/**
+		 * The first divergence, or null if the implementations agreed throughout.
+		 */
+		public Divergence get_divergence(){
+			return this.divergence;
+		}
+		public Exception get_failure(){
+			return this.failure;
+		}
+	}
+
+	private final ForkJoinPool pool;
+	private final Supplier<? extends ICruiseControlSystem> baseline;
+	private final Supplier<? extends ICruiseControlSystem> candidate;
+	private final int context;
+	private final List<Comparison> comparisons = new ArrayList<Comparison>();
+	private long elapsed_nanos = 0;
+
+	public DifferentialReplay(Supplier<? extends ICruiseControlSystem> baseline,
+							  Supplier<? extends ICruiseControlSystem> candidate){
+		this(ForkJoinPool.commonPool(), baseline, candidate, DEFAULT_CONTEXT);
+	}
+
+	/**
+	 * @param context how many pulses to report, the divergence included
+	 */
+	public DifferentialReplay(ForkJoinPool pool, Supplier<? extends ICruiseControlSystem> baseline,
+							  Supplier<? extends ICruiseControlSystem> candidate, int context){
+		this.pool = pool;
+		this.baseline = baseline;
+		this.candidate = candidate;
+		this.context = Math.max(1, context);
+	}
+
+	public Comparison add_trace(String name, Callable<? extends InputStateCursor> trace){
+		Comparison comparison = new Comparison(name, trace);
+		this.comparisons.add(comparison);
+		return comparison;
+	}
+
+	public Comparison add_trace(Path trace){
+		return this.add_trace(trace.toString(), () -> StateInput.cursor_from_file(trace));
+	}
+
+	public List<Comparison> get_comparisons(){
+		return this.comparisons;
+	}
+
+	/**
+	 * Replays the two implementations over one trace until they diverge.
+	 * @return the divergence, or null if there was none
+	 */
+	public Divergence compare(InputStateCursor input_states) throws IOException {
+		return this.compare(input_states, null);
+	}
+
+	private Divergence compare(InputStateCursor input_states, Comparison comparison) throws IOException {
+		ICruiseControlSystem baseline_ccs = this.baseline.get();
+		ICruiseControlSystem candidate_ccs = this.candidate.get();
+		Car baseline_car = new Car();
+		Car candidate_car = new Car();
+		// The last `context` pulses, kept in rings indexed by pulse number.
+		PackedInputState[] inputs = new PackedInputState[this.context];
+		PulseRecord[] baseline_records = new PulseRecord[this.context];
+		PulseRecord[] candidate_records = new PulseRecord[this.context];
+		for (int i = 0; i < this.context; i++){
+			inputs[i] = new PackedInputState();
+			baseline_records[i] = new PulseRecord();
+			candidate_records[i] = new PulseRecord();
+		}
+
+		long pulse = 0;
+		try {
+			while (true){
+				int slot = (int) (pulse % this.context);
+				if (!input_states.next(inputs[slot])){
+					return null;
+				}
+				pulse++;
+				baseline_car.update_states(inputs[slot]);
+				baseline_ccs.pulse(baseline_car);
+				baseline_car.record_state(baseline_records[slot]);
+				candidate_car.update_states(inputs[slot]);
+				candidate_ccs.pulse(candidate_car);
+				candidate_car.record_state(candidate_records[slot]);
+				if (!baseline_records[slot].same_as(candidate_records[slot])){
+					int length = (int) Math.min(pulse, this.context);
+					Divergence divergence = new Divergence(pulse, new PackedInputState[length],
+														   new PulseRecord[length], new PulseRecord[length],
+														   baseline_ccs.get_fired_rules(),
+														   candidate_ccs.get_fired_rules());
+					for (int i = 0; i < length; i++){
+						int ring = (int) ((pulse - length + i) % this.context);
+						divergence.inputs[i] = inputs[ring];
+						divergence.baseline_records[i] = baseline_records[ring];
+						divergence.candidate_records[i] = candidate_records[ring];
+					}
+					return divergence;
+				}
+			}
+		} finally {
+			if (comparison != null){
+				comparison.pulses = pulse;
+			}
+		}
+	}
+
+	private void run_comparison(Comparison comparison){
+		try (InputStateCursor input_states = comparison.trace.call()){
+			comparison.divergence = this.compare(input_states, comparison);
+		} catch (Exception e){
+			comparison.failure = e;
+		}
+	}
+
+	/**
+	 * Compares the implementations over every trace added so far, returning
+	 * once all have finished.
+	 */
+	public void run(){
+		long start = System.nanoTime();
+		List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(this.comparisons.size());
+		for (Comparison comparison : this.comparisons){
+			tasks.add(this.pool.submit(() -> this.run_comparison(comparison)));
+		}
+		for (ForkJoinTask<?> task : tasks){
+			task.join();
+		}
+		this.elapsed_nanos = System.nanoTime() - start;
+	}
+
+	public long total_pulses(){
+		long pulses = 0;
+		for (Comparison comparison : this.comparisons){
+			pulses += comparison.pulses;
+		}
+		return pulses;
+	}
+
+	public long divergences(){
+		long divergences = 0;
+		for (Comparison comparison : this.comparisons){
+			if (comparison.divergence != null){
+				divergences++;
+			}
+		}
+		return divergences;
+	}
+
+	public long failures(){
+		long failures = 0;
+		for (Comparison comparison : this.comparisons){
+			if (comparison.failure != null){
+				failures++;
+			}
+		}
+		return failures;
+	}
+
+	public double pulses_per_second(){
+		return this.elapsed_nanos == 0 ? 0.0 : this.total_pulses() * 1e9 / this.elapsed_nanos;
+	}
+
+	public static void main(String[] args){
+		DifferentialReplay replay = new DifferentialReplay(CruiseControlSystem::new,
+														   StateMachineCruiseControlSystem::new);
+		for (String arg : args){
+			replay.add_trace(Paths.get(arg));
+		}
+		replay.run();
+		for (Comparison comparison : replay.get_comparisons()){
+			if (comparison.failure != null){
+				System.out.println(comparison.name + ": failed: " + comparison.failure);
+			} else if (comparison.divergence != null){
+				System.out.print(comparison.name + ": " + comparison.divergence.format());
+			}
+		}
+		System.out.println(String.format("%d traces, %d pulses, %d divergences, %d failures, %.0f pulses/s",
+										 replay.get_comparisons().size(), replay.total_pulses(),
+										 replay.divergences(), replay.failures(), replay.pulses_per_second()));
+		if (replay.divergences() > 0 || replay.failures() > 0){
+			System.exit(1);
+		}
+	}
+}
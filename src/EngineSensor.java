@@ -8,6 +8,11 @@ public class EngineSensor {
 	public void update_state(InputState new_state){
 		this.engine_on = new_state.parseBoolean(new_state.engine_status, this.engine_on);
 	}
+	public void update_state(PackedInputState new_state){
+		if (new_state.is_present(PackedInputState.ENGINE_STATUS)){
+			this.engine_on = new_state.engine_status;
+		}
+	}
 	public boolean is_engine_on(){
 		return this.engine_on;
 	}
@@ -0,0 +1,91 @@
+/**
+ * Replays a trace as Timer.record_from_input does, but without pulsing
+ * through runs of repeated input once the system has settled. A pulse is a
+ * deterministic function of the input state, the state of the car and the
+ * state of the CCS. So once a pulse with the same input as the previous one
+ * leaves the car (as recorded in a PulseRecord) and the CCS exactly as they
+ * were, every further repetition of that input would do the same, and the
+ * replay only has to count them. Such runs are handed to the sink through
+ * PulseSink.accept_run, so a sink which understands runs never sees the
+ * repeated pulses at all.
+ */
+import java.io.IOException;
+
+public class FastForwardReplay {
+	private final Car car = new Car();
+	private final IRestorableCruiseControlSystem ccs;
+
+	private long pulses_run = 0;
+	private long pulses_skipped = 0;
+
+	public FastForwardReplay(IRestorableCruiseControlSystem ccs){
+		this.ccs = ccs;
+	}
+
+	/**
+	 * Replays every state of the cursor into the sink.
+	 * @return the number of input states replayed, skipped ones included
+	 */
+	public long record_from_input(InputStateCursor input_states, PulseSink sink) throws IOException {
+		PackedInputState state = new PackedInputState();
+		PackedInputState previous_state = new PackedInputState();
+		PulseRecord record = new PulseRecord();
+		PulseRecord previous_record = new PulseRecord();
+		CcsState ccs_state = new CcsState();
+		CcsState previous_ccs_state = new CcsState();
+		boolean has_previous = false;
+		boolean settled = false;
+		long run = 0;
+		long pulses = 0;
+
+		while (input_states.next(state)){
+			pulses++;
+			boolean repeated = has_previous && state.same_as(previous_state);
+			if (repeated && settled){
+				long skipped = input_states.skip_repeats();
+				run += 1 + skipped;
+				pulses += skipped;
+				continue;
+			}
+			if (run > 0){
+				sink.accept_run(record, run);
+				this.pulses_skipped += run;
+				run = 0;
+			}
+			previous_record.copy_from(record);
+			previous_ccs_state.copy_from(ccs_state);
+
+			this.car.update_states(state);
+			this.ccs.pulse(this.car);
+			this.car.record_state(record);
+			this.ccs.capture_state(ccs_state);
+			this.pulses_run++;
+			sink.accept(record);
+
+			settled = repeated && record.same_as(previous_record) && ccs_state.same_as(previous_ccs_state);
+			if (!repeated){
+				previous_state.copy_from(state);
+				has_previous = true;
+			}
+		}
+		if (run > 0){
+			sink.accept_run(record, run);
+			this.pulses_skipped += run;
+		}
+		return pulses;
+	}
+
+	/**
+	 * The number of pulses actually run through the CCS so far.
+	 */
+	public long get_pulses_run(){
+		return this.pulses_run;
+	}
+
+	/**
+	 * The number of pulses so far which were fast-forwarded over.
+	 */
+	public long get_pulses_skipped(){
+		return this.pulses_skipped;
+	}
+}
@@ -0,0 +1,151 @@
+/**
+ * Replays the traces of a whole fleet of vehicles concurrently. Each vehicle
+ * pairs a trace with its own ICruiseControlSystem instance; its replay runs
+ * as a single fork/join task, so a vehicle's Car and CCS are only ever used
+ * by one thread while idle workers steal the remaining vehicles. After a run
+ * each vehicle reports its pulse count, time and any failure, and the fleet
+ * reports the aggregate throughput. A vehicle's outputs go to a sink of
+ * the caller's type; by default only the latest one is kept.
+ */
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+public class FleetReplay {
+	public static class Vehicle<S extends PulseSink> {
+		public final String name;
+		public final Path trace;
+		public final ICruiseControlSystem ccs;
+		public final S sink;
+
+		// Written by the replaying task, and read once the run has completed.
+		private long pulses = 0;
+		private long elapsed_nanos = 0;
+		private Exception failure = null;
+
+		Vehicle(String name, Path trace, ICruiseControlSystem ccs, S sink){
+			this.name = name;
+			this.trace = trace;
+			this.ccs = ccs;
+			this.sink = sink;
+		}
+
+		public long get_pulses(){
+			return this.pulses;
+		}
+		public long get_elapsed_nanos(){
+			return this.elapsed_nanos;
+		}
+		public Exception get_failure(){
+			return this.failure;
+		}
+	}
+
+	private final ForkJoinPool pool;
+	private final List<Vehicle<?>> vehicles = new ArrayList<Vehicle<?>>();
+	private long elapsed_nanos = 0;
+
+	public FleetReplay(){
+		this(ForkJoinPool.commonPool());
+	}
+
+	public FleetReplay(ForkJoinPool pool){
+		this.pool = pool;
+	}
+
+	public <S extends PulseSink> Vehicle<S> add_vehicle(String name, Path trace, ICruiseControlSystem ccs, S sink){
+		Vehicle<S> vehicle = new Vehicle<S>(name, trace, ccs, sink);
+		this.vehicles.add(vehicle);
+		return vehicle;
+	}
+
+	/**
+	 * Adds a vehicle which only keeps its latest output; pass a
+	 * PulseRecordBuffer to `add_vehicle` to keep them all.
+	 */
+	public Vehicle<LastPulseRecord> add_vehicle(String name, Path trace, ICruiseControlSystem ccs){
+		return this.add_vehicle(name, trace, ccs, new LastPulseRecord());
+	}
+
+	public List<Vehicle<?>> get_vehicles(){
+		return this.vehicles;
+	}
+
+	private static void replay(Vehicle<?> vehicle){
+		long start = System.nanoTime();
+		try (InputStateCursor input_states = StateInput.cursor_from_file(vehicle.trace)){
+			Timer timer = new Timer(vehicle.ccs);
+			vehicle.pulses = timer.record_from_input(input_states, vehicle.sink);
+		} catch (IOException | RuntimeException e){
+			vehicle.failure = e;
+		}
+		vehicle.elapsed_nanos = System.nanoTime() - start;
+	}
+
+	/**
+	 * Replays every vehicle added so far, returning once all have finished.
+	 */
+	public void run(){
+		long start = System.nanoTime();
+		List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(this.vehicles.size());
+		for (Vehicle<?> vehicle : this.vehicles){
+			tasks.add(this.pool.submit(() -> replay(vehicle)));
+		}
+		for (ForkJoinTask<?> task : tasks){
+			task.join();
+		}
+		this.elapsed_nanos = System.nanoTime() - start;
+	}
+
+	public long total_pulses(){
+		long pulses = 0;
+		for (Vehicle<?> vehicle : this.vehicles){
+			pulses += vehicle.pulses;
+		}
+		return pulses;
+	}
+
+	public long failures(){
+		long failures = 0;
+		for (Vehicle<?> vehicle : this.vehicles){
+			if (vehicle.failure != null){
+				failures++;
+			}
+		}
+		return failures;
+	}
+
+	public double pulses_per_second(){
+		return this.elapsed_nanos == 0 ? 0.0 : this.total_pulses() * 1e9 / this.elapsed_nanos;
+	}
+
+	/**
+	 * Replays each trace given on the command line as a separate vehicle and
+	 * prints each vehicle's final throttle position and the fleet throughput.
+	 */
+	public static void main(String[] args){
+		FleetReplay fleet = new FleetReplay();
+		List<Vehicle<LastPulseRecord>> vehicles = new ArrayList<Vehicle<LastPulseRecord>>();
+		for (String arg : args){
+			vehicles.add(fleet.add_vehicle(arg, Paths.get(arg), new CruiseControlSystem()));
+		}
+		fleet.run();
+		for (Vehicle<LastPulseRecord> vehicle : vehicles){
+			if (vehicle.failure != null){
+				System.out.println(vehicle.name + ": failed: " + vehicle.failure);
+			} else if (vehicle.sink.has_record()){
+				System.out.println(vehicle.name + ": " + vehicle.pulses + " pulses, final state "
+								   + vehicle.sink.get_record().format());
+			} else {
+				System.out.println(vehicle.name + ": 0 pulses");
+			}
+		}
+		System.out.println(String.format("%d vehicles, %d pulses, %d failures, %.0f pulses/s",
+										 fleet.get_vehicles().size(), fleet.total_pulses(),
+										 fleet.failures(), fleet.pulses_per_second()));
+	}
+}
@@ -0,0 +1,491 @@
+/**
+ * Keeps the last few thousand pulses of a replay or a live session in a
+ * memory-mapped ring of fixed-size binary records, so that when something
+ * goes wrong there is a trace to replay. Each record holds the input state
+ * as received, the state of the car as the CCS saw it, the CCS's internal
+ * state before the pulse (when it is an IRestorableCruiseControlSystem),
+ * the rules which fired and the recorded output.
+ *
+ * Recording writes straight into the mapping, without allocating or
+ * locking; a recorder belongs to the one thread running its pulses. The
+ * mapped pages belong to the operating system, so the ring survives the
+ * JVM crashing. Each record is framed by its sequence number at both ends,
+ * the end written first and the start last, so a reader copying records
+ * while they are written can tell a torn record from a complete one.
+ *
+ * `dump` copies the complete records, oldest first, into a file of the
+ * same format, and may be called from any thread. A Trigger can also ask
+ * for a dump when it spots an anomaly, which then happens on the recording
+ * thread once `post_trigger_pulses` more pulses have been recorded.
+ *
+ * Usage: FlightRecorder to-trace recording trace_file
+ *        FlightRecorder verify recording
+ * `to-trace` writes the recorded inputs as a text trace CommandLine can
+ * replay. Its first line sets every field to what the car held at the
+ * first recorded pulse. `verify` replays the recording with the
+ * CruiseControlSystem restored to its recorded state and checks that it
+ * gives the recorded outputs.
+ */
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+public class FlightRecorder implements Closeable {
+	public static final int MAGIC = 0x52464343; // "CCFR"
+	public static final int VERSION = 1;
+	public static final int HEADER_BYTES = 64;
+	public static final int RECORD_BYTES = 128;
+	public static final int DEFAULT_CAPACITY = 1 << 16;
+
+	// The header: MAGIC, VERSION, RECORD_BYTES, the capacity in records and
+	// the number of records written so far.
+	private static final int HEAD_OFFSET = 16;
+
+	// The fields of a record. Sequence numbers are stored plus one, so that
+	// a slot which was never written is not mistaken for record zero.
+	private static final int BEGIN = 0;
+	private static final int NANOS = 8;
+	private static final int INPUT_PRESENT = 16;
+	private static final int INPUT_BOOLEANS = 18;
+	private static final int FIRED_RULES = 20;
+	private static final int INPUT_SPEED = 24;
+	private static final int INPUT_BRAKE = 32;
+	private static final int INPUT_ACCELERATOR = 40;
+	private static final int CAR_BOOLEANS = 48;
+	private static final int CCS_FLAGS = 50;
+	private static final int CAR_SPEED = 56;
+	private static final int CAR_BRAKE = 64;
+	private static final int CAR_ACCELERATOR = 72;
+	private static final int CCS_LAST_THROTTLE = 80;
+	private static final int CCS_RECORDED_THROTTLE = 88;
+	private static final int OUTPUT_BOOLEANS = 96;
+	private static final int OUTPUT_THROTTLE = 104;
+	private static final int END = 120;
+
+	private static final int HAS_CCS_STATE = 1;
+	private static final int WAS_ACCELERATING_BY_PEDAL = 2;
+	private static final int IS_CCS_ALREADY_ON = 4;
+	private static final int THROTTLE_VALUE_WAS_RECORDED = 8;
+
+	private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+	/**
+	 * Decides, after each pulse, whether the recording should be dumped.
+	 */
+	public interface Trigger {
+		public boolean is_anomaly(PackedInputState input, PulseRecord output, int fired_rules);
+	}
+
+	/**
+	 * A trigger for throttle positions outside [min, max], or not a number.
+	 */
+	public static Trigger throttle_outside(double min, double max){
+		return (input, output, fired_rules) -> !(output.throttle_position >= min && output.throttle_position <= max);
+	}
+
+	private final FileChannel channel;
+	private final MappedByteBuffer buffer;
+	private final int capacity;
+	private final CcsState ccs_state = new CcsState();
+	private long head;
+	private int slot_offset;
+	private PackedInputState input;
+
+	private Trigger trigger = null;
+	private Path dump_directory = null;
+	private long post_trigger_pulses = 0;
+	// Pulses left until a triggered dump, or -1 if none is pending.
+	private long dump_countdown = -1;
+	private Path last_dump = null;
+	private IOException dump_failure = null;
+
+	public FlightRecorder(Path filename) throws IOException {
+		this(filename, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a ring of `capacity` records in the file. If the file already
+	 * holds a recording of any pulses, such as the ring of a run which
+	 * crashed, that is first moved to `previous(filename)`, replacing any
+	 * older one there. A file which is not a recording is never overwritten.
+	 */
+	public FlightRecorder(Path filename, int capacity) throws IOException {
+		if (capacity <= 0){
+			throw new IllegalArgumentException("capacity must be positive: " + capacity);
+		}
+		rotate(filename);
+		this.capacity = capacity;
+		this.channel = FileChannel.open(filename, StandardOpenOption.READ, StandardOpenOption.WRITE,
+										StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		long size = HEADER_BYTES + (long) capacity * RECORD_BYTES;
+		this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+		write_header(this.buffer, capacity, 0);
+	}
+
+	/**
+	 * Where the constructor keeps the recording it finds in `filename`.
+	 */
+	public static Path previous(Path filename){
+		return filename.resolveSibling(filename.getFileName() + ".prev");
+	}
+
+	private static void rotate(Path filename) throws IOException {
+		if (!Files.exists(filename) || Files.size(filename) == 0){
+			return;
+		}
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		try (FileChannel channel = FileChannel.open(filename, StandardOpenOption.READ)){
+			while (header.hasRemaining() && channel.read(header) >= 0){
+			}
+		}
+		if (header.hasRemaining() || header.getInt(0) != MAGIC){
+			throw new IOException(filename + " exists and is not a flight recording");
+		}
+		if (header.getLong(HEAD_OFFSET) > 0){
+			Files.move(filename, previous(filename), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static void write_header(ByteBuffer buffer, int capacity, long head){
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, VERSION);
+		buffer.putInt(8, RECORD_BYTES);
+		buffer.putInt(12, capacity);
+		buffer.putLong(HEAD_OFFSET, head);
+	}
+
+	/**
+	 * Dumps the recording into `directory` when `trigger` reports an anomaly,
+	 * once `post_trigger_pulses` more pulses have been recorded; a null
+	 * trigger turns this off again.
+	 */
+	public void set_trigger(Trigger trigger, Path directory, long post_trigger_pulses){
+		this.trigger = trigger;
+		this.dump_directory = directory;
+		this.post_trigger_pulses = Math.max(0, post_trigger_pulses);
+		this.dump_countdown = -1;
+	}
+
+	public int get_capacity(){
+		return this.capacity;
+	}
+
+	/**
+	 * The number of pulses recorded so far.
+	 */
+	public long get_head(){
+		return this.head;
+	}
+
+	/**
+	 * The file of the latest triggered dump, or null if there has been none.
+	 */
+	public Path get_last_dump(){
+		return this.last_dump;
+	}
+
+	private static int booleans(boolean engine_status, boolean start_ccs_button, boolean stop_ccs_button,
+								boolean start_acceleration_button, boolean stop_acceleration_button,
+								boolean resume_button){
+		return (engine_status ? PackedInputState.ENGINE_STATUS : 0)
+			| (start_ccs_button ? PackedInputState.START_CCS_BUTTON : 0)
+			| (stop_ccs_button ? PackedInputState.STOP_CCS_BUTTON : 0)
+			| (start_acceleration_button ? PackedInputState.START_ACCELERATION_BUTTON : 0)
+			| (stop_acceleration_button ? PackedInputState.STOP_ACCELERATION_BUTTON : 0)
+			| (resume_button ? PackedInputState.RESUME_BUTTON : 0);
+	}
+
+	/**
+	 * Starts the record of a pulse, once `car` has been updated from `input`
+	 * and before the CCS runs.
+	 */
+	public void begin_pulse(PackedInputState input, Car car, ICruiseControlSystem ccs){
+		ByteBuffer buffer = this.buffer;
+		int offset = HEADER_BYTES + (int) (this.head % this.capacity) * RECORD_BYTES;
+		this.slot_offset = offset;
+		this.input = input;
+		// Mark the record as being rewritten before touching anything else.
+		LONGS.set(buffer, offset + END, this.head + 1);
+		VarHandle.storeStoreFence();
+		buffer.putLong(offset + NANOS, System.nanoTime());
+		buffer.putShort(offset + INPUT_PRESENT, (short) input.present);
+		buffer.putShort(offset + INPUT_BOOLEANS, (short) booleans(
+			input.engine_status, input.start_ccs_button, input.stop_ccs_button,
+			input.start_acceleration_button, input.stop_acceleration_button, input.resume_button));
+		buffer.putDouble(offset + INPUT_SPEED, input.speed_sensor);
+		buffer.putDouble(offset + INPUT_BRAKE, input.brake_pedal);
+		buffer.putDouble(offset + INPUT_ACCELERATOR, input.accelerator_pedal);
+		buffer.putShort(offset + CAR_BOOLEANS, (short) booleans(
+			car.engine_sensor.is_engine_on(), car.dashboard.get_start_ccs(), car.dashboard.get_stop_ccs(),
+			car.dashboard.get_start_accelerating(), car.dashboard.get_stop_accelerating(),
+			car.dashboard.get_resume()));
+		buffer.putDouble(offset + CAR_SPEED, car.speed_sensor.get_speed());
+		buffer.putDouble(offset + CAR_BRAKE, car.brake_pedal.get_brake());
+		buffer.putDouble(offset + CAR_ACCELERATOR, car.accelerator_pedal.get_accelerator());
+		int flags = 0;
+		if (ccs instanceof IRestorableCruiseControlSystem){
+			CcsState state = this.ccs_state;
+			((IRestorableCruiseControlSystem) ccs).capture_state(state);
+			flags = HAS_CCS_STATE
+				| (state.was_accelerating_by_pedal ? WAS_ACCELERATING_BY_PEDAL : 0)
+				| (state.is_ccs_already_on ? IS_CCS_ALREADY_ON : 0)
+				| (state.throttle_value_was_recorded ? THROTTLE_VALUE_WAS_RECORDED : 0);
+			buffer.putDouble(offset + CCS_LAST_THROTTLE, state.last_throttle_value_during_cruising);
+			buffer.putDouble(offset + CCS_RECORDED_THROTTLE, state.recorded_throttle_value);
+		}
+		buffer.put(offset + CCS_FLAGS, (byte) flags);
+	}
+
+	/**
+	 * Completes the record of the pulse with its output.
+	 */
+	public void end_pulse(PulseRecord output, int fired_rules){
+		ByteBuffer buffer = this.buffer;
+		int offset = this.slot_offset;
+		buffer.putInt(offset + FIRED_RULES, fired_rules);
+		buffer.putShort(offset + OUTPUT_BOOLEANS, (short) booleans(
+			output.engine_status, output.start_ccs_button, output.stop_ccs_button,
+			output.start_acceleration_button, output.stop_acceleration_button, output.resume_button));
+		buffer.putDouble(offset + OUTPUT_THROTTLE, output.throttle_position);
+		// The start goes last, so the record is only whole once both ends match.
+		LONGS.setRelease(buffer, offset + BEGIN, this.head + 1);
+		this.head++;
+		LONGS.setRelease(buffer, HEAD_OFFSET, this.head);
+
+		if (this.dump_countdown > 0){
+			this.dump_countdown--;
+		} else if (this.trigger != null && this.dump_countdown < 0){
+			if (this.trigger.is_anomaly(this.input, output, fired_rules)){
+				this.dump_countdown = this.post_trigger_pulses;
+			}
+		}
+		if (this.dump_countdown == 0){
+			this.dump_countdown = -1;
+			Path dump = this.dump_directory.resolve("flight-" + this.head + ".ccfr");
+			try {
+				Files.createDirectories(this.dump_directory);
+				this.dump(dump);
+				this.last_dump = dump;
+			} catch (IOException e){
+				// The pulses must go on; the failure is kept for the caller.
+				this.dump_failure = e;
+			}
+		}
+	}
+
+	/**
+	 * Why the latest triggered dump failed, or null if none has.
+	 */
+	public IOException get_dump_failure(){
+		return this.dump_failure;
+	}
+
+	/**
+	 * Writes the complete records, oldest first, to a file in the ring's
+	 * format, which `read` and the tools below accept.
+	 * @return the number of records written
+	 */
+	public int dump(Path filename) throws IOException {
+		long head = (long) LONGS.getAcquire(this.buffer, HEAD_OFFSET);
+		long first = Math.max(0, head - this.capacity);
+		ByteBuffer records = ByteBuffer.allocate((int) (head - first) * RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		byte[] record = new byte[RECORD_BYTES];
+		for (long sequence = first; sequence < head; sequence++){
+			int offset = HEADER_BYTES + (int) (sequence % this.capacity) * RECORD_BYTES;
+			long begin = (long) LONGS.getAcquire(this.buffer, offset + BEGIN);
+			this.buffer.get(offset, record);
+			VarHandle.loadLoadFence();
+			long end = (long) LONGS.get(this.buffer, offset + END);
+			if (begin == sequence + 1 && end == begin){
+				records.put(record);
+				// The copy of either end may have been read mid-write; use the checked value.
+				records.putLong(records.position() - RECORD_BYTES + BEGIN, begin);
+				records.putLong(records.position() - RECORD_BYTES + END, begin);
+			}
+		}
+		int count = records.position() / RECORD_BYTES;
+		records.flip();
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+		write_header(header, Math.max(1, count), head);
+		try (FileChannel out = FileChannel.open(filename, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+												StandardOpenOption.TRUNCATE_EXISTING)){
+			while (header.hasRemaining()){
+				out.write(header);
+			}
+			while (records.hasRemaining()){
+				out.write(records);
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.buffer.force();
+		this.channel.close();
+	}
+
+	/**
+	 * One recorded pulse.
+	 */
+	public static class Entry {
+		public long sequence;
+		public long nanos;
+		// The input state as received.
+		public final PackedInputState input = new PackedInputState();
+		// Every field of the car as the CCS saw it, after the update.
+		public final PackedInputState car = new PackedInputState();
+		// The CCS's state before the pulse, if it could be captured.
+		public boolean has_ccs_state;
+		public final CcsState ccs_state = new CcsState();
+		public int fired_rules;
+		public final PulseRecord output = new PulseRecord();
+	}
+
+	private static void set_booleans(PackedInputState state, int booleans){
+		state.engine_status = (booleans & PackedInputState.ENGINE_STATUS) != 0;
+		state.start_ccs_button = (booleans & PackedInputState.START_CCS_BUTTON) != 0;
+		state.stop_ccs_button = (booleans & PackedInputState.STOP_CCS_BUTTON) != 0;
+		state.start_acceleration_button = (booleans & PackedInputState.START_ACCELERATION_BUTTON) != 0;
+		state.stop_acceleration_button = (booleans & PackedInputState.STOP_ACCELERATION_BUTTON) != 0;
+		state.resume_button = (booleans & PackedInputState.RESUME_BUTTON) != 0;
+	}
+
+	/**
+	 * Reads the complete records of a ring or a dump, oldest first.
+	 */
+	public static List<Entry> read(Path filename) throws IOException {
+		ByteBuffer contents = ByteBuffer.wrap(Files.readAllBytes(filename)).order(ByteOrder.LITTLE_ENDIAN);
+		if (contents.limit() < HEADER_BYTES || contents.getInt(0) != MAGIC){
+			throw new IOException(filename + " is not a flight recording");
+		}
+		if (contents.getInt(4) != VERSION || contents.getInt(8) != RECORD_BYTES){
+			throw new IOException(filename + " has an unsupported version");
+		}
+		List<Entry> entries = new ArrayList<Entry>();
+		for (int offset = HEADER_BYTES; offset + RECORD_BYTES <= contents.limit(); offset += RECORD_BYTES){
+			long begin = contents.getLong(offset + BEGIN);
+			if (begin <= 0 || contents.getLong(offset + END) != begin){
+				continue;
+			}
+			Entry entry = new Entry();
+			entry.sequence = begin - 1;
+			entry.nanos = contents.getLong(offset + NANOS);
+			entry.input.present = contents.getShort(offset + INPUT_PRESENT) & PackedInputState.ALL_FIELDS;
+			set_booleans(entry.input, contents.getShort(offset + INPUT_BOOLEANS));
+			entry.input.speed_sensor = contents.getDouble(offset + INPUT_SPEED);
+			entry.input.brake_pedal = contents.getDouble(offset + INPUT_BRAKE);
+			entry.input.accelerator_pedal = contents.getDouble(offset + INPUT_ACCELERATOR);
+			entry.car.present = PackedInputState.ALL_FIELDS;
+			set_booleans(entry.car, contents.getShort(offset + CAR_BOOLEANS));
+			entry.car.speed_sensor = contents.getDouble(offset + CAR_SPEED);
+			entry.car.brake_pedal = contents.getDouble(offset + CAR_BRAKE);
+			entry.car.accelerator_pedal = contents.getDouble(offset + CAR_ACCELERATOR);
+			int flags = contents.get(offset + CCS_FLAGS);
+			entry.has_ccs_state = (flags & HAS_CCS_STATE) != 0;
+			entry.ccs_state.was_accelerating_by_pedal = (flags & WAS_ACCELERATING_BY_PEDAL) != 0;
+			entry.ccs_state.is_ccs_already_on = (flags & IS_CCS_ALREADY_ON) != 0;
+			entry.ccs_state.throttle_value_was_recorded = (flags & THROTTLE_VALUE_WAS_RECORDED) != 0;
+			entry.ccs_state.last_throttle_value_during_cruising = contents.getDouble(offset + CCS_LAST_THROTTLE);
+			entry.ccs_state.recorded_throttle_value = contents.getDouble(offset + CCS_RECORDED_THROTTLE);
+			entry.fired_rules = contents.getInt(offset + FIRED_RULES);
+			int output = contents.getShort(offset + OUTPUT_BOOLEANS);
+			entry.output.engine_status = (output & PackedInputState.ENGINE_STATUS) != 0;
+			entry.output.speed_sensor = entry.car.speed_sensor;
+			entry.output.brake_pedal = entry.car.brake_pedal;
+			entry.output.accelerator_pedal = entry.car.accelerator_pedal;
+			entry.output.start_ccs_button = (output & PackedInputState.START_CCS_BUTTON) != 0;
+			entry.output.stop_ccs_button = (output & PackedInputState.STOP_CCS_BUTTON) != 0;
+			entry.output.start_acceleration_button = (output & PackedInputState.START_ACCELERATION_BUTTON) != 0;
+			entry.output.stop_acceleration_button = (output & PackedInputState.STOP_ACCELERATION_BUTTON) != 0;
+			entry.output.resume_button = (output & PackedInputState.RESUME_BUTTON) != 0;
+			entry.output.throttle_position = contents.getDouble(offset + OUTPUT_THROTTLE);
+			entries.add(entry);
+		}
+		entries.sort(Comparator.comparingLong(entry -> entry.sequence));
+		return entries;
+	}
+
+	/**
+	 * The input states which replay the recording: first every field of the
+	 * car at the first recorded pulse, then the inputs as received.
+	 */
+	public static List<PackedInputState> to_input_states(List<Entry> entries){
+		List<PackedInputState> states = new ArrayList<PackedInputState>(entries.size());
+		for (int i = 0; i < entries.size(); i++){
+			states.add(i == 0 ? entries.get(0).car : entries.get(i).input);
+		}
+		return states;
+	}
+
+	/**
+	 * Replays the recording with a CruiseControlSystem restored to the state
+	 * recorded before the first pulse.
+	 * @return the number of pulses whose output differs from the recorded one
+	 */
+	public static long verify(List<Entry> entries){
+		if (entries.isEmpty()){
+			return 0;
+		}
+		CruiseControlSystem ccs = new CruiseControlSystem();
+		if (entries.get(0).has_ccs_state){
+			ccs.restore_state(entries.get(0).ccs_state);
+		}
+		Timer timer = new Timer(ccs);
+		PulseRecord record = new PulseRecord();
+		List<PackedInputState> states = to_input_states(entries);
+		long differences = 0;
+		for (int i = 0; i < states.size(); i++){
+			timer.pulse(states.get(i), record);
+			if (!record.same_as(entries.get(i).output)){
+				differences++;
+			}
+		}
+		return differences;
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length == 3 && args[0].equals("to-trace")){
+			List<Entry> entries = read(Paths.get(args[1]));
+			try (BufferedWriter out = Files.newBufferedWriter(Paths.get(args[2]), StandardCharsets.UTF_8)){
+				for (PackedInputState state : to_input_states(entries)){
+					out.write(state.format());
+					out.newLine();
+				}
+			}
+			System.out.println(String.format("wrote %d input states", entries.size()));
+			if (!entries.isEmpty() && entries.get(0).has_ccs_state
+				&& !entries.get(0).ccs_state.same_as(new CcsState())){
+				System.out.println("note: the CCS was not in its initial state at the first recorded pulse, "
+								   + "so a fresh replay may differ; use verify to replay from the recorded state");
+			}
+		} else if (args.length == 2 && args[0].equals("verify")){
+			List<Entry> entries = read(Paths.get(args[1]));
+			long differences = verify(entries);
+			System.out.println(String.format("%d pulses, %d differ from the recording", entries.size(), differences));
+			if (differences > 0){
+				System.exit(1);
+			}
+		} else {
+			System.err.println("usage: FlightRecorder (to-trace recording trace_file | verify recording)");
+			System.exit(2);
+		}
+	}
+}
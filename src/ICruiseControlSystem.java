@@ -5,4 +5,13 @@
 
 public interface ICruiseControlSystem {
 	public void pulse(Car car);
+	
+	/**
+	 * The CcsRule bits of the rules which fired during the latest pulse, for
+	 * metrics and diagnostics. Implementations which do not track their
+	 * rules report none.
+	 */
+	public default int get_fired_rules(){
+		return 0;
+	}
 }
\ No newline at end of file
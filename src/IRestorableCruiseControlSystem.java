@@ -0,0 +1,9 @@
+/**
+ * A cruise control whose internal state can be saved and restored as a
+ * CcsState, which replay engines need in order to detect repeated states
+ * or to start a replay part way through a trace.
+ */
+public interface IRestorableCruiseControlSystem extends ICruiseControlSystem {
+	public void capture_state(CcsState state);
+	public void restore_state(CcsState state);
+}
@@ -37,6 +37,66 @@ public class InputState {
 		}
 	}
 	
+	/**
+	 * Returns the primitive form of this state, decoded from the string
+	 * fields as they are now. Nothing is cached, since the fields are public
+	 * and may change; to replay a state many times, keep its packed form.
+	 */
+	public PackedInputState packed(){
+		PackedInputState state = new PackedInputState();
+		this.pack_into(state);
+		return state;
+	}
+	
+	/**
+	 * Decodes this state into a reusable PackedInputState, replacing all of
+	 * its fields.
+	 */
+	public void pack_into(PackedInputState state){
+		state.clear();
+		if (this.is_given(this.engine_status, PackedInputState.ENGINE_STATUS, state)){
+			state.engine_status = Boolean.parseBoolean(this.engine_status);
+		}
+		if (this.is_given(this.speed_sensor, PackedInputState.SPEED_SENSOR, state)){
+			state.speed_sensor = Double.parseDouble(this.speed_sensor);
+		}
+		if (this.is_given(this.brake_pedal, PackedInputState.BRAKE_PEDAL, state)){
+			state.brake_pedal = Double.parseDouble(this.brake_pedal);
+		}
+		if (this.is_given(this.accelerator_pedal, PackedInputState.ACCELERATOR_PEDAL, state)){
+			state.accelerator_pedal = Double.parseDouble(this.accelerator_pedal);
+		}
+		if (this.is_given(this.start_ccs_button, PackedInputState.START_CCS_BUTTON, state)){
+			state.start_ccs_button = Boolean.parseBoolean(this.start_ccs_button);
+		}
+		if (this.is_given(this.stop_ccs_button, PackedInputState.STOP_CCS_BUTTON, state)){
+			state.stop_ccs_button = Boolean.parseBoolean(this.stop_ccs_button);
+		}
+		if (this.is_given(this.start_acceleration_button, PackedInputState.START_ACCELERATION_BUTTON, state)){
+			state.start_acceleration_button = Boolean.parseBoolean(this.start_acceleration_button);
+		}
+		if (this.is_given(this.stop_acceleration_button, PackedInputState.STOP_ACCELERATION_BUTTON, state)){
+			state.stop_acceleration_button = Boolean.parseBoolean(this.stop_acceleration_button);
+		}
+		if (this.is_given(this.resume_button, PackedInputState.RESUME_BUTTON, state)){
+			state.resume_button = Boolean.parseBoolean(this.resume_button);
+		}
+	}
+	
+	private boolean is_given(String s, int field, PackedInputState state){
+		if (s.equals("-")){
+			return false;
+		}
+		state.present |= field;
+		return true;
+	}
+	
+	/**
+	 * For subclasses which fill in the fields themselves.
+	 */
+	protected InputState(){
+	}
+	
 	InputState(String input_string){
 		String[] words = input_string.split(" ");
 		this.engine_status = words[0];
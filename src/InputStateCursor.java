@@ -0,0 +1,26 @@
+/**
+ * A source of input states which decodes each state in turn into a
+ * PackedInputState owned by the caller, rather than creating an object
+ * per line. Timer can replay any cursor directly.
+ */
+import java.io.Closeable;
+import java.io.IOException;
+
+public interface InputStateCursor extends Closeable {
+	/**
+	 * Decodes the next input state into `state`.
+	 * @return false, leaving `state` untouched, once the trace is exhausted
+	 */
+	public boolean next(PackedInputState state) throws IOException;
+
+	/**
+	 * Skips the input states immediately following the one last returned by
+	 * `next` which are encoded identically to it, so that repeated input can
+	 * be passed over without decoding it. Cursors which cannot compare their
+	 * encoded states cheaply skip nothing.
+	 * @return the number of states skipped
+	 */
+	public default long skip_repeats() throws IOException {
+		return 0;
+	}
+}
@@ -0,0 +1,26 @@
+/**
+ * A PulseSink which keeps only the latest record of a replay, e.g. the
+ * final state of a vehicle, so that its memory does not grow with the
+ * trace.
+ */
+public class LastPulseRecord implements PulseSink {
+	private final PulseRecord record = new PulseRecord();
+	private boolean has_record = false;
+
+	@Override
+	public void accept(PulseRecord record){
+		this.record.copy_from(record);
+		this.has_record = true;
+	}
+
+	public boolean has_record(){
+		return this.has_record;
+	}
+
+	/**
+	 * The latest record; only meaningful once `has_record`.
+	 */
+	public PulseRecord get_record(){
+		return this.record;
+	}
+}
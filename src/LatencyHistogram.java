@@ -0,0 +1,43 @@
+/**
+ * A histogram of durations in nanoseconds with power-of-two buckets. Each
+ * bucket is a LongAdder, so concurrent recording threads update separate
+ * cells instead of contending on one counter, and recording never locks.
+ */
+import java.util.concurrent.atomic.LongAdder;
+
+public class LatencyHistogram {
+	// Bucket b counts durations of at most 2^b ns (and more than 2^(b-1) ns);
+	// the last also takes anything longer.
+	public static final int BUCKETS = 40;
+
+	private final LongAdder[] counts = new LongAdder[BUCKETS];
+	private final LongAdder sum_nanos = new LongAdder();
+
+	public LatencyHistogram(){
+		for (int bucket = 0; bucket < BUCKETS; bucket++){
+			this.counts[bucket] = new LongAdder();
+		}
+	}
+
+	public void record(long nanos){
+		int bucket = nanos <= 1 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos - 1));
+		this.counts[bucket].increment();
+		this.sum_nanos.add(nanos);
+	}
+
+	public long count(int bucket){
+		return this.counts[bucket].sum();
+	}
+
+	public long sum_nanos(){
+		return this.sum_nanos.sum();
+	}
+
+	/**
+	 * The inclusive upper bound in nanoseconds of the given bucket, which is
+	 * what a Prometheus `le` label means.
+	 */
+	public static long upper_bound_nanos(int bucket){
+		return 1L << bucket;
+	}
+}
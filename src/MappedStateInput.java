@@ -0,0 +1,164 @@
+/**
+ * Reads the input states of a trace file by memory mapping it and decoding
+ * each line in place with StateLineDecoder. No strings are created per line,
+ * so parsing runs close to the speed at which the file can be read. Files
+ * larger than the mapping window are mapped one window at a time. A cursor
+ * can also be limited to a range of the file which starts and ends at line
+ * boundaries, so that separate parts of a file can be parsed in parallel.
+ */
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+public class MappedStateInput implements InputStateCursor {
+	static final int DEFAULT_WINDOW_SIZE = 1 << 28;
+
+	private final FileChannel channel;
+	// The offset the cursor stops at, the file size unless given a range.
+	private final long end;
+	private final int window_size;
+
+	private MappedByteBuffer window;
+	private long window_start = 0;
+	private int position = 0;
+	private long line_number = 0;
+	// The bounds, within the current window, of the line last returned by
+	// `next`, or -1 once it has been mapped out.
+	private int line_start = -1;
+	private int line_end = -1;
+
+	public MappedStateInput(Path filename) throws IOException {
+		this(filename, DEFAULT_WINDOW_SIZE);
+	}
+
+	public MappedStateInput(Path filename, int window_size) throws IOException {
+		this(filename, 0, -1, window_size);
+	}
+
+	/**
+	 * Reads only the lines from offset `start` up to offset `end`, or to the
+	 * end of the file if `end` is negative. Line numbers in errors count
+	 * from `start`.
+	 */
+	public MappedStateInput(Path filename, long start, long end, int window_size) throws IOException {
+		this.channel = FileChannel.open(filename, StandardOpenOption.READ);
+		this.end = end < 0 ? this.channel.size() : Math.min(end, this.channel.size());
+		this.window_size = window_size;
+		this.map_window(Math.min(start, this.end));
+	}
+
+	private void map_window(long start) throws IOException {
+		long length = Math.min(this.window_size, this.end - start);
+		this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+		this.window_start = start;
+		this.position = 0;
+		this.line_start = -1;
+		this.line_end = -1;
+	}
+
+	private boolean is_last_window(){
+		return this.window_start + this.window.limit() >= this.end;
+	}
+
+	@Override
+	public boolean next(PackedInputState state) throws IOException {
+		int limit = this.window.limit();
+		if (this.position >= limit){
+			if (this.is_last_window()){
+				return false;
+			}
+			this.map_window(this.window_start + this.position);
+			limit = this.window.limit();
+		}
+		int end = this.find_line_end(this.position, limit);
+		if (!this.is_last_window() && (end == limit || (end == limit - 1 && this.window.get(end) == '\r'))){
+			// The line, or its "\r\n" terminator, straddles the end of the window,
+			// so remap starting from the beginning of the line.
+			if (this.position == 0){
+				throw new IOException("line " + (this.line_number + 1) + " is longer than the mapping window");
+			}
+			this.map_window(this.window_start + this.position);
+			return this.next(state);
+		}
+		this.line_number++;
+		StateLineDecoder.decode_line(this.window, this.position, end, state, this.line_number);
+		this.line_start = this.position;
+		this.line_end = end;
+		this.position = this.skip_line_terminator(end, limit);
+		return true;
+	}
+
+	/**
+	 * Skips the following lines whose bytes are identical to the last line,
+	 * stopping at the end of the current window.
+	 */
+	@Override
+	public long skip_repeats(){
+		if (this.line_start < 0){
+			return 0;
+		}
+		int length = this.line_end - this.line_start;
+		int limit = this.window.limit();
+		long skipped = 0;
+		while (this.position < limit){
+			int end = this.position + length;
+			if (end > limit || !this.same_bytes(this.line_start, this.position, length)){
+				break;
+			}
+			if (end < limit){
+				byte b = this.window.get(end);
+				if ((b != '\n' && b != '\r')
+					|| (b == '\r' && end == limit - 1 && !this.is_last_window())){
+					break;
+				}
+			} else if (!this.is_last_window()){
+				break;
+			}
+			this.position = this.skip_line_terminator(end, limit);
+			this.line_number++;
+			skipped++;
+		}
+		return skipped;
+	}
+
+	private boolean same_bytes(int a, int b, int length){
+		for (int i = 0; i < length; i++){
+			if (this.window.get(a + i) != this.window.get(b + i)){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * As BufferedReader.readLine, a line ends at '\n', '\r' or "\r\n".
+	 */
+	private int find_line_end(int from, int limit){
+		for (int i = from; i < limit; i++){
+			byte b = this.window.get(i);
+			if (b == '\n' || b == '\r'){
+				return i;
+			}
+		}
+		return limit;
+	}
+
+	private int skip_line_terminator(int end, int limit){
+		if (end < limit && this.window.get(end) == '\r'){
+			end++;
+			if (end < limit && this.window.get(end) == '\n'){
+				end++;
+			}
+		} else if (end < limit){
+			end++;
+		}
+		return end;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+	}
+}
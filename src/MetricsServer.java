@@ -0,0 +1,55 @@
+/**
+ * Serves a PulseMetrics registry in the Prometheus text format at
+ * http://host:port/metrics, using the JDK's built-in HTTP server. The
+ * registry is only read when it is scraped, so serving it costs the
+ * replay nothing between scrapes.
+ */
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class MetricsServer {
+	private final HttpServer server;
+
+	/**
+	 * Binds to the loopback address on the given port; port 0 picks a free one.
+	 */
+	public MetricsServer(PulseMetrics metrics, int port) throws IOException {
+		this(metrics, new InetSocketAddress("127.0.0.1", port));
+	}
+
+	public MetricsServer(PulseMetrics metrics, InetSocketAddress address) throws IOException {
+		this.server = HttpServer.create(address, 0);
+		this.server.createContext("/metrics", exchange -> {
+			try {
+				if (!exchange.getRequestMethod().equals("GET")){
+					exchange.sendResponseHeaders(405, -1);
+					return;
+				}
+				byte[] body = metrics.scrape().getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()){
+					out.write(body);
+				}
+			} finally {
+				exchange.close();
+			}
+		});
+	}
+
+	public void start(){
+		this.server.start();
+	}
+
+	public int get_port(){
+		return this.server.getAddress().getPort();
+	}
+
+	public void stop(){
+		this.server.stop(0);
+	}
+}
@@ -12,6 +12,24 @@ public class OutputState extends InputState {
 		this.throttle_position = throttle_position;
 	}
 	
+	/**
+	 * Builds the output state straight from a record, formatting each field
+	 * as Car.record_state always has rather than formatting the whole line
+	 * and splitting it up again.
+	 */
+	OutputState(PulseRecord record) {
+		this.engine_status = Boolean.toString(record.engine_status);
+		this.speed_sensor = String.format("%f", record.speed_sensor);
+		this.brake_pedal = String.format("%f", record.brake_pedal);
+		this.accelerator_pedal = String.format("%f", record.accelerator_pedal);
+		this.start_ccs_button = Boolean.toString(record.start_ccs_button);
+		this.stop_ccs_button = Boolean.toString(record.stop_ccs_button);
+		this.start_acceleration_button = Boolean.toString(record.start_acceleration_button);
+		this.stop_acceleration_button = Boolean.toString(record.stop_acceleration_button);
+		this.resume_button = Boolean.toString(record.resume_button);
+		this.throttle_position = record.throttle_position;
+	}
+	
 	public double get_throttle_position(){
 		return this.throttle_position;
 	}
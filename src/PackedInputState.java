@@ -0,0 +1,110 @@
+/**
+ * A primitive representation of a single input state. Rather than holding
+ * the nine words of a state line as strings (see InputState), each field is
+ * decoded once into its boolean or double value, and a bit in `present`
+ * records whether the field was given or was the '-' marker meaning
+ * "whatever it was previously". The object is mutable so that parsers can
+ * decode every line of a trace into the same instance.
+ */
+public class PackedInputState {
+	public static final int ENGINE_STATUS = 1 << 0;
+	public static final int SPEED_SENSOR = 1 << 1;
+	public static final int BRAKE_PEDAL = 1 << 2;
+	public static final int ACCELERATOR_PEDAL = 1 << 3;
+	public static final int START_CCS_BUTTON = 1 << 4;
+	public static final int STOP_CCS_BUTTON = 1 << 5;
+	public static final int START_ACCELERATION_BUTTON = 1 << 6;
+	public static final int STOP_ACCELERATION_BUTTON = 1 << 7;
+	public static final int RESUME_BUTTON = 1 << 8;
+	public static final int ALL_FIELDS = (1 << 9) - 1;
+
+	// A field whose bit is not set in `present` holds its default value, so
+	// that two states decoded from the same line always compare equal.
+	public int present = 0;
+
+	public boolean engine_status = false;
+	public double speed_sensor = 0.0;
+	public double brake_pedal = 0.0;
+	public double accelerator_pedal = 0.0;
+
+	public boolean start_ccs_button = false;
+	public boolean stop_ccs_button = false;
+	public boolean start_acceleration_button = false;
+	public boolean stop_acceleration_button = false;
+	public boolean resume_button = false;
+
+	public boolean is_present(int field){
+		return (this.present & field) != 0;
+	}
+
+	/**
+	 * Resets every field to the '-' marker.
+	 */
+	public void clear(){
+		this.present = 0;
+		this.engine_status = false;
+		this.speed_sensor = 0.0;
+		this.brake_pedal = 0.0;
+		this.accelerator_pedal = 0.0;
+		this.start_ccs_button = false;
+		this.stop_ccs_button = false;
+		this.start_acceleration_button = false;
+		this.stop_acceleration_button = false;
+		this.resume_button = false;
+	}
+
+	/**
+	 * Formats the state as a line of the text trace format, writing '-' for
+	 * every field which is not present.
+	 */
+	public String format(){
+		StringBuilder line = new StringBuilder(64);
+		this.append_boolean(line, ENGINE_STATUS, this.engine_status).append(' ');
+		this.append_double(line, SPEED_SENSOR, this.speed_sensor).append(' ');
+		this.append_double(line, BRAKE_PEDAL, this.brake_pedal).append(' ');
+		this.append_double(line, ACCELERATOR_PEDAL, this.accelerator_pedal).append(' ');
+		this.append_boolean(line, START_CCS_BUTTON, this.start_ccs_button).append(' ');
+		this.append_boolean(line, STOP_CCS_BUTTON, this.stop_ccs_button).append(' ');
+		this.append_boolean(line, START_ACCELERATION_BUTTON, this.start_acceleration_button).append(' ');
+		this.append_boolean(line, STOP_ACCELERATION_BUTTON, this.stop_acceleration_button).append(' ');
+		this.append_boolean(line, RESUME_BUTTON, this.resume_button);
+		return line.toString();
+	}
+
+	private StringBuilder append_boolean(StringBuilder line, int field, boolean value){
+		return this.is_present(field) ? line.append(value) : line.append('-');
+	}
+
+	private StringBuilder append_double(StringBuilder line, int field, double value){
+		return this.is_present(field) ? line.append(value) : line.append('-');
+	}
+
+	/**
+	 * Whether the two states are identical, comparing doubles bit for bit.
+	 */
+	public boolean same_as(PackedInputState other){
+		return this.present == other.present
+			&& this.engine_status == other.engine_status
+			&& Double.doubleToRawLongBits(this.speed_sensor) == Double.doubleToRawLongBits(other.speed_sensor)
+			&& Double.doubleToRawLongBits(this.brake_pedal) == Double.doubleToRawLongBits(other.brake_pedal)
+			&& Double.doubleToRawLongBits(this.accelerator_pedal) == Double.doubleToRawLongBits(other.accelerator_pedal)
+			&& this.start_ccs_button == other.start_ccs_button
+			&& this.stop_ccs_button == other.stop_ccs_button
+			&& this.start_acceleration_button == other.start_acceleration_button
+			&& this.stop_acceleration_button == other.stop_acceleration_button
+			&& this.resume_button == other.resume_button;
+	}
+
+	public void copy_from(PackedInputState other){
+		this.present = other.present;
+		this.engine_status = other.engine_status;
+		this.speed_sensor = other.speed_sensor;
+		this.brake_pedal = other.brake_pedal;
+		this.accelerator_pedal = other.accelerator_pedal;
+		this.start_ccs_button = other.start_ccs_button;
+		this.stop_ccs_button = other.stop_ccs_button;
+		this.start_acceleration_button = other.start_acceleration_button;
+		this.stop_acceleration_button = other.stop_acceleration_button;
+		this.resume_button = other.resume_button;
+	}
+}
@@ -0,0 +1,303 @@
+/**
+ * Parses a large text trace on several cores. The file is split into chunks
+ * at line boundaries and each chunk is parsed by its own task into blocks
+ * of TraceColumns.
+ *
+ * A "-" field means the value is carried forward from an earlier line,
+ * which may be in an earlier chunk. For the sensor channels (engine, speed,
+ * brake and accelerator) the carried value depends on nothing but the
+ * input, so it can be resolved at parse time. Each chunk resolves its own
+ * "-" fields after the first value it sees on a channel. The last value of
+ * each channel in each chunk is then combined in a prefix pass over the
+ * chunks, and the "-" fields at the start of every chunk are filled in
+ * from it in parallel. Dashboard buttons are left as "-" because the CCS
+ * itself changes them between lines, so only a replay can resolve them.
+ *
+ * A replay of the result gives exactly the same outputs as a replay of
+ * the trace parsed sequentially. If any chunk fails to parse, the file is
+ * parsed again sequentially so that the error reports the right line.
+ */
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+public class ParallelTraceParser {
+	/**
+	 * The fields whose "-" can be resolved while parsing.
+	 */
+	public static final int SENSOR_FIELDS = PackedInputState.ENGINE_STATUS
+										  | PackedInputState.SPEED_SENSOR
+										  | PackedInputState.BRAKE_PEDAL
+										  | PackedInputState.ACCELERATOR_PEDAL;
+	public static final int BLOCK_ROWS = BinaryTrace.BLOCK_ROWS;
+	private static final long DEFAULT_MIN_CHUNK_BYTES = 1 << 20;
+	private static final int SCAN_BYTES = 4096;
+
+	/**
+	 * The last value of each sensor channel, as carried from line to line.
+	 */
+	private static class Carry {
+		int seen = 0;
+		boolean engine_status = false;
+		double speed_sensor = 0.0;
+		double brake_pedal = 0.0;
+		double accelerator_pedal = 0.0;
+
+		/**
+		 * Takes the values of any channels which are present in `state`,
+		 * and fills in those which are not from the values seen before.
+		 */
+		void carry(PackedInputState state){
+			int present = state.present;
+			if ((present & PackedInputState.ENGINE_STATUS) != 0){
+				this.engine_status = state.engine_status;
+			} else if ((this.seen & PackedInputState.ENGINE_STATUS) != 0){
+				state.engine_status = this.engine_status;
+			}
+			if ((present & PackedInputState.SPEED_SENSOR) != 0){
+				this.speed_sensor = state.speed_sensor;
+			} else if ((this.seen & PackedInputState.SPEED_SENSOR) != 0){
+				state.speed_sensor = this.speed_sensor;
+			}
+			if ((present & PackedInputState.BRAKE_PEDAL) != 0){
+				this.brake_pedal = state.brake_pedal;
+			} else if ((this.seen & PackedInputState.BRAKE_PEDAL) != 0){
+				state.brake_pedal = this.brake_pedal;
+			}
+			if ((present & PackedInputState.ACCELERATOR_PEDAL) != 0){
+				this.accelerator_pedal = state.accelerator_pedal;
+			} else if ((this.seen & PackedInputState.ACCELERATOR_PEDAL) != 0){
+				state.accelerator_pedal = this.accelerator_pedal;
+			}
+			this.seen |= present & SENSOR_FIELDS;
+			state.present |= this.seen;
+		}
+
+		/**
+		 * Combines the values carried into a chunk with those carried out of
+		 * it, the associative step of the prefix pass.
+		 */
+		void then(Carry later){
+			if ((later.seen & PackedInputState.ENGINE_STATUS) != 0){
+				this.engine_status = later.engine_status;
+			}
+			if ((later.seen & PackedInputState.SPEED_SENSOR) != 0){
+				this.speed_sensor = later.speed_sensor;
+			}
+			if ((later.seen & PackedInputState.BRAKE_PEDAL) != 0){
+				this.brake_pedal = later.brake_pedal;
+			}
+			if ((later.seen & PackedInputState.ACCELERATOR_PEDAL) != 0){
+				this.accelerator_pedal = later.accelerator_pedal;
+			}
+			this.seen |= later.seen;
+		}
+
+		void copy_from(Carry other){
+			this.seen = other.seen;
+			this.engine_status = other.engine_status;
+			this.speed_sensor = other.speed_sensor;
+			this.brake_pedal = other.brake_pedal;
+			this.accelerator_pedal = other.accelerator_pedal;
+		}
+	}
+
+	private static class Chunk {
+		final long start;
+		final long end;
+		final List<TraceColumns> blocks = new ArrayList<TraceColumns>();
+		// The values carried out of the chunk, and later those carried into it.
+		final Carry carry_out = new Carry();
+		final Carry carry_in = new Carry();
+		Exception failure = null;
+
+		Chunk(long start, long end){
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	private final ForkJoinPool pool;
+	private final int chunk_count;
+	private final long min_chunk_bytes;
+
+	public ParallelTraceParser(){
+		this(ForkJoinPool.commonPool(), 4 * ForkJoinPool.commonPool().getParallelism());
+	}
+
+	/**
+	 * @param chunk_count how many chunks to split a file into at most; a few
+	 *                    per worker evens out chunks which parse more slowly
+	 */
+	public ParallelTraceParser(ForkJoinPool pool, int chunk_count){
+		this(pool, chunk_count, DEFAULT_MIN_CHUNK_BYTES);
+	}
+
+	/**
+	 * @param min_chunk_bytes the smallest chunk worth a task of its own
+	 */
+	public ParallelTraceParser(ForkJoinPool pool, int chunk_count, long min_chunk_bytes){
+		this.pool = pool;
+		this.chunk_count = Math.max(1, chunk_count);
+		this.min_chunk_bytes = Math.max(1, min_chunk_bytes);
+	}
+
+	/**
+	 * Parses the whole file, with the sensor channels resolved.
+	 */
+	public List<TraceColumns> parse(Path filename) throws IOException {
+		List<Chunk> chunks = split(filename, this.chunk_count, this.min_chunk_bytes);
+		List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(chunks.size());
+		for (Chunk chunk : chunks){
+			tasks.add(this.pool.submit(() -> parse_chunk(filename, chunk)));
+		}
+		for (ForkJoinTask<?> task : tasks){
+			task.join();
+		}
+		for (Chunk chunk : chunks){
+			if (chunk.failure != null){
+				// Parse again in order so the error names the right line.
+				return parse_sequentially(filename);
+			}
+		}
+
+		// The prefix pass: a "-" before any value at all stands for the
+		// sensor's initial value, so the first chunk starts from those.
+		Carry carry = new Carry();
+		carry.seen = SENSOR_FIELDS;
+		for (Chunk chunk : chunks){
+			chunk.carry_in.copy_from(carry);
+			carry.then(chunk.carry_out);
+		}
+
+		tasks.clear();
+		for (Chunk chunk : chunks){
+			tasks.add(this.pool.submit(() -> fill_leading_fields(chunk)));
+		}
+		List<TraceColumns> blocks = new ArrayList<TraceColumns>();
+		for (int i = 0; i < chunks.size(); i++){
+			tasks.get(i).join();
+			blocks.addAll(chunks.get(i).blocks);
+		}
+		return blocks;
+	}
+
+	/**
+	 * Parses the whole file in the calling thread, giving the same result
+	 * as `parse`.
+	 */
+	public static List<TraceColumns> parse_sequentially(Path filename) throws IOException {
+		Chunk chunk = new Chunk(0, -1);
+		chunk.carry_out.seen = SENSOR_FIELDS;
+		read_chunk(filename, chunk);
+		return chunk.blocks;
+	}
+
+	private static void parse_chunk(Path filename, Chunk chunk){
+		try {
+			read_chunk(filename, chunk);
+		} catch (IOException | RuntimeException e){
+			chunk.failure = e;
+		}
+	}
+
+	private static void read_chunk(Path filename, Chunk chunk) throws IOException {
+		PackedInputState state = new PackedInputState();
+		TraceColumns block = null;
+		try (InputStateCursor input_states = new MappedStateInput(filename, chunk.start, chunk.end,
+																   MappedStateInput.DEFAULT_WINDOW_SIZE)){
+			while (input_states.next(state)){
+				chunk.carry_out.carry(state);
+				if (block == null || block.is_full()){
+					block = new TraceColumns(BLOCK_ROWS);
+					chunk.blocks.add(block);
+				}
+				block.add(state);
+			}
+		}
+	}
+
+	/**
+	 * Fills in the channels which were "-" at the start of a chunk, up to the
+	 * first line of the chunk which gave each of them a value.
+	 */
+	private static void fill_leading_fields(Chunk chunk){
+		Carry carry = chunk.carry_in;
+		int pending = SENSOR_FIELDS;
+		for (TraceColumns block : chunk.blocks){
+			for (int row = 0; row < block.size() && pending != 0; row++){
+				pending &= ~block.present[row];
+				if ((pending & PackedInputState.ENGINE_STATUS) != 0 && carry.engine_status){
+					block.booleans[row] |= PackedInputState.ENGINE_STATUS;
+				}
+				if ((pending & PackedInputState.SPEED_SENSOR) != 0){
+					block.speed_sensor[row] = carry.speed_sensor;
+				}
+				if ((pending & PackedInputState.BRAKE_PEDAL) != 0){
+					block.brake_pedal[row] = carry.brake_pedal;
+				}
+				if ((pending & PackedInputState.ACCELERATOR_PEDAL) != 0){
+					block.accelerator_pedal[row] = carry.accelerator_pedal;
+				}
+				block.present[row] |= pending;
+			}
+			if (pending == 0){
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Splits a file into at most `count` chunks of at least `min_bytes`,
+	 * each starting at the beginning of a line.
+	 */
+	private static List<Chunk> split(Path filename, int count, long min_bytes) throws IOException {
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		try (FileChannel channel = FileChannel.open(filename, StandardOpenOption.READ)){
+			long size = channel.size();
+			long chunk_size = Math.max(min_bytes, (size + count - 1) / count);
+			ByteBuffer scan = ByteBuffer.allocate(SCAN_BYTES);
+			long start = 0;
+			while (start < size){
+				long end = start + chunk_size >= size ? size : next_line_start(channel, start + chunk_size, scan);
+				chunks.add(new Chunk(start, end));
+				start = end;
+			}
+		}
+		return chunks;
+	}
+
+	/**
+	 * The offset of the first line which starts at or after `offset`.
+	 * Lines end at '\n', '\r' or "\r\n", as in MappedStateInput.
+	 */
+	private static long next_line_start(FileChannel channel, long offset, ByteBuffer scan) throws IOException {
+		// Start one byte early, in case `offset` is just after a terminator.
+		long position = offset - 1;
+		boolean after_cr = false;
+		while (true){
+			scan.clear();
+			int read = channel.read(scan, position);
+			if (read <= 0){
+				return channel.size();
+			}
+			for (int i = 0; i < read; i++){
+				byte b = scan.get(i);
+				if (after_cr){
+					return position + i + (b == '\n' ? 1 : 0);
+				}
+				if (b == '\n'){
+					return position + i + 1;
+				}
+				after_cr = b == '\r';
+			}
+			position += read;
+		}
+	}
+}
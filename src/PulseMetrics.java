@@ -0,0 +1,89 @@
+/**
+ * The metrics of a running CCS: the number of pulses, how often each
+ * CcsRule fired, and histograms of the time spent parsing each input
+ * state, running each pulse (Car.update_states plus ccs.pulse), recording
+ * its state and handing it to the output. All of it is kept in LongAdders,
+ * so any number of Timers can record into one registry without locking.
+ * `write_prometheus` renders the registry in the Prometheus text format,
+ * which MetricsServer serves over HTTP.
+ */
+import java.util.concurrent.atomic.LongAdder;
+
+public class PulseMetrics {
+	private final LongAdder pulses = new LongAdder();
+	private final LongAdder[] rules = new LongAdder[CcsRule.values().length];
+
+	public final LatencyHistogram parse_latency = new LatencyHistogram();
+	public final LatencyHistogram pulse_latency = new LatencyHistogram();
+	public final LatencyHistogram record_latency = new LatencyHistogram();
+	public final LatencyHistogram output_latency = new LatencyHistogram();
+
+	public PulseMetrics(){
+		for (int rule = 0; rule < this.rules.length; rule++){
+			this.rules[rule] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Records one pulse, given the rules which fired as CcsRule bits and the
+	 * time each stage of the pulse took.
+	 */
+	public void record_pulse(int fired_rules, long parse_nanos, long pulse_nanos,
+							 long record_nanos, long output_nanos){
+		this.pulses.increment();
+		while (fired_rules != 0){
+			this.rules[Integer.numberOfTrailingZeros(fired_rules)].increment();
+			fired_rules &= fired_rules - 1;
+		}
+		this.parse_latency.record(parse_nanos);
+		this.pulse_latency.record(pulse_nanos);
+		this.record_latency.record(record_nanos);
+		this.output_latency.record(output_nanos);
+	}
+
+	public long pulses(){
+		return this.pulses.sum();
+	}
+
+	public long rule_count(CcsRule rule){
+		return this.rules[rule.ordinal()].sum();
+	}
+
+	public void write_prometheus(StringBuilder out){
+		out.append("# HELP ccs_pulses_total Pulses run by the cruise control.\n");
+		out.append("# TYPE ccs_pulses_total counter\n");
+		out.append("ccs_pulses_total ").append(this.pulses.sum()).append('\n');
+		out.append("# HELP ccs_rule_fired_total Pulses in which each cruise control rule fired.\n");
+		out.append("# TYPE ccs_rule_fired_total counter\n");
+		for (CcsRule rule : CcsRule.values()){
+			out.append("ccs_rule_fired_total{rule=\"").append(rule.label()).append("\"} ")
+			   .append(this.rule_count(rule)).append('\n');
+		}
+		write_histogram(out, "ccs_parse_duration_seconds", "Time to parse an input state.", this.parse_latency);
+		write_histogram(out, "ccs_pulse_duration_seconds", "Time to update the car and run the CCS pulse.", this.pulse_latency);
+		write_histogram(out, "ccs_record_duration_seconds", "Time to record the state of the car.", this.record_latency);
+		write_histogram(out, "ccs_output_duration_seconds", "Time to format and write an output state.", this.output_latency);
+	}
+
+	private static void write_histogram(StringBuilder out, String name, String help, LatencyHistogram histogram){
+		out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		out.append("# TYPE ").append(name).append(" histogram\n");
+		long cumulative = 0;
+		for (int bucket = 0; bucket < LatencyHistogram.BUCKETS - 1; bucket++){
+			cumulative += histogram.count(bucket);
+			out.append(name).append("_bucket{le=\"")
+			   .append(LatencyHistogram.upper_bound_nanos(bucket) / 1e9).append("\"} ")
+			   .append(cumulative).append('\n');
+		}
+		cumulative += histogram.count(LatencyHistogram.BUCKETS - 1);
+		out.append(name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+		out.append(name).append("_sum ").append(histogram.sum_nanos() / 1e9).append('\n');
+		out.append(name).append("_count ").append(cumulative).append('\n');
+	}
+
+	public String scrape(){
+		StringBuilder out = new StringBuilder(8192);
+		this.write_prometheus(out);
+		return out.toString();
+	}
+}
@@ -0,0 +1,70 @@
+/**
+ * A reusable, primitive snapshot of the state of the car after a pulse:
+ * the same fields as an OutputState, but held as booleans and doubles.
+ * Car.record_state(PulseRecord) fills one in without allocating, and the
+ * text form is only produced when a consumer asks for it via `format`.
+ */
+public class PulseRecord {
+	public boolean engine_status = false;
+	public double speed_sensor = 0.0;
+	public double brake_pedal = 0.0;
+	public double accelerator_pedal = 0.0;
+
+	public boolean start_ccs_button = false;
+	public boolean stop_ccs_button = false;
+	public boolean start_acceleration_button = false;
+	public boolean stop_acceleration_button = false;
+	public boolean resume_button = false;
+
+	public double throttle_position = 0.0;
+
+	/**
+	 * Formats the record exactly as OutputState.format would.
+	 */
+	public String format(){
+		return String.format("%b %f %f %f %b %b %b %b %b %f",
+							 this.engine_status,
+							 this.speed_sensor,
+							 this.brake_pedal,
+							 this.accelerator_pedal,
+							 this.start_ccs_button,
+							 this.stop_ccs_button,
+							 this.start_acceleration_button,
+							 this.stop_acceleration_button,
+							 this.resume_button,
+							 this.throttle_position);
+	}
+
+	public OutputState to_output_state(){
+		return new OutputState(this);
+	}
+
+	/**
+	 * Whether the two records are identical, comparing doubles bit for bit.
+	 */
+	public boolean same_as(PulseRecord other){
+		return this.engine_status == other.engine_status
+			&& Double.doubleToRawLongBits(this.speed_sensor) == Double.doubleToRawLongBits(other.speed_sensor)
+			&& Double.doubleToRawLongBits(this.brake_pedal) == Double.doubleToRawLongBits(other.brake_pedal)
+			&& Double.doubleToRawLongBits(this.accelerator_pedal) == Double.doubleToRawLongBits(other.accelerator_pedal)
+			&& this.start_ccs_button == other.start_ccs_button
+			&& this.stop_ccs_button == other.stop_ccs_button
+			&& this.start_acceleration_button == other.start_acceleration_button
+			&& this.stop_acceleration_button == other.stop_acceleration_button
+			&& this.resume_button == other.resume_button
+			&& Double.doubleToRawLongBits(this.throttle_position) == Double.doubleToRawLongBits(other.throttle_position);
+	}
+
+	public void copy_from(PulseRecord other){
+		this.engine_status = other.engine_status;
+		this.speed_sensor = other.speed_sensor;
+		this.brake_pedal = other.brake_pedal;
+		this.accelerator_pedal = other.accelerator_pedal;
+		this.start_ccs_button = other.start_ccs_button;
+		this.stop_ccs_button = other.stop_ccs_button;
+		this.start_acceleration_button = other.start_acceleration_button;
+		this.stop_acceleration_button = other.stop_acceleration_button;
+		this.resume_button = other.resume_button;
+		this.throttle_position = other.throttle_position;
+	}
+}
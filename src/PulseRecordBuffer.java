@@ -0,0 +1,86 @@
+/**
+ * A PulseSink which keeps every record of a replay in growable primitive
+ * columns, rather than as one OutputState object per pulse.
+ */
+import java.util.Arrays;
+
+public class PulseRecordBuffer implements PulseSink {
+	private static final int ENGINE_STATUS = 1 << 0;
+	private static final int START_CCS_BUTTON = 1 << 1;
+	private static final int STOP_CCS_BUTTON = 1 << 2;
+	private static final int START_ACCELERATION_BUTTON = 1 << 3;
+	private static final int STOP_ACCELERATION_BUTTON = 1 << 4;
+	private static final int RESUME_BUTTON = 1 << 5;
+
+	private int size = 0;
+	private byte[] booleans;
+	private double[] speed_sensor;
+	private double[] brake_pedal;
+	private double[] accelerator_pedal;
+	private double[] throttle_position;
+
+	public PulseRecordBuffer(){
+		this(1024);
+	}
+
+	public PulseRecordBuffer(int initial_capacity){
+		initial_capacity = Math.max(initial_capacity, 16);
+		this.booleans = new byte[initial_capacity];
+		this.speed_sensor = new double[initial_capacity];
+		this.brake_pedal = new double[initial_capacity];
+		this.accelerator_pedal = new double[initial_capacity];
+		this.throttle_position = new double[initial_capacity];
+	}
+
+	public int size(){
+		return this.size;
+	}
+
+	public void clear(){
+		this.size = 0;
+	}
+
+	@Override
+	public void accept(PulseRecord record){
+		if (this.size == this.booleans.length){
+			int capacity = this.size * 2;
+			this.booleans = Arrays.copyOf(this.booleans, capacity);
+			this.speed_sensor = Arrays.copyOf(this.speed_sensor, capacity);
+			this.brake_pedal = Arrays.copyOf(this.brake_pedal, capacity);
+			this.accelerator_pedal = Arrays.copyOf(this.accelerator_pedal, capacity);
+			this.throttle_position = Arrays.copyOf(this.throttle_position, capacity);
+		}
+		int row = this.size++;
+		this.booleans[row] = (byte) ((record.engine_status ? ENGINE_STATUS : 0)
+								   | (record.start_ccs_button ? START_CCS_BUTTON : 0)
+								   | (record.stop_ccs_button ? STOP_CCS_BUTTON : 0)
+								   | (record.start_acceleration_button ? START_ACCELERATION_BUTTON : 0)
+								   | (record.stop_acceleration_button ? STOP_ACCELERATION_BUTTON : 0)
+								   | (record.resume_button ? RESUME_BUTTON : 0));
+		this.speed_sensor[row] = record.speed_sensor;
+		this.brake_pedal[row] = record.brake_pedal;
+		this.accelerator_pedal[row] = record.accelerator_pedal;
+		this.throttle_position[row] = record.throttle_position;
+	}
+
+	public void get(int row, PulseRecord record){
+		if (row < 0 || row >= this.size){
+			throw new IndexOutOfBoundsException("row " + row + " of " + this.size);
+		}
+		int values = this.booleans[row];
+		record.engine_status = (values & ENGINE_STATUS) != 0;
+		record.speed_sensor = this.speed_sensor[row];
+		record.brake_pedal = this.brake_pedal[row];
+		record.accelerator_pedal = this.accelerator_pedal[row];
+		record.start_ccs_button = (values & START_CCS_BUTTON) != 0;
+		record.stop_ccs_button = (values & STOP_CCS_BUTTON) != 0;
+		record.start_acceleration_button = (values & START_ACCELERATION_BUTTON) != 0;
+		record.stop_acceleration_button = (values & STOP_ACCELERATION_BUTTON) != 0;
+		record.resume_button = (values & RESUME_BUTTON) != 0;
+		record.throttle_position = this.throttle_position[row];
+	}
+
+	public double get_throttle_position(int row){
+		return this.throttle_position[row];
+	}
+}
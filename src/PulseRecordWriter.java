@@ -0,0 +1,298 @@
+/**
+ * Writes pulse records as text lines, byte for byte as
+ * `System.out.println(record.format())` would, but without a Formatter or
+ * a String per line. Each line is written straight into a large reusable
+ * buffer which is only written to the channel when it fills up, or on
+ * `flush`. Doubles are printed by a hand-rolled `%f` formatter whenever it
+ * can be sure of giving the same digits as String.format. It falls back to
+ * String.format for very large or non-finite values, for values which lie
+ * too close to a rounding tie, and for locales whose digits differ from
+ * "0.000000".
+ *
+ * With delta encoding turned on, each field which is unchanged since the
+ * previous line is written as "-", the same convention the input format
+ * uses for unchanged values. DeltaOutputReader expands such output back
+ * into full lines.
+ */
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+public class PulseRecordWriter implements PulseSink, Closeable {
+	private static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+	// Room for a whole line printed by the fast formatter, which is at most
+	// six booleans, four doubles below 1e6, separators and a line separator.
+	private static final int MAX_FAST_LINE_BYTES = 256;
+	// Also leaves room for the longest fallback value, Double.MAX_VALUE.
+	private static final int MIN_BUFFER_SIZE = 4096;
+
+	private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+	private static final byte UNCHANGED = '-';
+
+	// %f rounds the shortest decimal form of a double half up to six places.
+	// Multiplying by 1e6 is accurate to well within this much of a unit in
+	// the sixth place for values below FAST_LIMIT, so any value further than
+	// this from a tie rounds the same way either way.
+	private static final double FAST_LIMIT = 1e6;
+	private static final double TIE_EPSILON = 1e-3;
+	private static final long UNITS = 1000000L;
+
+	private final WritableByteChannel channel;
+	private final ByteBuffer buffer;
+	private final byte[] line_separator;
+	private final Locale locale;
+	private final Charset charset;
+	private final boolean fast_doubles;
+	private long lines = 0;
+	private long flushes = 0;
+	private byte[] run_line = new byte[MAX_FAST_LINE_BYTES];
+	private boolean delta_encoding = false;
+	// The last record written, which delta encoded lines are relative to.
+	private final PulseRecord previous = new PulseRecord();
+	private boolean has_previous = false;
+
+	public PulseRecordWriter(WritableByteChannel channel){
+		this(channel, DEFAULT_BUFFER_SIZE);
+	}
+
+	public PulseRecordWriter(WritableByteChannel channel, int buffer_size){
+		this(channel, buffer_size, System.lineSeparator(), Locale.getDefault(Locale.Category.FORMAT));
+	}
+
+	/**
+	 * @param line_separator written after each line, as println would
+	 * @param locale the locale String.format would use
+	 */
+	public PulseRecordWriter(WritableByteChannel channel, int buffer_size, String line_separator, Locale locale){
+		this.channel = channel;
+		this.buffer = ByteBuffer.allocate(Math.max(buffer_size, MIN_BUFFER_SIZE));
+		this.charset = Charset.defaultCharset();
+		this.line_separator = line_separator.getBytes(this.charset);
+		this.locale = locale;
+		DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(locale);
+		this.fast_doubles = symbols.getZeroDigit() == '0' && symbols.getDecimalSeparator() == '.'
+							&& symbols.getMinusSign() == '-';
+	}
+
+	/**
+	 * Turns delta encoding on or off from the next line on. The first line
+	 * after it is turned on is written in full.
+	 */
+	public void set_delta_encoding(boolean delta_encoding){
+		this.delta_encoding = delta_encoding;
+		this.has_previous = false;
+	}
+
+	@Override
+	public void accept(PulseRecord record) throws IOException {
+		this.ensure_space(MAX_FAST_LINE_BYTES);
+		this.write_line(record);
+	}
+
+	/**
+	 * Formats the first two lines of the run and copies the bytes of the
+	 * second one for the rest of it; only the first line can differ when
+	 * delta encoding is on.
+	 */
+	@Override
+	public void accept_run(PulseRecord record, long count) throws IOException {
+		if (count <= 0){
+			return;
+		}
+		this.ensure_space(MAX_FAST_LINE_BYTES);
+		this.write_line(record);
+		if (count == 1){
+			return;
+		}
+		this.ensure_space(MAX_FAST_LINE_BYTES);
+		long flushes = this.flushes;
+		int start = this.buffer.position();
+		// After the first line of the run, either the whole line repeats or,
+		// delta encoded, every field is unchanged.
+		this.write_line(record);
+		if (this.flushes != flushes){
+			// A long fallback value flushed part of the line already.
+			PulseSink.super.accept_run(record, count - 2);
+			return;
+		}
+		int length = this.buffer.position() - start;
+		byte[] array = this.buffer.array();
+		for (long i = 2; i < count; i++){
+			if (this.buffer.remaining() < length){
+				if (this.run_line.length < length){
+					this.run_line = new byte[length];
+				}
+				System.arraycopy(array, start, this.run_line, 0, length);
+				this.flush();
+				this.buffer.put(this.run_line, 0, length);
+				start = 0;
+			} else {
+				int position = this.buffer.position();
+				System.arraycopy(array, start, array, position, length);
+				this.buffer.position(position + length);
+			}
+		}
+		this.lines += count - 2;
+	}
+
+	private void write_line(PulseRecord record) throws IOException {
+		boolean delta = this.delta_encoding && this.has_previous;
+		PulseRecord previous = this.previous;
+		this.write_boolean(record.engine_status, delta && record.engine_status == previous.engine_status);
+		this.buffer.put((byte) ' ');
+		this.write_double(record.speed_sensor, delta && same(record.speed_sensor, previous.speed_sensor));
+		this.buffer.put((byte) ' ');
+		this.write_double(record.brake_pedal, delta && same(record.brake_pedal, previous.brake_pedal));
+		this.buffer.put((byte) ' ');
+		this.write_double(record.accelerator_pedal, delta && same(record.accelerator_pedal, previous.accelerator_pedal));
+		this.buffer.put((byte) ' ');
+		this.write_boolean(record.start_ccs_button, delta && record.start_ccs_button == previous.start_ccs_button);
+		this.buffer.put((byte) ' ');
+		this.write_boolean(record.stop_ccs_button, delta && record.stop_ccs_button == previous.stop_ccs_button);
+		this.buffer.put((byte) ' ');
+		this.write_boolean(record.start_acceleration_button,
+						   delta && record.start_acceleration_button == previous.start_acceleration_button);
+		this.buffer.put((byte) ' ');
+		this.write_boolean(record.stop_acceleration_button,
+						   delta && record.stop_acceleration_button == previous.stop_acceleration_button);
+		this.buffer.put((byte) ' ');
+		this.write_boolean(record.resume_button, delta && record.resume_button == previous.resume_button);
+		this.buffer.put((byte) ' ');
+		this.write_double(record.throttle_position, delta && same(record.throttle_position, previous.throttle_position));
+		this.buffer.put(this.line_separator);
+		this.lines++;
+		if (this.delta_encoding){
+			previous.copy_from(record);
+			this.has_previous = true;
+		}
+	}
+
+	private static boolean same(double a, double b){
+		return Double.doubleToRawLongBits(a) == Double.doubleToRawLongBits(b);
+	}
+
+	private void write_boolean(boolean value, boolean unchanged){
+		if (unchanged){
+			this.buffer.put(UNCHANGED);
+		} else {
+			this.buffer.put(value ? TRUE : FALSE);
+		}
+	}
+
+	private void write_double(double value, boolean unchanged) throws IOException {
+		if (unchanged){
+			this.buffer.put(UNCHANGED);
+		} else {
+			this.write_double(value);
+		}
+	}
+
+	private void write_double(double value) throws IOException {
+		if (!this.fast_doubles || !put_fixed(value, this.buffer)){
+			this.write_text(String.format(this.locale, "%f", value));
+		}
+	}
+
+	/**
+	 * Writes `value` into a heap buffer as `%f` would with ASCII digits, if
+	 * the fast formatter can be sure of giving the same digits.
+	 * @return false, having written nothing, if String.format must be used
+	 */
+	static boolean put_fixed(double value, ByteBuffer buffer){
+		double magnitude = Math.abs(value);
+		if (!(magnitude < FAST_LIMIT)){
+			return false;
+		}
+		double scaled = magnitude * UNITS;
+		double whole = Math.floor(scaled);
+		double fraction = scaled - whole;
+		if (Math.abs(fraction - 0.5) <= TIE_EPSILON){
+			return false;
+		}
+		long units = (long) whole + (fraction > 0.5 ? 1 : 0);
+		if (Double.doubleToRawLongBits(value) < 0){
+			// %f keeps the sign of negative values which round to zero, and of -0.0.
+			buffer.put((byte) '-');
+		}
+		write_digits(buffer, units / UNITS, 1);
+		buffer.put((byte) '.');
+		write_digits(buffer, units % UNITS, 6);
+		return true;
+	}
+
+	/**
+	 * Writes a non-negative number with at least `min_digits` digits.
+	 */
+	private static void write_digits(ByteBuffer buffer, long value, int min_digits){
+		int digits = 1;
+		for (long limit = 10; digits < 19 && value >= limit; limit *= 10){
+			digits++;
+		}
+		digits = Math.max(digits, min_digits);
+		int end = buffer.position() + digits;
+		byte[] array = buffer.array();
+		int offset = buffer.arrayOffset();
+		for (int i = end - 1; i >= end - digits; i--){
+			array[offset + i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		buffer.position(end);
+	}
+
+	private void write_text(String text) throws IOException {
+		byte[] bytes = text.getBytes(this.charset);
+		if (bytes.length > this.buffer.remaining() - MAX_FAST_LINE_BYTES){
+			// Only the rare fallback values can run past the space reserved for
+			// a line, so make room for the rest of it as well.
+			this.flush();
+		}
+		this.buffer.put(bytes);
+	}
+
+	private void ensure_space(int bytes) throws IOException {
+		if (this.buffer.remaining() < bytes){
+			this.flush();
+		}
+	}
+
+	/**
+	 * The number of lines written so far.
+	 */
+	public long get_lines(){
+		return this.lines;
+	}
+
+	/**
+	 * Writes everything buffered so far to the channel.
+	 */
+	public void flush() throws IOException {
+		CcsEvents.OutputFlushEvent event = new CcsEvents.OutputFlushEvent();
+		event.begin();
+		this.buffer.flip();
+		event.bytes = this.buffer.remaining();
+		while (this.buffer.hasRemaining()){
+			this.channel.write(this.buffer);
+		}
+		this.buffer.clear();
+		this.flushes++;
+		event.commit();
+	}
+
+	/**
+	 * Flushes and closes the channel.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			this.flush();
+		} finally {
+			this.channel.close();
+		}
+	}
+}
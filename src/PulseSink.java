@@ -0,0 +1,20 @@
+/**
+ * Receives the state of the car after each pulse of a replay. The record
+ * is reused for the next pulse, so a sink must copy anything it keeps.
+ */
+import java.io.IOException;
+
+public interface PulseSink {
+	public void accept(PulseRecord record) throws IOException;
+
+	/**
+	 * Receives `count` consecutive pulses which all recorded the same state,
+	 * as reported by replay engines which fast-forward over repeated input.
+	 * By default the run is expanded into `count` calls of accept.
+	 */
+	public default void accept_run(PulseRecord record, long count) throws IOException {
+		for (long i = 0; i < count; i++){
+			this.accept(record);
+		}
+	}
+}
@@ -0,0 +1,134 @@
+/**
+ * Drives a Timer at a fixed control rate rather than as fast as possible.
+ * Pulse k is released at start + k * period, measured with System.nanoTime
+ * so that the schedule does not drift. Until shortly before a release the
+ * scheduler parks, and for the last stretch (the spin threshold) it spins,
+ * since parking alone wakes up too late for rates of hundreds of hertz.
+ *
+ * For every pulse it measures the release jitter (how late the pulse
+ * started) and the execution time. A pulse which has not finished by the
+ * next release misses its deadline; the releases it overran are skipped
+ * rather than run back to back.
+ *
+ * Time is read, and waited for, through a Clock, which is the system's
+ * unless one is given, e.g. a simulated one for testing.
+ */
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.locks.LockSupport;
+
+public class RealTimeScheduler {
+	public static final long DEFAULT_SPIN_THRESHOLD_NANOS = 100000;
+
+	/**
+	 * The time the scheduler releases pulses by, in nanoseconds.
+	 */
+	interface Clock {
+		public long nano_time();
+
+		/**
+		 * Returns once `nano_time` has reached `release`.
+		 */
+		public void wait_until(long release);
+	}
+
+	/**
+	 * System.nanoTime, parking until the spin threshold before a release and
+	 * spinning for the rest.
+	 */
+	private static class SystemClock implements Clock {
+		private final long spin_threshold_nanos;
+
+		SystemClock(long spin_threshold_nanos){
+			this.spin_threshold_nanos = spin_threshold_nanos;
+		}
+
+		@Override
+		public long nano_time(){
+			return System.nanoTime();
+		}
+
+		@Override
+		public void wait_until(long release){
+			while (true){
+				long remaining = release - System.nanoTime();
+				if (remaining <= 0){
+					return;
+				}
+				if (remaining > this.spin_threshold_nanos){
+					LockSupport.parkNanos(remaining - this.spin_threshold_nanos);
+				} else {
+					Thread.onSpinWait();
+				}
+			}
+		}
+	}
+
+	private final long period_nanos;
+	private final Clock clock;
+
+	public RealTimeScheduler(double frequency_hz){
+		this(frequency_hz, DEFAULT_SPIN_THRESHOLD_NANOS);
+	}
+
+	public RealTimeScheduler(double frequency_hz, long spin_threshold_nanos){
+		this(frequency_hz, new SystemClock(spin_threshold_nanos));
+	}
+
+	RealTimeScheduler(double frequency_hz, Clock clock){
+		if (!(frequency_hz > 0.0)){
+			throw new IllegalArgumentException("frequency must be positive: " + frequency_hz);
+		}
+		this.period_nanos = Math.max(1, Math.round(1e9 / frequency_hz));
+		this.clock = clock;
+	}
+
+	public long get_period_nanos(){
+		return this.period_nanos;
+	}
+
+	/**
+	 * Replays the input states through the timer, one pulse per period,
+	 * until the input is exhausted.
+	 */
+	public RealTimeStats run(Timer timer, InputStateCursor input_states, PulseSink sink) throws IOException {
+		RealTimeStats stats = new RealTimeStats(this.period_nanos);
+		PackedInputState next_state = new PackedInputState();
+		PulseRecord record = new PulseRecord();
+		Clock clock = this.clock;
+		long release = clock.nano_time() + this.period_nanos;
+		while (true){
+			clock.wait_until(release);
+			long started = clock.nano_time();
+			if (!input_states.next(next_state)){
+				break;
+			}
+			timer.pulse(next_state, record);
+			sink.accept(record);
+			long finished = clock.nano_time();
+
+			long next_release = release + this.period_nanos;
+			long skipped = 0;
+			if (finished > next_release){
+				skipped = (finished - next_release) / this.period_nanos + 1;
+				next_release += skipped * this.period_nanos;
+			}
+			stats.record_pulse(started - release, finished - started, skipped);
+			release = next_release;
+		}
+		return stats;
+	}
+
+	/**
+	 * Usage: RealTimeScheduler input_file frequency_hz
+	 * Replays the trace at the given rate, discarding the outputs, and
+	 * prints the timing statistics.
+	 */
+	public static void main(String[] args) throws IOException {
+		RealTimeScheduler scheduler = new RealTimeScheduler(Double.parseDouble(args[1]));
+		Timer timer = new Timer(new CruiseControlSystem());
+		try (InputStateCursor input_states = StateInput.cursor_from_file(Paths.get(args[0]))){
+			System.out.println(scheduler.run(timer, input_states, record -> { }).format());
+		}
+	}
+}
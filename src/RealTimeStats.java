@@ -0,0 +1,88 @@
+/**
+ * The timing statistics of a RealTimeScheduler run: the distribution of
+ * release jitter and of pulse execution time, and the deadlines missed.
+ */
+public class RealTimeStats {
+	private final long period_nanos;
+	private final LatencyHistogram jitter = new LatencyHistogram();
+	private final LatencyHistogram execution = new LatencyHistogram();
+	private long pulses = 0;
+	private long missed_deadlines = 0;
+	private long skipped_releases = 0;
+	private long max_jitter_nanos = 0;
+	private long max_execution_nanos = 0;
+	private long total_execution_nanos = 0;
+
+	RealTimeStats(long period_nanos){
+		this.period_nanos = period_nanos;
+	}
+
+	void record_pulse(long jitter_nanos, long execution_nanos, long skipped){
+		this.pulses++;
+		this.jitter.record(jitter_nanos);
+		this.execution.record(execution_nanos);
+		this.max_jitter_nanos = Math.max(this.max_jitter_nanos, jitter_nanos);
+		this.max_execution_nanos = Math.max(this.max_execution_nanos, execution_nanos);
+		this.total_execution_nanos += execution_nanos;
+		if (skipped > 0){
+			this.missed_deadlines++;
+			this.skipped_releases += skipped;
+		}
+	}
+
+	public long get_pulses(){
+		return this.pulses;
+	}
+	public long get_missed_deadlines(){
+		return this.missed_deadlines;
+	}
+	public long get_skipped_releases(){
+		return this.skipped_releases;
+	}
+	public long get_max_jitter_nanos(){
+		return this.max_jitter_nanos;
+	}
+	public long get_max_execution_nanos(){
+		return this.max_execution_nanos;
+	}
+
+	public double get_mean_execution_nanos(){
+		return this.pulses == 0 ? 0.0 : (double) this.total_execution_nanos / this.pulses;
+	}
+
+	/**
+	 * The bucket upper bound at or below which at least the given fraction
+	 * of the recorded durations fall, i.e. a percentile rounded up to a
+	 * power of two.
+	 */
+	private long percentile_nanos(LatencyHistogram histogram, double fraction){
+		long target = (long) Math.ceil(this.pulses * fraction);
+		long cumulative = 0;
+		for (int bucket = 0; bucket < LatencyHistogram.BUCKETS; bucket++){
+			cumulative += histogram.count(bucket);
+			if (cumulative >= target){
+				return LatencyHistogram.upper_bound_nanos(bucket);
+			}
+		}
+		return LatencyHistogram.upper_bound_nanos(LatencyHistogram.BUCKETS - 1);
+	}
+
+	public long jitter_percentile_nanos(double fraction){
+		return this.percentile_nanos(this.jitter, fraction);
+	}
+
+	public long execution_percentile_nanos(double fraction){
+		return this.percentile_nanos(this.execution, fraction);
+	}
+
+	public String format(){
+		double mean_execution = this.get_mean_execution_nanos();
+		return String.format("period %d ns, %d pulses, %d missed deadlines, %d skipped releases%n"
+							 + "jitter: p50 <= %d ns, p99 <= %d ns, max %d ns%n"
+							 + "execution: mean %.0f ns, p99 <= %d ns, max %d ns (%.2f%% of period)",
+							 this.period_nanos, this.pulses, this.missed_deadlines, this.skipped_releases,
+							 this.percentile_nanos(this.jitter, 0.5), this.percentile_nanos(this.jitter, 0.99),
+							 this.max_jitter_nanos, mean_execution, this.percentile_nanos(this.execution, 0.99),
+							 this.max_execution_nanos, 100.0 * this.max_execution_nanos / this.period_nanos);
+	}
+}
@@ -0,0 +1,178 @@
+/**
+ * Replays one long trace on several cores. The trace is cut into segments
+ * and every segment is replayed in parallel from a predicted starting
+ * state. Afterwards each prediction is checked in order against the real
+ * end state of the segment before it.
+ *
+ * The state carried from one pulse to the next is small. For the car it
+ * is exactly what a PulseRecord holds, and for the CCS it is a CcsState.
+ * A segment's starting state is predicted by replaying the `warm_up`
+ * input states just before it from a freshly reset car and CCS. Sensors
+ * take their values from the input, and the CCS settles back into the
+ * same state after most disengaging events (engine off, braking, the stop
+ * button). So by the end of the warm-up the predicted state has usually
+ * converged on the real one. The exception is a latch which never
+ * resets, such as is_ccs_already_on in CruiseControlSystem. Its
+ * prediction is wrong whenever the CCS first engaged before the warm-up
+ * and not again during it.
+ *
+ * A segment whose prediction was wrong is replayed again from the real
+ * state, and its end state is then checked against the next prediction.
+ * The outputs are identical to a sequential replay whatever the
+ * predictions were. Only the speed depends on them.
+ */
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+
+public class SpeculativeReplay {
+	private static final int DEFAULT_WARM_UP = 4096;
+
+	private static class Segment {
+		final long start;
+		final long end;
+		final PulseRecordBuffer outputs;
+		// The state the segment was replayed from, and the state it ended in.
+		final PulseRecord start_record = new PulseRecord();
+		final CcsState start_ccs_state = new CcsState();
+		final PulseRecord end_record = new PulseRecord();
+		final CcsState end_ccs_state = new CcsState();
+
+		Segment(long start, long end){
+			this.start = start;
+			this.end = end;
+			this.outputs = new PulseRecordBuffer((int) Math.min(end - start, Integer.MAX_VALUE - 8));
+		}
+	}
+
+	private final ForkJoinPool pool;
+	private final int segment_count;
+	private final int warm_up;
+	private int mispredictions = 0;
+
+	public SpeculativeReplay(){
+		this(ForkJoinPool.commonPool(), 4 * ForkJoinPool.commonPool().getParallelism(), DEFAULT_WARM_UP);
+	}
+
+	/**
+	 * @param warm_up how many input states before a segment to replay when
+	 *                predicting its starting state
+	 */
+	public SpeculativeReplay(ForkJoinPool pool, int segment_count, int warm_up){
+		this.pool = pool;
+		this.segment_count = Math.max(1, segment_count);
+		this.warm_up = Math.max(0, warm_up);
+	}
+
+	/**
+	 * The number of segments of the last replay which had to be run again.
+	 */
+	public int get_mispredictions(){
+		return this.mispredictions;
+	}
+
+	/**
+	 * Replays the whole trace, handing every output to the sink in order
+	 * once all segments have been validated.
+	 * @return the number of pulses
+	 */
+	public long record_from_input(List<TraceColumns> trace, Supplier<? extends IRestorableCruiseControlSystem> ccs_factory,
+								  PulseSink sink) throws IOException {
+		long rows = TraceColumnsInput.count_rows(trace);
+		long segment_rows = Math.max(this.warm_up + 1, (rows + this.segment_count - 1) / this.segment_count);
+		List<Segment> segments = new ArrayList<Segment>();
+		for (long start = 0; start < rows; start += segment_rows){
+			segments.add(new Segment(start, Math.min(rows, start + segment_rows)));
+		}
+
+		List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(segments.size());
+		for (Segment segment : segments){
+			tasks.add(this.pool.submit(() -> this.speculate(trace, ccs_factory.get(), segment)));
+		}
+		for (ForkJoinTask<?> task : tasks){
+			task.join();
+		}
+
+		this.mispredictions = 0;
+		for (int i = 1; i < segments.size(); i++){
+			Segment previous = segments.get(i - 1);
+			Segment segment = segments.get(i);
+			if (!segment.start_record.same_as(previous.end_record)
+				|| !segment.start_ccs_state.same_as(previous.end_ccs_state)){
+				this.mispredictions++;
+				segment.start_record.copy_from(previous.end_record);
+				segment.start_ccs_state.copy_from(previous.end_ccs_state);
+				segment.outputs.clear();
+				replay(trace, ccs_factory.get(), segment);
+			}
+		}
+
+		PulseRecord record = new PulseRecord();
+		for (Segment segment : segments){
+			for (int row = 0; row < segment.outputs.size(); row++){
+				segment.outputs.get(row, record);
+				sink.accept(record);
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * Predicts the starting state of a segment by replaying the warm-up
+	 * before it, then replays the segment from that state.
+	 */
+	private void speculate(List<TraceColumns> trace, IRestorableCruiseControlSystem ccs, Segment segment){
+		Car car = new Car();
+		PackedInputState state = new PackedInputState();
+		TraceColumnsInput warm_up = new TraceColumnsInput(trace, Math.max(0, segment.start - this.warm_up), segment.start);
+		while (warm_up.next(state)){
+			car.update_states(state);
+			ccs.pulse(car);
+		}
+		car.record_state(segment.start_record);
+		ccs.capture_state(segment.start_ccs_state);
+		replay(trace, ccs, segment);
+	}
+
+	/**
+	 * Replays a segment from its starting state.
+	 */
+	private static void replay(List<TraceColumns> trace, IRestorableCruiseControlSystem ccs, Segment segment){
+		Car car = new Car();
+		car.restore_state(segment.start_record);
+		ccs.restore_state(segment.start_ccs_state);
+		PackedInputState state = new PackedInputState();
+		TraceColumnsInput input_states = new TraceColumnsInput(trace, segment.start, segment.end);
+		while (input_states.next(state)){
+			car.update_states(state);
+			ccs.pulse(car);
+			car.record_state(segment.end_record);
+			segment.outputs.accept(segment.end_record);
+		}
+		ccs.capture_state(segment.end_ccs_state);
+	}
+
+	/**
+	 * Replays the trace given on the command line, writing the outputs to
+	 * standard output and how many segments mispredicted to standard error.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1){
+			System.err.println("usage: SpeculativeReplay trace_file");
+			System.exit(2);
+		}
+		List<TraceColumns> trace = new ParallelTraceParser().parse(Paths.get(args[0]));
+		SpeculativeReplay replay = new SpeculativeReplay();
+		PulseRecordWriter output = new PulseRecordWriter(Channels.newChannel(System.out));
+		long start = System.nanoTime();
+		long pulses = replay.record_from_input(trace, CruiseControlSystem::new, output);
+		output.flush();
+		System.err.println(String.format("%d pulses in %.1f ms, %d mispredicted segments",
+										 pulses, (System.nanoTime() - start) / 1e6, replay.get_mispredictions()));
+	}
+}
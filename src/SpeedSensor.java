@@ -7,6 +7,11 @@ public class SpeedSensor {
 	public void update_state(InputState new_state){
 		this.speed = new_state.parseDouble(new_state.speed_sensor, this.speed);
 	}
+	public void update_state(PackedInputState new_state){
+		if (new_state.is_present(PackedInputState.SPEED_SENSOR)){
+			this.speed = new_state.speed_sensor;
+		}
+	}
 	public double get_speed(){
 		return this.speed;
 	}
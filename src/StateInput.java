@@ -7,12 +7,15 @@
  */
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.stream.Stream;
 
 public final class StateInput {
 	public static List<InputState> input_states_from_strings(List<String> lines){
@@ -28,8 +31,95 @@ public final class StateInput {
 	}
 		
 	public static List<InputState>input_states_from_file (Path filename) throws IOException{
+		CcsEvents.TraceParseEvent event = new CcsEvents.TraceParseEvent();
+		event.begin();
 		List<String> input_lines = Files.readAllLines(filename, StandardCharsets.UTF_8);
-		return input_states_from_strings(input_lines);
+		List<InputState> input_states = input_states_from_strings(input_lines);
+		event.end();
+		if (event.shouldCommit()){
+			event.trace = filename.toString();
+			event.states = input_states.size();
+			event.commit();
+		}
+		return input_states;
+	}
+
+	/**
+	 * Decodes each line once into its primitive form. The resulting states
+	 * hold no strings, so a trace retains a fraction of the heap of the
+	 * equivalent list of InputState objects.
+	 */
+	public static List<PackedInputState> packed_states_from_strings(List<String> lines){
+		ArrayList<PackedInputState> input_states = new ArrayList<PackedInputState>(lines.size());
+		long line_number = 0;
+		for (String s : lines){
+			PackedInputState state = new PackedInputState();
+			StateLineDecoder.decode_line(s, state, ++line_number);
+			input_states.add(state);
+		}
+		return input_states;
+	}
+	public static List<PackedInputState> packed_states_from_strings(String[] lines){
+		return packed_states_from_strings(Arrays.asList(lines));
+	}
+
+	public static List<PackedInputState> packed_states_from_file(Path filename) throws IOException{
+		CcsEvents.TraceParseEvent event = new CcsEvents.TraceParseEvent();
+		event.begin();
+		ArrayList<PackedInputState> input_states = new ArrayList<PackedInputState>();
+		try (InputStateCursor cursor = cursor_from_file(filename)){
+			PackedInputState state = new PackedInputState();
+			while (cursor.next(state)){
+				input_states.add(state);
+				state = new PackedInputState();
+			}
+		}
+		event.end();
+		if (event.shouldCommit()){
+			event.trace = filename.toString();
+			event.states = input_states.size();
+			event.commit();
+		}
+		return input_states;
+	}
+
+	/**
+	 * Opens a trace file for replay, in either the text format or the binary
+	 * format described in BinaryTrace, without reading it into memory.
+	 */
+	public static InputStateCursor cursor_from_file(Path filename) throws IOException{
+		if (BinaryTrace.is_binary(filename)){
+			return new BinaryStateInput(filename);
+		}
+		return new MappedStateInput(filename);
+	}
+
+	/**
+	 * Decodes the lines one at a time into the caller's PackedInputState,
+	 * rather than creating an InputState for each of them up front.
+	 */
+	public static InputStateCursor cursor_from_strings(List<String> lines){
+		return new StringStateInput(lines);
+	}
+	public static InputStateCursor cursor_from_strings(String[] lines){
+		return new StringStateInput(lines);
+	}
+
+	/**
+	 * Reads a text trace from a stream, such as standard input, which cannot
+	 * be mapped.
+	 */
+	public static InputStateCursor cursor_from_stream(InputStream stream){
+		return new StreamStateInput(stream);
+	}
+
+	/**
+	 * Lazily reads the input states from a file, one line at a time, so that
+	 * arbitrarily long traces can be replayed without holding them in memory.
+	 * The returned stream keeps the file open and must be closed by the caller.
+	 */
+	public static Stream<InputState> input_states_stream(Path filename) throws IOException{
+		return Files.lines(filename, StandardCharsets.UTF_8).map(InputState::new);
 	}
 
 }
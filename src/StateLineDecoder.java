@@ -0,0 +1,135 @@
+/**
+ * Decodes state lines in the format described in the InputState class
+ * straight from their bytes into a PackedInputState, without creating any
+ * intermediate strings. The decoding follows InputState exactly: words are
+ * separated by single spaces, words after the ninth are ignored, booleans
+ * are read as by Boolean.parseBoolean and doubles as by Double.parseDouble.
+ */
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public final class StateLineDecoder {
+	public static final int FIELD_COUNT = 9;
+
+	// The powers of ten which, along with every long below 2^53, are exactly
+	// representable as doubles, so that a single division is correctly rounded.
+	private static final double[] POWERS_OF_TEN = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+	};
+	private static final int MAX_FAST_DIGITS = 15;
+
+	private StateLineDecoder(){
+	}
+
+	/**
+	 * Decodes the line held in bytes [start, end) of `buffer`, which must not
+	 * include the line terminator.
+	 * @param line_number   only used to report malformed lines
+	 */
+	public static void decode_line(ByteBuffer buffer, int start, int end, PackedInputState state, long line_number){
+		// String.split drops trailing empty words, so trailing spaces are ignored.
+		while (end > start && buffer.get(end - 1) == ' '){
+			end--;
+		}
+		state.clear();
+		int field = 0;
+		int word_start = start;
+		for (int i = start; i <= end && field < FIELD_COUNT; i++){
+			if (i == end || buffer.get(i) == ' '){
+				decode_word(buffer, word_start, i, field, state);
+				field++;
+				word_start = i + 1;
+			}
+		}
+		if (field < FIELD_COUNT){
+			throw new IllegalArgumentException("line " + line_number + ": expected " + FIELD_COUNT
+											   + " fields but found " + field);
+		}
+	}
+
+	/**
+	 * Decodes a line held as a string.
+	 */
+	public static void decode_line(String line, PackedInputState state, long line_number){
+		byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+		decode_line(ByteBuffer.wrap(bytes), 0, bytes.length, state, line_number);
+	}
+
+	private static void decode_word(ByteBuffer buffer, int start, int end, int field, PackedInputState state){
+		if (end - start == 1 && buffer.get(start) == '-'){
+			return;
+		}
+		state.present |= 1 << field;
+		switch (field){
+		case 0: state.engine_status = parse_boolean(buffer, start, end); break;
+		case 1: state.speed_sensor = parse_double(buffer, start, end); break;
+		case 2: state.brake_pedal = parse_double(buffer, start, end); break;
+		case 3: state.accelerator_pedal = parse_double(buffer, start, end); break;
+		case 4: state.start_ccs_button = parse_boolean(buffer, start, end); break;
+		case 5: state.stop_ccs_button = parse_boolean(buffer, start, end); break;
+		case 6: state.start_acceleration_button = parse_boolean(buffer, start, end); break;
+		case 7: state.stop_acceleration_button = parse_boolean(buffer, start, end); break;
+		default: state.resume_button = parse_boolean(buffer, start, end); break;
+		}
+	}
+
+	/**
+	 * As Boolean.parseBoolean: true exactly when the word is "true", ignoring case.
+	 */
+	public static boolean parse_boolean(ByteBuffer buffer, int start, int end){
+		if (end - start != 4){
+			return false;
+		}
+		return (buffer.get(start) | 0x20) == 't'
+			&& (buffer.get(start + 1) | 0x20) == 'r'
+			&& (buffer.get(start + 2) | 0x20) == 'u'
+			&& (buffer.get(start + 3) | 0x20) == 'e';
+	}
+
+	/**
+	 * As Double.parseDouble. Plain decimals of up to fifteen digits, which is
+	 * all that traces normally contain, are decoded in place; anything else
+	 * (exponents, very long fractions, NaN and so on) falls back to the JDK.
+	 */
+	public static double parse_double(ByteBuffer buffer, int start, int end){
+		int i = start;
+		boolean negative = false;
+		if (i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')){
+			negative = buffer.get(i) == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int fraction_digits = 0;
+		boolean seen_point = false;
+		for (; i < end; i++){
+			byte b = buffer.get(i);
+			if (b >= '0' && b <= '9'){
+				if (++digits > MAX_FAST_DIGITS){
+					return parse_double_slowly(buffer, start, end);
+				}
+				mantissa = mantissa * 10 + (b - '0');
+				if (seen_point){
+					fraction_digits++;
+				}
+			} else if (b == '.' && !seen_point){
+				seen_point = true;
+			} else {
+				return parse_double_slowly(buffer, start, end);
+			}
+		}
+		if (digits == 0){
+			return parse_double_slowly(buffer, start, end);
+		}
+		double value = mantissa / POWERS_OF_TEN[fraction_digits];
+		return negative ? -value : value;
+	}
+
+	private static double parse_double_slowly(ByteBuffer buffer, int start, int end){
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++){
+			bytes[i] = buffer.get(start + i);
+		}
+		return Double.parseDouble(new String(bytes, StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,317 @@
+/**
+ * A table driven implementation of the same cruise control rules as
+ * CruiseControlSystem. Everything the ten checks of CruiseControlSystem
+ * test is either one of nine boolean input conditions (the five dashboard
+ * buttons, engine on, brake on, accelerator on and speed >= 40) or one of
+ * its latches. The latches are kept as an explicit State. For every
+ * combination of state and conditions the checks which fire, the order of
+ * their throttle operations, the final dashboard buttons and the next state
+ * are all fixed, so they are worked out once into a transition table and a
+ * pulse is one table lookup followed by a short straight-line program of
+ * throttle operations. The table is built by stepping through the checks
+ * of CruiseControlSystem in order, so the outputs are identical to it.
+ */
+public class StateMachineCruiseControlSystem implements IRestorableCruiseControlSystem {
+	/**
+	 * The latches of the cruise control. CruiseControlSystem sets
+	 * is_ccs_already_on (together with throttle_value_was_recorded) when the
+	 * CCS first engages and never clears it, and latches
+	 * was_accelerating_by_pedal when the pedal is pressed until the CCS is
+	 * stopped. The pedal latch can be set before the CCS has ever engaged.
+	 */
+	public enum State {
+		OFF, OFF_PEDAL_LATCHED, ENGAGED, ENGAGED_PEDAL_LATCHED;
+
+		boolean is_engaged(){
+			return this == ENGAGED || this == ENGAGED_PEDAL_LATCHED;
+		}
+
+		boolean is_pedal_latched(){
+			return this == OFF_PEDAL_LATCHED || this == ENGAGED_PEDAL_LATCHED;
+		}
+
+		static State of(boolean engaged, boolean pedal_latched){
+			if (engaged){
+				return pedal_latched ? ENGAGED_PEDAL_LATCHED : ENGAGED;
+			}
+			return pedal_latched ? OFF_PEDAL_LATCHED : OFF;
+		}
+	}
+
+	/**
+	 * What the cruise control is doing from the driver's point of view,
+	 * derived from the state and the dashboard after a pulse.
+	 */
+	public enum Mode {
+		OFF, CRUISING, PEDAL_OVERRIDE, BUTTON_ACCELERATING, SUSPENDED
+	}
+
+	// The input conditions, which with the state make up the table index.
+	private static final int START_CCS = 1 << 0;
+	private static final int STOP_CCS = 1 << 1;
+	private static final int START_ACCELERATING = 1 << 2;
+	private static final int STOP_ACCELERATING = 1 << 3;
+	private static final int RESUME = 1 << 4;
+	private static final int ENGINE_ON = 1 << 5;
+	private static final int BRAKE_ON = 1 << 6;
+	private static final int ACCELERATOR_ON = 1 << 7;
+	private static final int SPEED_AT_LEAST_40 = 1 << 8;
+	private static final int CONDITION_BITS = 9;
+	private static final int BUTTONS = START_CCS | STOP_CCS | START_ACCELERATING | STOP_ACCELERATING | RESUME;
+
+	// The throttle operations of a program, four bits each, run from the
+	// lowest nibble up; T is the throttle, L the last throttle value during
+	// cruising and R the recorded throttle value.
+	private static final int OP_END = 0;
+	private static final int OP_MAX_SPEED = 1;              // T = max(T, speed / 50)
+	private static final int OP_MAX_ACCELERATOR = 2;        // T = max(T, accelerator)
+	private static final int OP_MAX_ZERO = 3;               // T = max(T, 0)
+	private static final int OP_MAX_LAST = 4;               // T = max(T, L)
+	private static final int OP_MAX_BUTTON = 5;             // T = max(T, (speed + 7.2) / 50)
+	private static final int OP_MAX_RECORDED = 6;           // T = max(T, R)
+	private static final int OP_MAX_SPEED_OR_ACCELERATOR = 7; // T = max(T, max(speed / 50, accelerator))
+	private static final int OP_LAST_FROM_THROTTLE = 8;     // L = T
+	private static final int OP_RECORDED_FROM_THROTTLE = 9; // R = T
+	private static final int OP_LAST_FROM_RECORDED = 10;    // L = R
+	private static final int MAX_PROGRAM_LENGTH = 16;
+
+	private static final int TABLE_SIZE = State.values().length << CONDITION_BITS;
+	private static final State[] STATES = State.values();
+	private static final long[] PROGRAMS = new long[TABLE_SIZE];
+	private static final byte[] NEXT_STATES = new byte[TABLE_SIZE];
+	private static final byte[] NEXT_BUTTONS = new byte[TABLE_SIZE];
+	private static final short[] FIRED_RULES = new short[TABLE_SIZE];
+
+	static {
+		for (State state : STATES){
+			for (int conditions = 0; conditions < (1 << CONDITION_BITS); conditions++){
+				build_transition(state, conditions);
+			}
+		}
+	}
+
+	/**
+	 * Accumulates the throttle program of a transition.
+	 */
+	private static class ProgramBuilder {
+		private long program = 0L;
+		private int length = 0;
+
+		void add(int op){
+			if (this.length == MAX_PROGRAM_LENGTH){
+				throw new IllegalStateException("throttle program longer than " + MAX_PROGRAM_LENGTH);
+			}
+			this.program |= (long) op << (4 * this.length++);
+		}
+	}
+
+	/**
+	 * Steps through the checks of CruiseControlSystem.pulse, in the same
+	 * order, for one state and combination of conditions.
+	 */
+	private static void build_transition(State state, int conditions){
+		boolean start_ccs = (conditions & START_CCS) != 0;
+		boolean stop_ccs = (conditions & STOP_CCS) != 0;
+		boolean start_accelerating = (conditions & START_ACCELERATING) != 0;
+		boolean stop_accelerating = (conditions & STOP_ACCELERATING) != 0;
+		boolean resume = (conditions & RESUME) != 0;
+		boolean engine_on = (conditions & ENGINE_ON) != 0;
+		boolean brake_on = (conditions & BRAKE_ON) != 0;
+		boolean accelerator_on = (conditions & ACCELERATOR_ON) != 0;
+		boolean speed_at_least_40 = (conditions & SPEED_AT_LEAST_40) != 0;
+		boolean engaged = state.is_engaged();
+		boolean pedal_latched = state.is_pedal_latched();
+		ProgramBuilder program = new ProgramBuilder();
+		int fired = 0;
+
+		// checkCCSStartButton
+		if (start_ccs && engine_on && speed_at_least_40 && !brake_on){
+			fired |= CcsRule.START_CCS.bit();
+			resume = false;
+			program.add(OP_MAX_SPEED);
+			engaged = true;
+			program.add(OP_LAST_FROM_THROTTLE);
+		} else {
+			start_ccs = stop_ccs = start_accelerating = stop_accelerating = false;
+			program.add(OP_MAX_ACCELERATOR);
+		}
+		// checkCCSStopButton
+		if (stop_ccs){
+			fired |= CcsRule.STOP_CCS.bit();
+			pedal_latched = false;
+			program.add(OP_LAST_FROM_THROTTLE);
+			program.add(OP_MAX_ACCELERATOR);
+			start_ccs = stop_ccs = start_accelerating = stop_accelerating = false;
+		}
+		// checkBrakePedalWhileCCSisOn
+		if (brake_on && engaged){
+			fired |= CcsRule.BRAKE_DISENGAGE.bit();
+			program.add(OP_MAX_ZERO);
+			start_ccs = stop_ccs = start_accelerating = stop_accelerating = false;
+		}
+		// checkEngineWhileCCSisOn
+		if (!engine_on && engaged){
+			fired |= CcsRule.ENGINE_OFF_DISENGAGE.bit();
+			start_ccs = stop_ccs = start_accelerating = stop_accelerating = false;
+			program.add(OP_MAX_ZERO);
+		}
+		// checkAcceleratingByPedalWhileCCSisOn
+		if (accelerator_on && !start_accelerating && !pedal_latched){
+			fired |= CcsRule.PEDAL_OVERRIDE.bit();
+			pedal_latched = true;
+			program.add(OP_LAST_FROM_THROTTLE);
+			program.add(OP_MAX_ACCELERATOR);
+		}
+		// checkStartAcceleratingButtonWhileAcceleratingByPedal
+		if (accelerator_on && start_accelerating){
+			fired |= CcsRule.PEDAL_WITH_ACCELERATION_BUTTON.bit();
+			program.add(OP_MAX_SPEED_OR_ACCELERATOR);
+			program.add(OP_LAST_FROM_THROTTLE);
+		}
+		// setThrottleBackAfterAcceleratingByPedal
+		if (pedal_latched && !accelerator_on){
+			fired |= CcsRule.PEDAL_RELEASED.bit();
+			program.add(OP_MAX_LAST);
+		}
+		// checkAccelerationByButton
+		if (start_accelerating){
+			fired |= CcsRule.BUTTON_ACCELERATION.bit();
+			program.add(OP_MAX_BUTTON);
+			program.add(OP_RECORDED_FROM_THROTTLE);
+			program.add(OP_LAST_FROM_RECORDED);
+		}
+		// checkStopAccelerationByButton
+		if (stop_accelerating){
+			fired |= CcsRule.STOP_ACCELERATION.bit();
+			program.add(OP_MAX_RECORDED);
+			start_accelerating = stop_accelerating = false;
+		}
+		// checkResumeCruising; throttle_value_was_recorded is set exactly
+		// when is_ccs_already_on is, so it is the engaged latch.
+		if (!start_ccs && resume){
+			boolean was_recorded = engaged;
+			fired |= CcsRule.RESUME.bit();
+			start_ccs = true;
+			resume = false;
+			program.add(OP_MAX_SPEED);
+			engaged = true;
+			program.add(OP_LAST_FROM_THROTTLE);
+			if (was_recorded){
+				program.add(OP_MAX_RECORDED);
+			}
+		}
+
+		int index = state.ordinal() << CONDITION_BITS | conditions;
+		PROGRAMS[index] = program.program;
+		NEXT_STATES[index] = (byte) State.of(engaged, pedal_latched).ordinal();
+		NEXT_BUTTONS[index] = (byte) ((start_ccs ? START_CCS : 0)
+									| (stop_ccs ? STOP_CCS : 0)
+									| (start_accelerating ? START_ACCELERATING : 0)
+									| (stop_accelerating ? STOP_ACCELERATING : 0)
+									| (resume ? RESUME : 0));
+		FIRED_RULES[index] = (short) fired;
+	}
+
+	private State state = State.OFF;
+	private double last_throttle_value_during_cruising = 0.0;
+	private double recorded_throttle_value = 0.0;
+	private int fired_rules = 0;
+
+	private static int conditions(Car car){
+		Dashboard dashboard = car.dashboard;
+		return (dashboard.get_start_ccs() ? START_CCS : 0)
+			 | (dashboard.get_stop_ccs() ? STOP_CCS : 0)
+			 | (dashboard.get_start_accelerating() ? START_ACCELERATING : 0)
+			 | (dashboard.get_stop_accelerating() ? STOP_ACCELERATING : 0)
+			 | (dashboard.get_resume() ? RESUME : 0)
+			 | (car.engine_sensor.is_engine_on() ? ENGINE_ON : 0)
+			 | (car.brake_pedal.is_brake_on() ? BRAKE_ON : 0)
+			 | (car.accelerator_pedal.is_accelerator_on() ? ACCELERATOR_ON : 0)
+			 | (car.speed_sensor.get_speed() >= 40.0 ? SPEED_AT_LEAST_40 : 0);
+	}
+
+	@Override
+	public void pulse(Car car){
+		int index = this.state.ordinal() << CONDITION_BITS | conditions(car);
+		double speed = car.speed_sensor.get_speed();
+		double accelerator = car.accelerator_pedal.get_accelerator();
+		double throttle = car.throttle.getThrottlePosition();
+		double last = this.last_throttle_value_during_cruising;
+		double recorded = this.recorded_throttle_value;
+		for (long program = PROGRAMS[index]; program != 0L; program >>>= 4){
+			switch ((int) (program & 0xF)){
+			case OP_MAX_SPEED: throttle = Math.max(throttle, speed / 50.0); break;
+			case OP_MAX_ACCELERATOR: throttle = Math.max(throttle, accelerator); break;
+			case OP_MAX_ZERO: throttle = Math.max(throttle, 0.0); break;
+			case OP_MAX_LAST: throttle = Math.max(throttle, last); break;
+			case OP_MAX_BUTTON: throttle = Math.max(throttle, (speed + 7.2) / 50.0); break;
+			case OP_MAX_RECORDED: throttle = Math.max(throttle, recorded); break;
+			case OP_MAX_SPEED_OR_ACCELERATOR: throttle = Math.max(throttle, Math.max(speed / 50.0, accelerator)); break;
+			case OP_LAST_FROM_THROTTLE: last = throttle; break;
+			case OP_RECORDED_FROM_THROTTLE: recorded = throttle; break;
+			default: last = recorded; break;
+			}
+		}
+		// The throttle only ever rises, so this sets it to the program's result.
+		car.throttle.setThrottlePosition(throttle);
+		int buttons = NEXT_BUTTONS[index];
+		car.dashboard.set_start_ccs((buttons & START_CCS) != 0);
+		car.dashboard.set_stop_ccs((buttons & STOP_CCS) != 0);
+		car.dashboard.set_start_accelerating((buttons & START_ACCELERATING) != 0);
+		car.dashboard.set_stop_accelerating((buttons & STOP_ACCELERATING) != 0);
+		car.dashboard.set_resume((buttons & RESUME) != 0);
+		this.last_throttle_value_during_cruising = last;
+		this.recorded_throttle_value = recorded;
+		this.state = STATES[NEXT_STATES[index]];
+		this.fired_rules = FIRED_RULES[index];
+	}
+
+	@Override
+	public int get_fired_rules(){
+		return this.fired_rules;
+	}
+
+	@Override
+	public void capture_state(CcsState state){
+		state.last_throttle_value_during_cruising = this.last_throttle_value_during_cruising;
+		state.was_accelerating_by_pedal = this.state.is_pedal_latched();
+		state.is_ccs_already_on = this.state.is_engaged();
+		state.recorded_throttle_value = this.recorded_throttle_value;
+		state.throttle_value_was_recorded = this.state.is_engaged();
+	}
+
+	/**
+	 * Restores a captured state. The throttle value counts as recorded
+	 * whenever the CCS has engaged, as it does in CruiseControlSystem.
+	 */
+	@Override
+	public void restore_state(CcsState state){
+		this.last_throttle_value_during_cruising = state.last_throttle_value_during_cruising;
+		this.recorded_throttle_value = state.recorded_throttle_value;
+		this.state = State.of(state.is_ccs_already_on, state.was_accelerating_by_pedal);
+	}
+
+	public State get_state(){
+		return this.state;
+	}
+
+	/**
+	 * The mode of the cruise control given the car it controls, as of the
+	 * end of the latest pulse.
+	 */
+	public Mode get_mode(Car car){
+		if (!this.state.is_engaged()){
+			return Mode.OFF;
+		}
+		if (!car.dashboard.get_start_ccs()){
+			return Mode.SUSPENDED;
+		}
+		if (car.dashboard.get_start_accelerating()){
+			return Mode.BUTTON_ACCELERATING;
+		}
+		if (this.state.is_pedal_latched() && car.accelerator_pedal.is_accelerator_on()){
+			return Mode.PEDAL_OVERRIDE;
+		}
+		return Mode.CRUISING;
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ * Reads the input states of a text trace from any InputStream, such as
+ * standard input or a pipe, which cannot be memory mapped. The stream is
+ * read in large chunks into one reusable buffer and each line is decoded
+ * in place with StateLineDecoder, so no strings or state objects are
+ * created per line and nothing but the current chunk is retained. The
+ * buffer only grows if a single line is longer than it.
+ */
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+public class StreamStateInput implements InputStateCursor {
+	static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	private final InputStream stream;
+	private ByteBuffer buffer;
+	// The unread bytes are [position, limit) of the buffer.
+	private int position = 0;
+	private int limit = 0;
+	private boolean end_of_stream = false;
+	// Set after a line ending in '\r', whose '\n' may be in the next chunk.
+	private boolean skip_line_feed = false;
+	private long line_number = 0;
+
+	public StreamStateInput(InputStream stream){
+		this(stream, DEFAULT_BUFFER_SIZE);
+	}
+
+	public StreamStateInput(InputStream stream, int buffer_size){
+		this.stream = stream;
+		this.buffer = ByteBuffer.allocate(Math.max(16, buffer_size));
+	}
+
+	@Override
+	public boolean next(PackedInputState state) throws IOException {
+		byte[] bytes = this.buffer.array();
+		int scanned = this.position;
+		while (true){
+			if (this.skip_line_feed && this.position < this.limit){
+				this.skip_line_feed = false;
+				if (bytes[this.position] == '\n'){
+					this.position++;
+					scanned = this.position;
+				}
+			}
+			// As BufferedReader.readLine, a line ends at '\n', '\r' or "\r\n".
+			for (int end = scanned; end < this.limit; end++){
+				byte b = bytes[end];
+				if (b == '\n' || b == '\r'){
+					this.decode(state, end);
+					this.position = end + 1;
+					this.skip_line_feed = b == '\r';
+					return true;
+				}
+			}
+			scanned = this.limit;
+			if (this.end_of_stream){
+				if (this.position == this.limit){
+					return false;
+				}
+				this.decode(state, this.limit);
+				this.position = this.limit;
+				return true;
+			}
+			scanned -= this.position;
+			this.fill();
+			bytes = this.buffer.array();
+		}
+	}
+
+	private void decode(PackedInputState state, int end){
+		this.line_number++;
+		StateLineDecoder.decode_line(this.buffer, this.position, end, state, this.line_number);
+	}
+
+	/**
+	 * Moves the unread bytes to the front of the buffer, growing it if they
+	 * fill it, and reads as much more of the stream as fits.
+	 */
+	private void fill() throws IOException {
+		int unread = this.limit - this.position;
+		byte[] bytes = this.buffer.array();
+		if (unread == bytes.length){
+			ByteBuffer larger = ByteBuffer.allocate(2 * bytes.length);
+			System.arraycopy(bytes, this.position, larger.array(), 0, unread);
+			this.buffer = larger;
+			bytes = larger.array();
+		} else {
+			System.arraycopy(bytes, this.position, bytes, 0, unread);
+		}
+		this.position = 0;
+		this.limit = unread;
+		int read = this.stream.read(bytes, this.limit, bytes.length - this.limit);
+		if (read < 0){
+			this.end_of_stream = true;
+		} else {
+			this.limit += read;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.stream.close();
+	}
+}
@@ -0,0 +1,53 @@
+/**
+ * Decodes the input states of a list of lines one at a time, as the
+ * cursors over files do, instead of creating an InputState for every line
+ * up front as `StateInput.input_states_from_strings` does. Each line is
+ * copied into one reusable byte buffer and decoded in place.
+ */
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+public class StringStateInput implements InputStateCursor {
+	private final Iterator<String> lines;
+	private ByteBuffer buffer = ByteBuffer.allocate(128);
+	private long line_number = 0;
+
+	public StringStateInput(List<String> lines){
+		this.lines = lines.iterator();
+	}
+
+	public StringStateInput(String[] lines){
+		this(Arrays.asList(lines));
+	}
+
+	@Override
+	public boolean next(PackedInputState state){
+		if (!this.lines.hasNext()){
+			return false;
+		}
+		String line = this.lines.next();
+		this.line_number++;
+		int length = line.length();
+		if (length > this.buffer.capacity()){
+			this.buffer = ByteBuffer.allocate(Math.max(length, 2 * this.buffer.capacity()));
+		}
+		byte[] bytes = this.buffer.array();
+		for (int i = 0; i < length; i++){
+			char c = line.charAt(i);
+			if (c >= 0x80){
+				// Not a valid state, but leave the error message to the decoder.
+				StateLineDecoder.decode_line(line, state, this.line_number);
+				return true;
+			}
+			bytes[i] = (byte) c;
+		}
+		StateLineDecoder.decode_line(this.buffer, 0, length, state, this.line_number);
+		return true;
+	}
+
+	@Override
+	public void close(){
+	}
+}
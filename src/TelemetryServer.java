@@ -0,0 +1,540 @@
+/**
+ * Runs the CCS live on sensor input streamed over TCP. Each connection is
+ * one vehicle session with its own Car and CCS. For every input state the
+ * client sends, the session runs one pulse and replies with the resulting
+ * throttle position, so a client which waits for each reply runs in step
+ * with the CCS.
+ *
+ * A session speaks one of two protocols, chosen by its first byte:
+ * - text: input lines as in a trace file, ending with "\n" or "\r\n",
+ *   answered with the throttle as a line in the "%f" form of the output;
+ * - binary: a zero byte, then frames of BINARY_FRAME_BYTES little-endian
+ *   bytes (the present fields as a short, the boolean fields as a short
+ *   of the same bits, then the speed, brake and accelerator as doubles),
+ *   each answered with the throttle as a little-endian double.
+ * A malformed state ends the session, after the replies to the states
+ * before it.
+ *
+ * Connections are spread over a few selector threads, each serving its
+ * sessions without blocking. A session only reads more input once the
+ * replies to what it has sent so far are written, so a slow client never
+ * makes the server buffer more than one read's worth of input. The reply
+ * latency, from the read which completed an input state to the write of
+ * its reply, is kept for each session and for the server as a whole.
+ *
+ * Usage: TelemetryServer [--bind address] [port [selector_threads]]
+ * The server listens on 127.0.0.1 unless another address is given, such
+ * as 0.0.0.0 for every interface.
+ */
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+public class TelemetryServer {
+	public static final byte BINARY_HELLO = 0;
+	public static final int BINARY_FRAME_BYTES = 28;
+	public static final int BINARY_REPLY_BYTES = 8;
+
+	// Also the longest text line a session accepts.
+	private static final int INPUT_BUFFER_SIZE = 1024;
+	private static final int OUTPUT_BUFFER_SIZE = 1024;
+	// Room for the longest reply, Double.MAX_VALUE in "%f" form and "\n".
+	private static final int MAX_REPLY_BYTES = 330;
+	// How long to stop accepting after an accept fails, e.g. out of file
+	// descriptors, and how often such failures are logged at most.
+	private static final long ACCEPT_PAUSE_NANOS = 100000000L;
+	private static final long ACCEPT_LOG_INTERVAL_NANOS = 10000000000L;
+
+	private static final int UNKNOWN = 0;
+	private static final int TEXT = 1;
+	private static final int BINARY = 2;
+
+	private static final int BOOLEAN_FIELDS = PackedInputState.ENGINE_STATUS | PackedInputState.START_CCS_BUTTON
+		| PackedInputState.STOP_CCS_BUTTON | PackedInputState.START_ACCELERATION_BUTTON
+		| PackedInputState.STOP_ACCELERATION_BUTTON | PackedInputState.RESUME_BUTTON;
+
+	public static class Session {
+		private final SocketChannel channel;
+		private final SocketAddress remote_address;
+		private final Car car = new Car();
+		private final ICruiseControlSystem ccs;
+		private final PackedInputState state = new PackedInputState();
+		private final ByteBuffer input = ByteBuffer.allocate(INPUT_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		private final ByteBuffer output = ByteBuffer.allocate(OUTPUT_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		private int protocol = UNKNOWN;
+		private long lines = 0;
+		private boolean end_of_input = false;
+
+		// When the latest read completed. Input is only read once every reply
+		// is written, so each complete state in `input` arrived with it.
+		private long read_at = 0;
+		// Replies written to `output` but not yet to the channel, and when
+		// the earliest of their inputs was read.
+		private int unsent_replies = 0;
+		private long unsent_since = 0;
+
+		// Written by the session's selector thread, and read once it has closed.
+		private long pulses = 0;
+		private long latency_sum_nanos = 0;
+		private long max_latency_nanos = 0;
+		private Exception failure = null;
+
+		Session(SocketChannel channel, ICruiseControlSystem ccs) throws IOException {
+			this.channel = channel;
+			this.remote_address = channel.getRemoteAddress();
+			this.ccs = ccs;
+		}
+
+		public SocketAddress get_remote_address(){
+			return this.remote_address;
+		}
+		public long get_pulses(){
+			return this.pulses;
+		}
+		public double get_mean_latency_nanos(){
+			return this.pulses == 0 ? 0.0 : (double) this.latency_sum_nanos / this.pulses;
+		}
+		public long get_max_latency_nanos(){
+			return this.max_latency_nanos;
+		}
+		/**
+		 * Why the session was ended, or null if the client closed it.
+		 */
+		public Exception get_failure(){
+			return this.failure;
+		}
+	}
+
+	/**
+	 * A selector thread, serving its share of the sessions.
+	 */
+	private class Loop implements Runnable {
+		private final Selector selector;
+		private final Queue<SocketChannel> accepted = new ConcurrentLinkedQueue<SocketChannel>();
+		private Thread thread;
+
+		Loop() throws IOException {
+			this.selector = Selector.open();
+		}
+
+		void hand_over(SocketChannel channel){
+			this.accepted.add(channel);
+			this.selector.wakeup();
+		}
+
+		@Override
+		public void run(){
+			try {
+				while (TelemetryServer.this.running){
+					long accept_pause_millis = this == TelemetryServer.this.loops[0]
+											   ? TelemetryServer.this.accept_pause_millis() : 0;
+					if (accept_pause_millis > 0){
+						this.selector.select(accept_pause_millis);
+					} else {
+						this.selector.select();
+					}
+					this.register_accepted();
+					Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+					while (keys.hasNext()){
+						SelectionKey key = keys.next();
+						keys.remove();
+						if (!key.isValid()){
+							continue;
+						}
+						if (key.isAcceptable()){
+							TelemetryServer.this.accept_all();
+						} else {
+							TelemetryServer.this.serve((Session) key.attachment(), key);
+						}
+					}
+				}
+			} catch (IOException e){
+				System.err.println("telemetry server selector failed: " + e);
+			} finally {
+				for (SelectionKey key : this.selector.keys()){
+					if (key.attachment() instanceof Session){
+						TelemetryServer.this.close((Session) key.attachment(), key);
+					}
+				}
+				try {
+					this.selector.close();
+				} catch (IOException e){
+				}
+			}
+		}
+
+		private void register_accepted(){
+			SocketChannel channel;
+			while ((channel = this.accepted.poll()) != null){
+				try {
+					channel.configureBlocking(false);
+					channel.socket().setTcpNoDelay(true);
+					Session session = new Session(channel, TelemetryServer.this.ccs_factory.get());
+					channel.register(this.selector, SelectionKey.OP_READ, session);
+					TelemetryServer.this.open_sessions.incrementAndGet();
+					TelemetryServer.this.sessions_opened.increment();
+				} catch (IOException e){
+					try {
+						channel.close();
+					} catch (IOException ignored){
+					}
+				}
+			}
+		}
+	}
+
+	private final ServerSocketChannel server_channel;
+	private final SelectionKey accept_key;
+	private final Supplier<? extends ICruiseControlSystem> ccs_factory;
+	private final Consumer<Session> on_close;
+	private final Loop[] loops;
+	private int next_loop = 0;
+	private volatile boolean running = false;
+
+	// Only used by the first selector thread, which accepts connections.
+	private boolean accept_paused = false;
+	private long accept_resume_at = 0;
+	private long accept_failures = 0;
+	private long accept_logged_at = 0;
+
+	private final AtomicInteger open_sessions = new AtomicInteger();
+	private final LongAdder sessions_opened = new LongAdder();
+	private final LongAdder pulses = new LongAdder();
+	private final LatencyHistogram reply_latency = new LatencyHistogram();
+
+	/**
+	 * Binds to the loopback address on the given port, with a selector
+	 * thread per processor; port 0 picks a free one.
+	 */
+	public TelemetryServer(int port) throws IOException {
+		this(new InetSocketAddress("127.0.0.1", port), Runtime.getRuntime().availableProcessors(),
+			 CruiseControlSystem::new, null);
+	}
+
+	/**
+	 * @param on_close called on a selector thread with each session which
+	 *                 ends, or null
+	 */
+	public TelemetryServer(InetSocketAddress address, int selector_threads,
+						   Supplier<? extends ICruiseControlSystem> ccs_factory,
+						   Consumer<Session> on_close) throws IOException {
+		this.ccs_factory = ccs_factory;
+		this.on_close = on_close;
+		this.loops = new Loop[Math.max(1, selector_threads)];
+		for (int i = 0; i < this.loops.length; i++){
+			this.loops[i] = new Loop();
+		}
+		this.server_channel = ServerSocketChannel.open();
+		this.server_channel.bind(address, 1024);
+		this.server_channel.configureBlocking(false);
+		this.accept_key = this.server_channel.register(this.loops[0].selector, SelectionKey.OP_ACCEPT);
+	}
+
+	public void start(){
+		this.running = true;
+		for (int i = 0; i < this.loops.length; i++){
+			Thread thread = new Thread(this.loops[i], "telemetry-selector-" + i);
+			thread.setDaemon(true);
+			this.loops[i].thread = thread;
+			thread.start();
+		}
+	}
+
+	public int get_port() throws IOException {
+		return ((InetSocketAddress) this.server_channel.getLocalAddress()).getPort();
+	}
+
+	/**
+	 * Stops accepting connections and closes every session.
+	 */
+	public void stop() throws IOException {
+		this.running = false;
+		for (Loop loop : this.loops){
+			loop.selector.wakeup();
+		}
+		for (Loop loop : this.loops){
+			try {
+				loop.thread.join();
+			} catch (InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+		}
+		this.server_channel.close();
+	}
+
+	private void accept_all(){
+		try {
+			SocketChannel channel;
+			while ((channel = this.server_channel.accept()) != null){
+				this.loops[this.next_loop].hand_over(channel);
+				this.next_loop = (this.next_loop + 1) % this.loops.length;
+			}
+		} catch (IOException e){
+			// Such as running out of file descriptors, which the sessions
+			// already open should survive. The connection stays pending, so
+			// the server channel stays ready: stop selecting it for a while
+			// rather than spinning on it, and retry once that has passed.
+			long now = System.nanoTime();
+			this.accept_paused = true;
+			this.accept_resume_at = now + ACCEPT_PAUSE_NANOS;
+			this.accept_key.interestOps(0);
+			this.accept_failures++;
+			if (this.accept_logged_at == 0 || now - this.accept_logged_at >= ACCEPT_LOG_INTERVAL_NANOS){
+				System.err.println("telemetry server could not accept a connection ("
+								   + this.accept_failures + " times since last reported): " + e);
+				this.accept_failures = 0;
+				this.accept_logged_at = now;
+			}
+		}
+	}
+
+	/**
+	 * How long accepting stays paused after a failed accept, resuming it
+	 * once that has passed.
+	 * @return the milliseconds left, or 0 if accepting is not paused
+	 */
+	private long accept_pause_millis(){
+		if (!this.accept_paused){
+			return 0;
+		}
+		long remaining = this.accept_resume_at - System.nanoTime();
+		if (remaining <= 0){
+			this.accept_paused = false;
+			this.accept_key.interestOps(SelectionKey.OP_ACCEPT);
+			return 0;
+		}
+		return Math.max(1, remaining / 1000000);
+	}
+
+	private void serve(Session session, SelectionKey key){
+		try {
+			if (key.isWritable() && !this.send(session)){
+				return;
+			}
+			if (key.isReadable()){
+				if (session.channel.read(session.input) < 0){
+					session.end_of_input = true;
+				}
+				session.read_at = System.nanoTime();
+			}
+			this.run_pulses(session);
+			if (this.send(session) && session.end_of_input && session.input.position() == 0){
+				this.close(session, key);
+				return;
+			}
+			// Only read more once every reply is written.
+			key.interestOps(session.output.position() > 0 ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+		} catch (Exception e){
+			session.failure = e;
+			try {
+				// Still answer the states before the malformed one, if the client is reading.
+				this.send(session);
+			} catch (IOException ignored){
+			}
+			this.close(session, key);
+		}
+	}
+
+	/**
+	 * Runs a pulse for each complete input state in the input buffer, as long
+	 * as there is room for its reply.
+	 */
+	private void run_pulses(Session session){
+		ByteBuffer input = session.input;
+		input.flip();
+		try {
+			if (session.protocol == UNKNOWN && input.hasRemaining()){
+				session.protocol = input.get(input.position()) == BINARY_HELLO ? BINARY : TEXT;
+				if (session.protocol == BINARY){
+					input.get();
+				}
+			}
+			while (session.output.remaining() >= MAX_REPLY_BYTES){
+				if (session.protocol == BINARY ? !this.decode_frame(session) : !this.decode_line(session)){
+					break;
+				}
+				session.car.update_states(session.state);
+				session.ccs.pulse(session.car);
+				double throttle = session.car.throttle.getThrottlePosition();
+				if (session.protocol == BINARY){
+					session.output.putDouble(throttle);
+				} else {
+					if (!PulseRecordWriter.put_fixed(throttle, session.output)){
+						session.output.put(String.format(Locale.ROOT, "%f", throttle).getBytes(StandardCharsets.US_ASCII));
+					}
+					session.output.put((byte) '\n');
+				}
+				if (session.unsent_replies == 0){
+					// Timed from the read, even if the state waited for room in `output`.
+					session.unsent_since = session.read_at;
+				}
+				session.unsent_replies++;
+			}
+		} finally {
+			input.compact();
+		}
+		if (!input.hasRemaining() && session.output.remaining() >= MAX_REPLY_BYTES){
+			throw new IllegalArgumentException("input state longer than " + INPUT_BUFFER_SIZE + " bytes");
+		}
+	}
+
+	private boolean decode_line(Session session){
+		ByteBuffer input = session.input;
+		int start = input.position();
+		int end = start;
+		while (end < input.limit() && input.get(end) != '\n'){
+			end++;
+		}
+		int next = end + 1;
+		if (end == input.limit()){
+			// A last line without a terminator is only complete at the end of input.
+			if (!session.end_of_input || end == start){
+				return false;
+			}
+			next = end;
+		}
+		if (end > start && input.get(end - 1) == '\r'){
+			end--;
+		}
+		session.lines++;
+		StateLineDecoder.decode_line(input, start, end, session.state, session.lines);
+		input.position(next);
+		return true;
+	}
+
+	private boolean decode_frame(Session session){
+		ByteBuffer input = session.input;
+		if (input.remaining() < BINARY_FRAME_BYTES){
+			if (session.end_of_input && input.hasRemaining()){
+				throw new IllegalArgumentException("truncated binary frame");
+			}
+			return false;
+		}
+		PackedInputState state = session.state;
+		int present = input.getShort() & 0xffff;
+		int booleans = input.getShort() & 0xffff;
+		if ((present & ~PackedInputState.ALL_FIELDS) != 0 || (booleans & ~BOOLEAN_FIELDS) != 0){
+			throw new IllegalArgumentException("malformed binary frame");
+		}
+		state.clear();
+		state.present = present;
+		state.engine_status = (booleans & PackedInputState.ENGINE_STATUS) != 0;
+		state.speed_sensor = input.getDouble();
+		state.brake_pedal = input.getDouble();
+		state.accelerator_pedal = input.getDouble();
+		state.start_ccs_button = (booleans & PackedInputState.START_CCS_BUTTON) != 0;
+		state.stop_ccs_button = (booleans & PackedInputState.STOP_CCS_BUTTON) != 0;
+		state.start_acceleration_button = (booleans & PackedInputState.START_ACCELERATION_BUTTON) != 0;
+		state.stop_acceleration_button = (booleans & PackedInputState.STOP_ACCELERATION_BUTTON) != 0;
+		state.resume_button = (booleans & PackedInputState.RESUME_BUTTON) != 0;
+		return true;
+	}
+
+	/**
+	 * Writes the session's buffered replies.
+	 * @return whether all of them were written
+	 */
+	private boolean send(Session session) throws IOException {
+		ByteBuffer output = session.output;
+		output.flip();
+		session.channel.write(output);
+		output.compact();
+		if (output.position() > 0){
+			return false;
+		}
+		if (session.unsent_replies > 0){
+			long latency = System.nanoTime() - session.unsent_since;
+			for (int i = 0; i < session.unsent_replies; i++){
+				this.reply_latency.record(latency);
+			}
+			session.pulses += session.unsent_replies;
+			session.latency_sum_nanos += latency * session.unsent_replies;
+			session.max_latency_nanos = Math.max(session.max_latency_nanos, latency);
+			this.pulses.add(session.unsent_replies);
+			session.unsent_replies = 0;
+		}
+		return true;
+	}
+
+	private void close(Session session, SelectionKey key){
+		key.cancel();
+		try {
+			session.channel.close();
+		} catch (IOException e){
+		}
+		this.open_sessions.decrementAndGet();
+		if (this.on_close != null){
+			this.on_close.accept(session);
+		}
+	}
+
+	public int open_sessions(){
+		return this.open_sessions.get();
+	}
+
+	public long sessions_opened(){
+		return this.sessions_opened.sum();
+	}
+
+	public long total_pulses(){
+		return this.pulses.sum();
+	}
+
+	/**
+	 * The latency of every reply sent so far.
+	 */
+	public LatencyHistogram get_reply_latency(){
+		return this.reply_latency;
+	}
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		String bind_address = "127.0.0.1";
+		List<String> positional = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++){
+			if (args[i].equals("--bind") && i + 1 < args.length){
+				bind_address = args[++i];
+			} else {
+				positional.add(args[i]);
+			}
+		}
+		int port = positional.size() > 0 ? Integer.parseInt(positional.get(0)) : 0;
+		int threads = positional.size() > 1 ? Integer.parseInt(positional.get(1))
+						: Runtime.getRuntime().availableProcessors();
+		TelemetryServer server = new TelemetryServer(new InetSocketAddress(bind_address, port), threads,
+													 CruiseControlSystem::new,
+			session -> System.out.println(String.format("%s: %d pulses, mean latency %.1f us, max %.1f us%s",
+														session.get_remote_address(), session.get_pulses(),
+														session.get_mean_latency_nanos() / 1e3,
+														session.get_max_latency_nanos() / 1e3,
+														session.get_failure() == null ? ""
+														: ", failed: " + session.get_failure())));
+		server.start();
+		System.out.println("listening on " + bind_address + " port " + server.get_port());
+		long last_pulses = 0;
+		while (true){
+			Thread.sleep(10000);
+			long pulses = server.total_pulses();
+			System.out.println(String.format("%d open sessions, %d opened, %.0f pulses/s",
+											 server.open_sessions(), server.sessions_opened(),
+											 (pulses - last_pulses) / 10.0));
+			last_pulses = pulses;
+		}
+	}
+}
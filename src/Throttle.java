@@ -39,4 +39,11 @@ public class Throttle {
 		this.acceleratorPosition = new_state.parseDouble(new_state.accelerator_pedal, this.acceleratorPosition);
 		this.throttlePosition = this.acceleratorPosition;
 	}
+
+	public void update_state(PackedInputState new_state){
+		if (new_state.is_present(PackedInputState.ACCELERATOR_PEDAL)){
+			this.acceleratorPosition = new_state.accelerator_pedal;
+		}
+		this.throttlePosition = this.acceleratorPosition;
+	}
 }
@@ -6,19 +6,70 @@
  * is recorded as an OutputState.
  */
 
+import java.io.IOException;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.function.Consumer;
 
 
 public class Timer {
 	private Car car;
 	private ICruiseControlSystem ccs;
+	private PulseMetrics metrics = null;
+	private FlightRecorder flight_recorder = null;
+	private int event_sample_interval = CcsEvents.DEFAULT_SAMPLE_INTERVAL;
 	
 	Timer(ICruiseControlSystem ccs){
 		this.ccs = ccs;
 		this.car = new Car();
 	}
 	
+	/**
+	 * Makes `record_from_input` time each stage of every pulse and count the
+	 * rules which fired into the given registry; null turns this off again.
+	 */
+	public void set_metrics(PulseMetrics metrics){
+		this.metrics = metrics;
+	}
+	
+	/**
+	 * Makes `record_from_input` emit the per-pulse CcsEvents for one pulse
+	 * in every `interval`; 0 or less turns them off. These are only
+	 * recorded if a JFR recording has them enabled, and not at all while
+	 * metrics are set, since those time every pulse already.
+	 */
+	public void set_event_sampling(int interval){
+		this.event_sample_interval = interval;
+	}
+	
+	/**
+	 * Makes `pulse` and `record_from_input` record every pulse into the
+	 * given flight recorder; null turns this off again.
+	 */
+	public void set_flight_recorder(FlightRecorder flight_recorder){
+		this.flight_recorder = flight_recorder;
+	}
+	
+	/**
+	 * Runs a single pulse: updates the car from `next_state`, gives the CCS
+	 * control and records the resulting state into `record`. This is the
+	 * step the replay methods below repeat for every input state, for
+	 * callers which drive the pulses themselves.
+	 */
+	public void pulse(PackedInputState next_state, PulseRecord record){
+		FlightRecorder recorder = this.flight_recorder;
+		this.car.update_states(next_state);
+		if (recorder != null){
+			recorder.begin_pulse(next_state, this.car, this.ccs);
+		}
+		this.ccs.pulse(this.car);
+		this.car.record_state(record);
+		if (recorder != null){
+			recorder.end_pulse(record, this.ccs.get_fired_rules());
+		}
+	}
+	
 	public List<OutputState> pulse_from_input(List<InputState> input_states){
 		LinkedList<OutputState> output_states = new LinkedList<OutputState>();
 
@@ -29,4 +80,168 @@ public class Timer {
 		}
 		return output_states;
 	}
+
+	/**
+	 * The streaming equivalent of `pulse_from_input`: each output state is
+	 * handed to the sink as soon as its pulse completes, and nothing is
+	 * retained between pulses, so memory use does not grow with the trace.
+	 */
+	public void pulse_from_input(Iterator<InputState> input_states, Consumer<OutputState> sink){
+		while (input_states.hasNext()){
+			this.car.update_states(input_states.next());
+			this.ccs.pulse(this.car);
+			sink.accept(this.car.record_state());
+		}
+	}
+
+	/**
+	 * As above, but reads the input states from a cursor, which decodes every
+	 * line into the same PackedInputState.
+	 */
+	public void pulse_from_input(InputStateCursor input_states, Consumer<OutputState> sink) throws IOException{
+		PackedInputState next_state = new PackedInputState();
+		while (input_states.next(next_state)){
+			this.car.update_states(next_state);
+			this.ccs.pulse(this.car);
+			sink.accept(this.car.record_state());
+		}
+	}
+
+	/**
+	 * As above, but records each pulse into a single reusable PulseRecord,
+	 * so that in the steady state replaying a pulse allocates nothing.
+	 * @return the number of pulses replayed
+	 */
+	public long record_from_input(InputStateCursor input_states, PulseSink sink) throws IOException{
+		if (this.metrics != null){
+			return this.record_from_input_measured(input_states, sink, this.metrics);
+		}
+		FlightRecorder recorder = this.flight_recorder;
+		PackedInputState next_state = new PackedInputState();
+		PulseRecord record = new PulseRecord();
+		long pulses = 0;
+		long sample_interval = this.event_sample_interval > 0 ? this.event_sample_interval : Long.MAX_VALUE;
+		long countdown = sample_interval;
+		while (true){
+			if (--countdown == 0){
+				countdown = sample_interval;
+				if (!this.traced_pulse(input_states, next_state, record, sink, pulses)){
+					break;
+				}
+			} else {
+				if (!input_states.next(next_state)){
+					break;
+				}
+				this.car.update_states(next_state);
+				if (recorder != null){
+					recorder.begin_pulse(next_state, this.car, this.ccs);
+				}
+				this.ccs.pulse(this.car);
+				this.car.record_state(record);
+				if (recorder != null){
+					recorder.end_pulse(record, this.ccs.get_fired_rules());
+				}
+				sink.accept(record);
+			}
+			pulses++;
+		}
+		return pulses;
+	}
+
+	/**
+	 * Runs one pulse of `record_from_input` as it does, but with each stage
+	 * timed by a CcsEvents event.
+	 * @return false at the end of the input
+	 */
+	private boolean traced_pulse(InputStateCursor input_states, PackedInputState next_state, PulseRecord record,
+								 PulseSink sink, long pulse) throws IOException{
+		FlightRecorder recorder = this.flight_recorder;
+		CcsEvents.ParseEvent parse = new CcsEvents.ParseEvent();
+		parse.begin();
+		if (!input_states.next(next_state)){
+			return false;
+		}
+		parse.end();
+		if (parse.shouldCommit()){
+			parse.pulse = pulse;
+			parse.commit();
+		}
+
+		CcsEvents.UpdateStatesEvent update = new CcsEvents.UpdateStatesEvent();
+		update.begin();
+		this.car.update_states(next_state);
+		update.end();
+		if (update.shouldCommit()){
+			update.pulse = pulse;
+			update.commit();
+		}
+		if (recorder != null){
+			recorder.begin_pulse(next_state, this.car, this.ccs);
+		}
+
+		CcsEvents.PulseEvent ccs_pulse = new CcsEvents.PulseEvent();
+		ccs_pulse.begin();
+		this.ccs.pulse(this.car);
+		ccs_pulse.end();
+		if (ccs_pulse.shouldCommit()){
+			ccs_pulse.pulse = pulse;
+			ccs_pulse.fired_rules = this.ccs.get_fired_rules();
+			ccs_pulse.rules = CcsEvents.rule_labels(ccs_pulse.fired_rules);
+			ccs_pulse.throttle = this.car.throttle.getThrottlePosition();
+			ccs_pulse.cruising = this.car.dashboard.get_start_ccs();
+			ccs_pulse.commit();
+		}
+
+		CcsEvents.RecordStateEvent record_state = new CcsEvents.RecordStateEvent();
+		record_state.begin();
+		this.car.record_state(record);
+		record_state.end();
+		if (record_state.shouldCommit()){
+			record_state.pulse = pulse;
+			record_state.commit();
+		}
+		if (recorder != null){
+			recorder.end_pulse(record, this.ccs.get_fired_rules());
+		}
+
+		CcsEvents.OutputEvent output = new CcsEvents.OutputEvent();
+		output.begin();
+		sink.accept(record);
+		output.end();
+		if (output.shouldCommit()){
+			output.pulse = pulse;
+			output.commit();
+		}
+		return true;
+	}
+
+	private long record_from_input_measured(InputStateCursor input_states, PulseSink sink,
+											PulseMetrics metrics) throws IOException{
+		FlightRecorder recorder = this.flight_recorder;
+		PackedInputState next_state = new PackedInputState();
+		PulseRecord record = new PulseRecord();
+		long pulses = 0;
+		long start = System.nanoTime();
+		while (input_states.next(next_state)){
+			long parsed = System.nanoTime();
+			this.car.update_states(next_state);
+			if (recorder != null){
+				recorder.begin_pulse(next_state, this.car, this.ccs);
+			}
+			this.ccs.pulse(this.car);
+			long pulsed = System.nanoTime();
+			this.car.record_state(record);
+			if (recorder != null){
+				recorder.end_pulse(record, this.ccs.get_fired_rules());
+			}
+			long recorded = System.nanoTime();
+			sink.accept(record);
+			long output = System.nanoTime();
+			metrics.record_pulse(this.ccs.get_fired_rules(), parsed - start, pulsed - parsed,
+								 recorded - pulsed, output - recorded);
+			pulses++;
+			start = output;
+		}
+		return pulses;
+	}
 }
@@ -0,0 +1,95 @@
+/**
+ * A block of input states held column by column in primitive arrays: one
+ * presence mask per row (using the PackedInputState field bits), one mask
+ * of the boolean fields which are true, and one array for each of the
+ * speed, brake and accelerator channels. Used to buffer states for the
+ * binary trace format and for parsers which work a block at a time.
+ */
+public class TraceColumns {
+	public static final int BOOLEAN_FIELDS = PackedInputState.ENGINE_STATUS
+										   | PackedInputState.START_CCS_BUTTON
+										   | PackedInputState.STOP_CCS_BUTTON
+										   | PackedInputState.START_ACCELERATION_BUTTON
+										   | PackedInputState.STOP_ACCELERATION_BUTTON
+										   | PackedInputState.RESUME_BUTTON;
+
+	private int size = 0;
+	public final int[] present;
+	public final int[] booleans;
+	public final double[] speed_sensor;
+	public final double[] brake_pedal;
+	public final double[] accelerator_pedal;
+
+	public TraceColumns(int capacity){
+		this.present = new int[capacity];
+		this.booleans = new int[capacity];
+		this.speed_sensor = new double[capacity];
+		this.brake_pedal = new double[capacity];
+		this.accelerator_pedal = new double[capacity];
+	}
+
+	public int size(){
+		return this.size;
+	}
+
+	public int capacity(){
+		return this.present.length;
+	}
+
+	public boolean is_full(){
+		return this.size == this.present.length;
+	}
+
+	public void clear(){
+		this.size = 0;
+	}
+
+	/**
+	 * Sets the number of rows, for code which fills the arrays directly.
+	 */
+	public void set_size(int size){
+		if (size < 0 || size > this.present.length){
+			throw new IllegalArgumentException("size " + size + " outside of capacity " + this.present.length);
+		}
+		this.size = size;
+	}
+
+	public void add(PackedInputState state){
+		int row = this.size++;
+		this.present[row] = state.present;
+		this.booleans[row] = (state.engine_status ? PackedInputState.ENGINE_STATUS : 0)
+						   | (state.start_ccs_button ? PackedInputState.START_CCS_BUTTON : 0)
+						   | (state.stop_ccs_button ? PackedInputState.STOP_CCS_BUTTON : 0)
+						   | (state.start_acceleration_button ? PackedInputState.START_ACCELERATION_BUTTON : 0)
+						   | (state.stop_acceleration_button ? PackedInputState.STOP_ACCELERATION_BUTTON : 0)
+						   | (state.resume_button ? PackedInputState.RESUME_BUTTON : 0);
+		this.speed_sensor[row] = state.speed_sensor;
+		this.brake_pedal[row] = state.brake_pedal;
+		this.accelerator_pedal[row] = state.accelerator_pedal;
+	}
+
+	/**
+	 * Whether two rows hold identical states, comparing doubles bit for bit.
+	 */
+	public boolean same_rows(int a, int b){
+		return this.present[a] == this.present[b]
+			&& this.booleans[a] == this.booleans[b]
+			&& Double.doubleToRawLongBits(this.speed_sensor[a]) == Double.doubleToRawLongBits(this.speed_sensor[b])
+			&& Double.doubleToRawLongBits(this.brake_pedal[a]) == Double.doubleToRawLongBits(this.brake_pedal[b])
+			&& Double.doubleToRawLongBits(this.accelerator_pedal[a]) == Double.doubleToRawLongBits(this.accelerator_pedal[b]);
+	}
+
+	public void get(int row, PackedInputState state){
+		int values = this.booleans[row];
+		state.present = this.present[row];
+		state.engine_status = (values & PackedInputState.ENGINE_STATUS) != 0;
+		state.speed_sensor = this.speed_sensor[row];
+		state.brake_pedal = this.brake_pedal[row];
+		state.accelerator_pedal = this.accelerator_pedal[row];
+		state.start_ccs_button = (values & PackedInputState.START_CCS_BUTTON) != 0;
+		state.stop_ccs_button = (values & PackedInputState.STOP_CCS_BUTTON) != 0;
+		state.start_acceleration_button = (values & PackedInputState.START_ACCELERATION_BUTTON) != 0;
+		state.stop_acceleration_button = (values & PackedInputState.STOP_ACCELERATION_BUTTON) != 0;
+		state.resume_button = (values & PackedInputState.RESUME_BUTTON) != 0;
+	}
+}
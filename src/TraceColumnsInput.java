@@ -0,0 +1,84 @@
+/**
+ * Replays input states which are already held in memory as a sequence of
+ * TraceColumns blocks, such as those produced by ParallelTraceParser.
+ */
+import java.util.List;
+
+public class TraceColumnsInput implements InputStateCursor {
+	private final List<TraceColumns> blocks;
+	private int block = 0;
+	private int row = 0;
+	private long remaining;
+	private boolean started = false;
+
+	public TraceColumnsInput(List<TraceColumns> blocks){
+		this(blocks, 0, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Replays only the rows from index `start` up to index `end`, counting
+	 * across all the blocks.
+	 */
+	public TraceColumnsInput(List<TraceColumns> blocks, long start, long end){
+		this.blocks = blocks;
+		this.remaining = Math.max(0, end - start);
+		while (this.block < blocks.size() && start >= blocks.get(this.block).size()){
+			start -= blocks.get(this.block).size();
+			this.block++;
+		}
+		this.row = (int) start;
+	}
+
+	/**
+	 * The total number of rows in a sequence of blocks.
+	 */
+	public static long count_rows(List<TraceColumns> blocks){
+		long rows = 0;
+		for (TraceColumns block : blocks){
+			rows += block.size();
+		}
+		return rows;
+	}
+
+	@Override
+	public boolean next(PackedInputState state){
+		if (this.remaining == 0){
+			return false;
+		}
+		while (this.block < this.blocks.size() && this.row >= this.blocks.get(this.block).size()){
+			this.block++;
+			this.row = 0;
+		}
+		if (this.block == this.blocks.size()){
+			return false;
+		}
+		this.blocks.get(this.block).get(this.row++, state);
+		this.remaining--;
+		this.started = true;
+		return true;
+	}
+
+	/**
+	 * Skips the following rows of the current block which are identical
+	 * to the last row returned.
+	 */
+	@Override
+	public long skip_repeats(){
+		if (!this.started || this.block == this.blocks.size()){
+			return 0;
+		}
+		TraceColumns columns = this.blocks.get(this.block);
+		int last = this.row - 1;
+		long skipped = 0;
+		while (this.row < columns.size() && skipped < this.remaining && columns.same_rows(last, this.row)){
+			this.row++;
+			skipped++;
+		}
+		this.remaining -= skipped;
+		return skipped;
+	}
+
+	@Override
+	public void close(){
+	}
+}
@@ -0,0 +1,493 @@
+/**
+ * Synthesizes realistic driving traces for load and fuzz testing. A small
+ * driver model moves between phases: parked with the engine off, pulling
+ * away, cruising, overriding the cruise control with the pedal, tapping or
+ * holding the brake, accelerating with the dashboard buttons, resuming,
+ * stopping the CCS and switching the engine off. The speed ramps with the
+ * pedals, and buttons are pressed for a single pulse, as a driver would.
+ * Unchanged sensor values are mostly written as "-".
+ *
+ * The generator is a cursor which decodes nothing: each state is computed
+ * straight into the caller's PackedInputState, and the text form is
+ * written byte by byte, so no Strings are created per line. Speeds are
+ * kept in tenths and pedals in hundredths, so the text form parses back to
+ * exactly the same doubles. The output depends only on the seed.
+ *
+ * A trace is made of segments of BLOCK_ROWS pulses, each with its own
+ * random streams seeded from the root one in order: one drives the model
+ * and one decides which unchanged values are written as "-". The driver
+ * carries on from one segment into the next, and the first line of each
+ * segment sets every field explicitly. Long traces are generated in
+ * parallel by first running just the model over each segment, a cheap
+ * sequential pass which gives the next segment its starting phase, speed
+ * and pedals, while earlier segments are generated and written on the
+ * pool. The output is the same as a single TraceGenerator cursor gives,
+ * whatever the number of threads.
+ *
+ * Usage: TraceGenerator seed pulses output_file [--binary]
+ */
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+public class TraceGenerator implements InputStateCursor {
+	public static final int BLOCK_ROWS = BinaryTrace.BLOCK_ROWS;
+	// The longest line written: five booleans, three numbers and separators.
+	private static final int MAX_LINE_BYTES = 64;
+
+	private enum Phase {
+		PARKED, PULLING_AWAY, DRIVING, CRUISING, PEDAL_OVERRIDE, BRAKING, BUTTON_ACCELERATING, STOPPING_CCS, RESUMING
+	}
+
+	// Seeds the random streams of each segment; null in a split-off segment.
+	private final SplittableRandom root;
+	private SplittableRandom random;
+	private SplittableRandom write_random;
+	private long model_seed;
+	private long write_seed;
+	private long remaining;
+	private int segment_remaining = 0;
+
+	private Phase phase = Phase.PARKED;
+	private int phase_pulses = 0;
+	private boolean engine_on = false;
+	private int speed_tenths = 0;
+	private int brake_hundredths = 0;
+	private int accelerator_hundredths = 0;
+	private int target_accelerator = 0;
+	// The buttons pressed in the current pulse, as PackedInputState bits.
+	private int pressed = 0;
+
+	// The sensor values last written, for deciding what to write as "-".
+	private boolean first = true;
+	private boolean written_engine_on;
+	private int written_speed_tenths;
+	private int written_brake_hundredths;
+	private int written_accelerator_hundredths;
+
+	public TraceGenerator(long seed, long pulses){
+		this(new SplittableRandom(seed), pulses);
+	}
+
+	public TraceGenerator(SplittableRandom random, long pulses){
+		this.root = random;
+		this.remaining = pulses;
+	}
+
+	/**
+	 * A generator for the `rows` pulses of the segment `planner` has just
+	 * started, from the same driver state and with the same random streams.
+	 */
+	private TraceGenerator(TraceGenerator planner, int rows){
+		this.root = null;
+		this.remaining = rows;
+		this.segment_remaining = rows;
+		this.random = new SplittableRandom(planner.model_seed);
+		this.write_random = new SplittableRandom(planner.write_seed);
+		this.phase = planner.phase;
+		this.phase_pulses = planner.phase_pulses;
+		this.engine_on = planner.engine_on;
+		this.speed_tenths = planner.speed_tenths;
+		this.brake_hundredths = planner.brake_hundredths;
+		this.accelerator_hundredths = planner.accelerator_hundredths;
+		this.target_accelerator = planner.target_accelerator;
+	}
+
+	@Override
+	public boolean next(PackedInputState state){
+		if (this.remaining == 0){
+			return false;
+		}
+		if (this.segment_remaining == 0){
+			this.start_segment();
+		}
+		this.remaining--;
+		this.segment_remaining--;
+		this.step();
+		this.fill(state);
+		return true;
+	}
+
+	private void start_segment(){
+		this.model_seed = this.root.nextLong();
+		this.write_seed = this.root.nextLong();
+		this.random = new SplittableRandom(this.model_seed);
+		this.write_random = new SplittableRandom(this.write_seed);
+		this.segment_remaining = BLOCK_ROWS;
+		this.first = true;
+	}
+
+	/**
+	 * Splits off a generator for the next segment, of up to BLOCK_ROWS
+	 * pulses, and moves this one past it by running only the driver model,
+	 * without writing any states.
+	 */
+	private TraceGenerator split_segment(){
+		this.start_segment();
+		int rows = (int) Math.min(BLOCK_ROWS, this.remaining);
+		TraceGenerator segment = new TraceGenerator(this, rows);
+		for (int row = 0; row < rows; row++){
+			this.step();
+		}
+		this.remaining -= rows;
+		this.segment_remaining = 0;
+		return segment;
+	}
+
+	/**
+	 * Moves the driver model on by one pulse.
+	 */
+	private void step(){
+		this.pressed = 0;
+		if (this.phase_pulses == 0){
+			this.enter_next_phase();
+		}
+		this.phase_pulses--;
+		switch (this.phase){
+		case PARKED:
+			// Brake to a stop, then hold the brake while the engine runs.
+			this.accelerator_hundredths = 0;
+			this.brake_hundredths = this.speed_tenths > 0 ? 60 : this.engine_on ? 30 : 0;
+			this.change_speed(-15);
+			break;
+		case PULLING_AWAY:
+		case PEDAL_OVERRIDE:
+		case DRIVING:
+			this.move_pedal_towards(this.target_accelerator);
+			this.brake_hundredths = 0;
+			// Roughly, the speed settles where the pedal's push meets the drag.
+			this.change_speed(this.accelerator_hundredths / 4 - this.speed_tenths / 80 + this.random.nextInt(-2, 3));
+			break;
+		case CRUISING:
+		case BUTTON_ACCELERATING:
+		case STOPPING_CCS:
+		case RESUMING:
+			this.move_pedal_towards(0);
+			this.brake_hundredths = 0;
+			this.change_speed(this.phase == Phase.BUTTON_ACCELERATING ? 14 : this.random.nextInt(-3, 4));
+			if (this.phase == Phase.BUTTON_ACCELERATING && this.phase_pulses == 0){
+				this.pressed |= PackedInputState.STOP_ACCELERATION_BUTTON;
+			}
+			break;
+		case BRAKING:
+			this.accelerator_hundredths = 0;
+			this.change_speed(-this.brake_hundredths / 4);
+			break;
+		}
+	}
+
+	private void enter_next_phase(){
+		SplittableRandom random = this.random;
+		boolean fast_enough = this.speed_tenths >= 400;
+		Phase next;
+		switch (this.phase){
+		case PARKED:
+			if (this.speed_tenths > 0){
+				next = Phase.PARKED;
+			} else if (this.engine_on){
+				// Once stopped, either pull away again or switch the engine off.
+				next = random.nextInt(3) == 0 ? Phase.PARKED : Phase.PULLING_AWAY;
+				this.engine_on = next != Phase.PARKED;
+			} else {
+				next = Phase.PARKED;
+				this.engine_on = random.nextInt(3) == 0;
+			}
+			break;
+		case PULLING_AWAY:
+		case DRIVING:
+			int choice = random.nextInt(10);
+			next = choice < 5 && fast_enough ? Phase.CRUISING
+				 : choice < 7 ? Phase.DRIVING
+				 : choice < 9 ? Phase.BRAKING
+				 : Phase.RESUMING;
+			break;
+		default:
+			choice = random.nextInt(20);
+			next = choice < 5 ? Phase.CRUISING
+				 : choice < 8 ? Phase.PEDAL_OVERRIDE
+				 : choice < 11 ? Phase.BRAKING
+				 : choice < 13 ? Phase.BUTTON_ACCELERATING
+				 : choice < 15 ? Phase.STOPPING_CCS
+				 : choice < 17 ? Phase.RESUMING
+				 : choice < 19 ? Phase.DRIVING
+				 : Phase.PARKED;
+			break;
+		}
+		this.phase = next;
+		switch (next){
+		case PARKED:
+			this.phase_pulses = random.nextInt(1, 50);
+			break;
+		case PULLING_AWAY:
+			this.target_accelerator = random.nextInt(40, 90);
+			this.phase_pulses = random.nextInt(20, 200);
+			break;
+		case DRIVING:
+			this.target_accelerator = random.nextInt(0, 70);
+			this.phase_pulses = random.nextInt(10, 300);
+			break;
+		case CRUISING:
+			this.pressed = PackedInputState.START_CCS_BUTTON;
+			this.phase_pulses = random.nextInt(50, 2000);
+			break;
+		case PEDAL_OVERRIDE:
+			this.target_accelerator = random.nextInt(30, 100);
+			this.phase_pulses = random.nextInt(5, 100);
+			break;
+		case BRAKING:
+			// Mostly short taps, sometimes a longer hard stop.
+			this.brake_hundredths = random.nextInt(10, 101);
+			this.phase_pulses = random.nextInt(4) == 0 ? random.nextInt(10, 60) : random.nextInt(1, 6);
+			break;
+		case BUTTON_ACCELERATING:
+			this.pressed = PackedInputState.START_ACCELERATION_BUTTON;
+			this.phase_pulses = random.nextInt(2, 40);
+			break;
+		case STOPPING_CCS:
+			this.pressed = PackedInputState.STOP_CCS_BUTTON;
+			this.phase_pulses = random.nextInt(5, 100);
+			break;
+		case RESUMING:
+			this.pressed = PackedInputState.RESUME_BUTTON;
+			this.phase_pulses = random.nextInt(20, 500);
+			break;
+		}
+	}
+
+	private void move_pedal_towards(int target){
+		int step = Math.min(5, Math.abs(target - this.accelerator_hundredths));
+		this.accelerator_hundredths += target > this.accelerator_hundredths ? step : -step;
+	}
+
+	private void change_speed(int tenths){
+		this.speed_tenths = Math.max(0, Math.min(2000, this.speed_tenths + tenths));
+	}
+
+	/**
+	 * Writes the current pulse into `state`, leaving out unchanged sensor
+	 * values most of the time and every button which is not being pressed.
+	 */
+	private void fill(PackedInputState state){
+		SplittableRandom random = this.write_random;
+		state.clear();
+		boolean all = this.first;
+		int present = this.pressed;
+		if (all || this.engine_on != this.written_engine_on || random.nextInt(8) == 0){
+			present |= PackedInputState.ENGINE_STATUS;
+			this.written_engine_on = this.engine_on;
+		}
+		if (all || this.speed_tenths != this.written_speed_tenths || random.nextInt(8) == 0){
+			present |= PackedInputState.SPEED_SENSOR;
+			this.written_speed_tenths = this.speed_tenths;
+		}
+		if (all || this.brake_hundredths != this.written_brake_hundredths || random.nextInt(8) == 0){
+			present |= PackedInputState.BRAKE_PEDAL;
+			this.written_brake_hundredths = this.brake_hundredths;
+		}
+		if (all || this.accelerator_hundredths != this.written_accelerator_hundredths || random.nextInt(8) == 0){
+			present |= PackedInputState.ACCELERATOR_PEDAL;
+			this.written_accelerator_hundredths = this.accelerator_hundredths;
+		}
+		if (all){
+			// The first line of a segment sets every button explicitly.
+			present |= PackedInputState.ALL_FIELDS;
+			this.first = false;
+		}
+		// Absent fields keep the values clear() gave them, as when decoded.
+		state.present = present;
+		state.engine_status = this.engine_on && (present & PackedInputState.ENGINE_STATUS) != 0;
+		if ((present & PackedInputState.SPEED_SENSOR) != 0){
+			state.speed_sensor = this.speed_tenths / 10.0;
+		}
+		if ((present & PackedInputState.BRAKE_PEDAL) != 0){
+			state.brake_pedal = this.brake_hundredths / 100.0;
+		}
+		if ((present & PackedInputState.ACCELERATOR_PEDAL) != 0){
+			state.accelerator_pedal = this.accelerator_hundredths / 100.0;
+		}
+		state.start_ccs_button = (this.pressed & PackedInputState.START_CCS_BUTTON) != 0;
+		state.stop_ccs_button = (this.pressed & PackedInputState.STOP_CCS_BUTTON) != 0;
+		state.start_acceleration_button = (this.pressed & PackedInputState.START_ACCELERATION_BUTTON) != 0;
+		state.stop_acceleration_button = (this.pressed & PackedInputState.STOP_ACCELERATION_BUTTON) != 0;
+		state.resume_button = (this.pressed & PackedInputState.RESUME_BUTTON) != 0;
+	}
+
+	/**
+	 * Writes a generated state as a text line, using "-" for absent fields.
+	 * Numbers are written with two decimals, which is exact for the values
+	 * the generator produces.
+	 */
+	public static void write_line(PackedInputState state, ByteBuffer out){
+		write_boolean(state, PackedInputState.ENGINE_STATUS, state.engine_status, out);
+		write_hundredths(state, PackedInputState.SPEED_SENSOR, state.speed_sensor, out);
+		write_hundredths(state, PackedInputState.BRAKE_PEDAL, state.brake_pedal, out);
+		write_hundredths(state, PackedInputState.ACCELERATOR_PEDAL, state.accelerator_pedal, out);
+		write_boolean(state, PackedInputState.START_CCS_BUTTON, state.start_ccs_button, out);
+		write_boolean(state, PackedInputState.STOP_CCS_BUTTON, state.stop_ccs_button, out);
+		write_boolean(state, PackedInputState.START_ACCELERATION_BUTTON, state.start_acceleration_button, out);
+		write_boolean(state, PackedInputState.STOP_ACCELERATION_BUTTON, state.stop_acceleration_button, out);
+		write_boolean(state, PackedInputState.RESUME_BUTTON, state.resume_button, out);
+		out.put(out.position() - 1, (byte) '\n');
+	}
+
+	private static void write_boolean(PackedInputState state, int field, boolean value, ByteBuffer out){
+		if (!state.is_present(field)){
+			out.put((byte) '-');
+		} else if (value){
+			out.put((byte) 't').put((byte) 'r').put((byte) 'u').put((byte) 'e');
+		} else {
+			out.put((byte) 'f').put((byte) 'a').put((byte) 'l').put((byte) 's').put((byte) 'e');
+		}
+		out.put((byte) ' ');
+	}
+
+	private static void write_hundredths(PackedInputState state, int field, double value, ByteBuffer out){
+		if (!state.is_present(field)){
+			out.put((byte) '-').put((byte) ' ');
+			return;
+		}
+		long hundredths = Math.round(value * 100);
+		if (hundredths < 0 || hundredths / 100.0 != value){
+			throw new IllegalArgumentException(value + " is not a non-negative number of hundredths");
+		}
+		long whole = hundredths / 100;
+		long divisor = 1;
+		while (divisor * 10 <= whole){
+			divisor *= 10;
+		}
+		for (; divisor > 0; divisor /= 10){
+			out.put((byte) ('0' + whole / divisor % 10));
+		}
+		out.put((byte) '.');
+		out.put((byte) ('0' + hundredths / 10 % 10));
+		out.put((byte) ('0' + hundredths % 10));
+		out.put((byte) ' ');
+	}
+
+	@Override
+	public void close(){
+	}
+
+	/**
+	 * Generates `pulses` states into blocks of TraceColumns on the pool,
+	 * one task per block.
+	 */
+	public static List<TraceColumns> generate(long seed, long pulses, ForkJoinPool pool){
+		List<TraceColumns> blocks = new ArrayList<TraceColumns>();
+		List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+		TraceGenerator planner = new TraceGenerator(seed, pulses);
+		while (planner.remaining > 0){
+			TraceColumns block = new TraceColumns(BLOCK_ROWS);
+			blocks.add(block);
+			tasks.add(pool.submit(generate_task(planner.split_segment(), block)));
+		}
+		for (ForkJoinTask<?> task : tasks){
+			task.join();
+		}
+		return blocks;
+	}
+
+	private static Runnable generate_task(TraceGenerator generator, TraceColumns block){
+		return () -> {
+			PackedInputState state = new PackedInputState();
+			block.clear();
+			while (generator.next(state)){
+				block.add(state);
+			}
+		};
+	}
+
+	/**
+	 * Writes `pulses` generated states to a text file. Blocks are generated
+	 * and formatted in parallel, a few per worker at a time, and written in
+	 * order, so the file holds the same states as `generate` gives.
+	 * @return the number of bytes written
+	 */
+	public static long write_text(long seed, long pulses, Path filename, ForkJoinPool pool) throws IOException {
+		int wave = 2 * pool.getParallelism();
+		TraceGenerator planner = new TraceGenerator(seed, pulses);
+		long written = 0;
+		try (FileChannel channel = FileChannel.open(filename, StandardOpenOption.WRITE,
+													StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)){
+			List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+			for (int i = 0; i < wave; i++){
+				buffers.add(ByteBuffer.allocateDirect(BLOCK_ROWS * MAX_LINE_BYTES));
+			}
+			List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(wave);
+			while (planner.remaining > 0){
+				tasks.clear();
+				for (int i = 0; i < wave && planner.remaining > 0; i++){
+					TraceGenerator generator = planner.split_segment();
+					ByteBuffer buffer = buffers.get(i);
+					tasks.add(pool.submit(() -> {
+						PackedInputState state = new PackedInputState();
+						buffer.clear();
+						while (generator.next(state)){
+							write_line(state, buffer);
+						}
+						buffer.flip();
+					}));
+				}
+				for (int i = 0; i < tasks.size(); i++){
+					tasks.get(i).join();
+					ByteBuffer buffer = buffers.get(i);
+					while (buffer.hasRemaining()){
+						written += channel.write(buffer);
+					}
+				}
+			}
+		}
+		return written;
+	}
+
+	/**
+	 * Writes `pulses` generated states to a binary trace, a wave of blocks
+	 * at a time like `write_text`, so that only those are held in memory.
+	 */
+	public static void write_binary(long seed, long pulses, Path filename, ForkJoinPool pool) throws IOException {
+		int wave = 2 * pool.getParallelism();
+		TraceGenerator planner = new TraceGenerator(seed, pulses);
+		try (BinaryTraceWriter writer = new BinaryTraceWriter(filename)){
+			List<TraceColumns> blocks = new ArrayList<TraceColumns>();
+			for (int i = 0; i < wave; i++){
+				blocks.add(new TraceColumns(BLOCK_ROWS));
+			}
+			List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(wave);
+			while (planner.remaining > 0){
+				tasks.clear();
+				for (int i = 0; i < wave && planner.remaining > 0; i++){
+					tasks.add(pool.submit(generate_task(planner.split_segment(), blocks.get(i))));
+				}
+				for (int i = 0; i < tasks.size(); i++){
+					tasks.get(i).join();
+					writer.write_block(blocks.get(i));
+				}
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3){
+			System.err.println("usage: TraceGenerator seed pulses output_file [--binary]");
+			System.exit(2);
+		}
+		long seed = Long.parseLong(args[0]);
+		long pulses = Long.parseLong(args[1]);
+		Path output_path = Paths.get(args[2]);
+		long start = System.nanoTime();
+		if (args.length >= 4 && args[3].equals("--binary")){
+			write_binary(seed, pulses, output_path, ForkJoinPool.commonPool());
+		} else {
+			write_text(seed, pulses, output_path, ForkJoinPool.commonPool());
+		}
+		System.err.println(String.format("generated %d pulses in %.1f ms", pulses, (System.nanoTime() - start) / 1e6));
+	}
+}
@@ -0,0 +1,134 @@
+/**
+ * A longitudinal model of a car's motion, for closing the loop between
+ * the throttle the CCS sets and the speed it then reads. The speed is
+ * integrated from the forces on the car: the engine's drive force, the
+ * aerodynamic drag, the rolling resistance, the component of gravity
+ * along the road's grade and the brakes.
+ *
+ * The engine follows the convention CruiseControlSystem is written
+ * against, where a throttle position of t asks for a speed of 50t km/h
+ * (and raising it by 7.2 km/h, 2 m/s, accelerates the car at 2 m/s^2).
+ * The drive force is what holds the asked-for speed on a level road,
+ * plus `response_per_second` times the mass times the speed still
+ * missing, and is limited by the engine's power. So the car settles at
+ * the asked-for speed on the level, falls short of it uphill and
+ * overshoots it downhill, as a car with a fixed throttle does.
+ *
+ * Each call to `advance` integrates with the classical Runge-Kutta method
+ * in fixed steps of `step_seconds`, holding the controls constant. The
+ * car never rolls backwards.
+ */
+public class VehicleModel {
+	public static final double GRAVITY = 9.81;
+	public static final double KMH_PER_THROTTLE = 50.0;
+
+	public final double mass_kg;
+	// The drag coefficient times the frontal area.
+	public final double drag_area_m2;
+	public final double air_density;
+	public final double rolling_resistance;
+	public final double max_power_w;
+	public final double max_brake_force_n;
+	public final double response_per_second;
+	public final double step_seconds;
+
+	private double speed = 0.0;
+	private double distance = 0.0;
+	private double grade = 0.0;
+
+	// The controls held over the current call to `advance`.
+	private double target_speed;
+	private double brake_force;
+	private boolean engine_on;
+
+	/**
+	 * A mid-size car.
+	 */
+	public VehicleModel(){
+		this(1500.0, 0.7, 1.225, 0.012, 110000.0, 12000.0, 1.0, 0.01);
+	}
+
+	public VehicleModel(double mass_kg, double drag_area_m2, double air_density, double rolling_resistance,
+						double max_power_w, double max_brake_force_n, double response_per_second,
+						double step_seconds){
+		if (!(mass_kg > 0.0) || !(step_seconds > 0.0)){
+			throw new IllegalArgumentException("the mass and the step must be positive");
+		}
+		this.mass_kg = mass_kg;
+		this.drag_area_m2 = drag_area_m2;
+		this.air_density = air_density;
+		this.rolling_resistance = rolling_resistance;
+		this.max_power_w = max_power_w;
+		this.max_brake_force_n = max_brake_force_n;
+		this.response_per_second = response_per_second;
+		this.step_seconds = step_seconds;
+	}
+
+	public double get_speed_kmh(){
+		return this.speed * 3.6;
+	}
+
+	public void set_speed_kmh(double speed_kmh){
+		this.speed = Math.max(0.0, speed_kmh / 3.6);
+	}
+
+	public double get_distance_m(){
+		return this.distance;
+	}
+
+	/**
+	 * Sets the grade of the road ahead, as rise over run; negative downhill.
+	 */
+	public void set_grade(double grade){
+		this.grade = grade;
+	}
+
+	/**
+	 * The forces resisting motion at `speed` m/s on a level road.
+	 */
+	private double level_resistance(double speed){
+		return 0.5 * this.air_density * this.drag_area_m2 * speed * speed
+			+ this.rolling_resistance * this.mass_kg * GRAVITY;
+	}
+
+	private double acceleration(double speed){
+		double force = -this.level_resistance(speed) - this.brake_force;
+		if (this.engine_on){
+			double drive = this.level_resistance(this.target_speed)
+				+ this.response_per_second * this.mass_kg * (this.target_speed - speed);
+			force += Math.max(0.0, Math.min(drive, this.max_power_w / Math.max(speed, 1.0)));
+		}
+		// The grade as an angle, for the part of gravity along the road.
+		force -= this.mass_kg * GRAVITY * this.grade / Math.sqrt(1.0 + this.grade * this.grade);
+		return force / this.mass_kg;
+	}
+
+	/**
+	 * Moves the car on by `seconds` with the given controls.
+	 * @param brake  the brake pedal position, from 0 to 1
+	 */
+	public void advance(double throttle, double brake, boolean engine_on, double seconds){
+		this.target_speed = Math.max(0.0, throttle) * KMH_PER_THROTTLE / 3.6;
+		this.brake_force = Math.max(0.0, Math.min(1.0, brake)) * this.max_brake_force_n;
+		this.engine_on = engine_on;
+		int steps = (int) Math.ceil(seconds / this.step_seconds - 1e-9);
+		double h = seconds / steps;
+		double v = this.speed;
+		double x = this.distance;
+		for (int i = 0; i < steps; i++){
+			if (v == 0.0 && this.acceleration(0.0) <= 0.0){
+				// Standing still: resistance and brakes only hold the car.
+				continue;
+			}
+			double k1 = this.acceleration(v);
+			double k2 = this.acceleration(v + 0.5 * h * k1);
+			double k3 = this.acceleration(v + 0.5 * h * k2);
+			double k4 = this.acceleration(v + h * k3);
+			double next = Math.max(0.0, v + h / 6.0 * (k1 + 2.0 * k2 + 2.0 * k3 + k4));
+			x += 0.5 * h * (v + next);
+			v = next;
+		}
+		this.speed = v;
+		this.distance = x;
+	}
+}